@@ -0,0 +1,243 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.EventDecoder;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+
+/**
+ * Concurrency tests of {@link KubernetesNameResolver}, run with {@code ./gradlew :lib:jcstress}.
+ * <p>
+ * Each test races the calls made by gRPC threads ({@code refresh()}, {@code shutdown()}) and by the watch
+ * thread (events of the watched EndpointSlices) on a resolver whose watch is replaced by {@link FakeWatch}.
+ * Background tasks run directly on the calling thread, so every started watch is observed by the arbiter.
+ */
+public final class KubernetesNameResolverStressTests {
+
+    private KubernetesNameResolverStressTests() {
+    }
+
+    @JCStressTest
+    @Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "Exactly one watch started")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Duplicate or missing watch")
+    @State
+    public static class ConcurrentRefresh {
+
+        private final FakeWatch watch = new FakeWatch();
+        private final KubernetesNameResolver resolver = watch.newResolver(new SynchronizationContext(FakeWatch::fail));
+
+        @Actor
+        public void refresh1() {
+            resolver.refresh();
+        }
+
+        @Actor
+        public void refresh2() {
+            resolver.refresh();
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            r.r1 = watch.started.get();
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "2", expect = Expect.ACCEPTABLE, desc = "Exactly one watch restarted after backoff")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Duplicate or missing watch")
+    @State
+    public static class RefreshInBackoff {
+
+        private final FakeWatch watch = new FakeWatch();
+        private final KubernetesNameResolver resolver = watch.newResolver(new SynchronizationContext(FakeWatch::fail));
+
+        public RefreshInBackoff() {
+            resolver.start(new RecordingListener());
+            watch.subscriber.onError(new IOException("watch failed"));
+        }
+
+        @Actor
+        public void refresh1() {
+            resolver.refresh();
+        }
+
+        @Actor
+        public void refresh2() {
+            resolver.refresh();
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            r.r1 = watch.started.get();
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "3", expect = Expect.ACCEPTABLE, desc = "Last delivered addresses include both changes")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Change lost")
+    @State
+    public static class ConcurrentPublish {
+
+        private final FakeWatch watch = new FakeWatch();
+        private final SynchronizationContext syncContext = new SynchronizationContext(FakeWatch::fail);
+        private final KubernetesNameResolver resolver = watch.newResolver(syncContext);
+        private final RecordingListener listener = new RecordingListener();
+
+        public ConcurrentPublish() {
+            resolver.start(listener);
+            watch.sync(FakeWatch.added("slice-a", "10.0.0.1"));
+        }
+
+        // e.g., the watch thread and the thread publishing the state when the initial sync timed out
+        @Actor
+        public void publish1() {
+            watch.subscriber.onEvent(FakeWatch.added("slice-b", "10.0.0.2"));
+        }
+
+        @Actor
+        public void publish2() {
+            watch.subscriber.onEvent(FakeWatch.added("slice-c", "10.0.0.3"));
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            r.r1 = listener.addresses.size();
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "0, 0", expect = Expect.ACCEPTABLE, desc = "Shut down before the change was delivered")
+    @Outcome(id = "1, 0", expect = Expect.ACCEPTABLE, desc = "Change delivered before shutdown")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Listener called after shutdown")
+    @State
+    public static class ShutdownDuringDelivery {
+
+        private final FakeWatch watch = new FakeWatch();
+        private final SynchronizationContext syncContext = new SynchronizationContext(FakeWatch::fail);
+        private final KubernetesNameResolver resolver = watch.newResolver(syncContext);
+        private final RecordingListener listener = new RecordingListener();
+
+        public ShutdownDuringDelivery() {
+            resolver.start(listener);
+            watch.sync(FakeWatch.added("slice-a", "10.0.0.1"));
+            listener.calls = 0;
+        }
+
+        @Actor
+        public void event() {
+            watch.subscriber.onEvent(FakeWatch.added("slice-b", "10.0.0.2"));
+        }
+
+        // the channel shuts the resolver down in its synchronization context
+        @Actor
+        public void shutdown() {
+            syncContext.execute(() -> {
+                resolver.shutdown();
+                listener.shutdown = true;
+            });
+        }
+
+        @Arbiter
+        public void arbiter(II_Result r) {
+            r.r1 = listener.calls;
+            r.r2 = listener.callsAfterShutdown;
+        }
+    }
+
+    /**
+     * Replaces the watch of the Kubernetes API. Keeps the subscriber of the last started watch, so events
+     * can be emitted on its behalf.
+     */
+    static final class FakeWatch implements EndpointSnapshotPublisher.Watch {
+
+        private static final ResolverTarget TARGET = new ResolverTarget("my-namespace", "my-service", "grpc");
+        private static final ResolverOptions OPTIONS = ResolverOptions.DEFAULT.withInitialSyncTimeout(null);
+
+        final AtomicInteger started = new AtomicInteger();
+        volatile EndpointSliceWatcher.Subscriber subscriber;
+
+        @Override
+        public void watch(String serviceName, EventDecoder decoder, EndpointSliceWatcher.Subscriber subscriber) {
+            this.subscriber = subscriber;
+            started.incrementAndGet();
+        }
+
+        KubernetesNameResolver newResolver(SynchronizationContext syncContext) {
+            return new KubernetesNameResolver(Runnable::run, syncContext, TARGET, OPTIONS,
+                    new PropagationLatency(), this);
+        }
+
+        void sync(Event... events) {
+            subscriber.onSyncStarted();
+            for (var event : events) {
+                subscriber.onEvent(event);
+            }
+            subscriber.onSyncCompleted();
+        }
+
+        static Event added(String name, String address) {
+            return new Event(EventType.ADDED, new EndpointSlice(
+                    new Metadata(name),
+                    List.of(new Endpoint(List.of(address), new Conditions(true))),
+                    List.of(new EndpointPort("grpc", 8080))));
+        }
+
+        static void fail(Thread thread, Throwable throwable) {
+            throw new AssertionError("Uncaught exception in synchronization context", throwable);
+        }
+    }
+
+    /**
+     * Records the listener calls. Called only from the synchronization context.
+     */
+    static final class RecordingListener implements NameResolver.Listener {
+
+        List<SocketAddress> addresses = List.of();
+        int calls;
+        int callsAfterShutdown;
+        boolean shutdown;
+
+        @Override
+        public void onAddresses(List<EquivalentAddressGroup> servers, Attributes attributes) {
+            calls++;
+            if (shutdown) {
+                callsAfterShutdown++;
+            }
+            addresses = servers.stream()
+                    .flatMap(group -> group.getAddresses().stream())
+                    .toList();
+        }
+
+        @Override
+        public void onError(Status error) {
+            if (shutdown) {
+                callsAfterShutdown++;
+            }
+        }
+    }
+}
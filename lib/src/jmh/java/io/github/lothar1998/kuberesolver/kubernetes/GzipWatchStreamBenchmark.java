@@ -0,0 +1,132 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+
+/**
+ * Compares the client-side CPU cost of decoding a plain and a gzip-compressed watch stream
+ * against the number of bytes transferred over the wire.
+ * <p>
+ * Each operation decodes a stream of {@code events} MODIFIED events of slices with
+ * {@code endpoints} endpoints each, shaped like real EndpointSlices. The {@code wireBytes}
+ * counter reports the bytes received per stream, so the time difference between the two
+ * encodings is the CPU price of the bandwidth saved.
+ * <p>
+ * Run with {@code ./gradlew :lib:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GzipWatchStreamBenchmark {
+
+    @Param({"identity", "gzip"})
+    public String encoding;
+
+    @Param({"100"})
+    public int endpoints;
+
+    @Param({"200"})
+    public int events;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() throws IOException {
+        var stream = new StringBuilder();
+        for (int i = 0; i < events; i++) {
+            stream.append(event(i)).append('\n');
+        }
+
+        var plain = stream.toString().getBytes(StandardCharsets.UTF_8);
+        body = encoding.equals("gzip") ? gzip(plain) : plain;
+    }
+
+    @Benchmark
+    public void decode(WireCounters counters, Blackhole blackhole) throws Exception {
+        var content = EndpointSliceWatcher.decodeContent(new ByteArrayInputStream(body), encoding);
+        EndpointSliceWatcher.readEvents(content, new FilteringEventDecoder("grpc", true),
+                new EndpointSliceWatcher.Subscriber() {
+                    @Override
+                    public void onEvent(Event event) {
+                        blackhole.consume(event);
+                    }
+
+                    @Override
+                    public void onError(Throwable throwable) {
+                        throw new IllegalStateException(throwable);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                }, WatchOptions.DEFAULT.maxEventBytes());
+        counters.wireBytes += body.length;
+    }
+
+    /**
+     * Bytes received over the wire, reported next to the decode time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WireCounters {
+
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+        }
+    }
+
+    private String event(int generation) {
+        var json = new StringBuilder()
+                .append("{\"type\":\"MODIFIED\",\"object\":{\"kind\":\"EndpointSlice\",")
+                .append("\"apiVersion\":\"discovery.k8s.io/v1\",\"metadata\":{\"name\":\"my-service-abcde\",")
+                .append("\"namespace\":\"default\",\"resourceVersion\":\"").append(1000 + generation).append("\",")
+                .append("\"labels\":{\"kubernetes.io/service-name\":\"my-service\",")
+                .append("\"endpointslice.kubernetes.io/managed-by\":\"endpointslice-controller.k8s.io\"}},")
+                .append("\"addressType\":\"IPv4\",\"endpoints\":[");
+        for (int i = 0; i < endpoints; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"addresses\":[\"10.0.").append(i / 256).append('.').append(i % 256).append("\"],")
+                    .append("\"conditions\":{\"ready\":").append((i + generation) % 10 != 0)
+                    .append(",\"serving\":true,\"terminating\":false},")
+                    .append("\"targetRef\":{\"kind\":\"Pod\",\"namespace\":\"default\",")
+                    .append("\"name\":\"my-service-7d9f8b6c5-").append(i).append("\",")
+                    .append("\"uid\":\"3f2a9c1e-5b7d-4e8f-9a0b-").append(String.format("%012d", i)).append("\"},")
+                    .append("\"nodeName\":\"node-").append(i % 16).append("\",\"zone\":\"zone-").append(i % 3)
+                    .append("\"}");
+        }
+        return json.append("],\"ports\":[{\"name\":\"grpc\",\"protocol\":\"TCP\",\"port\":9090},")
+                .append("{\"name\":\"metrics\",\"protocol\":\"TCP\",\"port\":8080}]}}")
+                .toString();
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
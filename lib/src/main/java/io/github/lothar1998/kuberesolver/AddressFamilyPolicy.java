@@ -0,0 +1,149 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.AddressType;
+
+/**
+ * Selects and orders the addresses of dual-stack endpoints.
+ * <p>
+ * A dual-stack service has one EndpointSlice per address family, and the IPv4 and IPv6 endpoints
+ * backing the same pod reference it by their {@code targetRef}. The resolver merges them into one
+ * address group per pod, so the load balancer treats the pod as a single subchannel, and orders the
+ * addresses of the group by this policy. The subchannel connects to the addresses in that order,
+ * which gRPC's pick-first policy with Happy Eyeballs (RFC 8305) races with a short delay between
+ * attempts. The order is deterministic: addresses of the same family keep the order of the
+ * EndpointSlices, and addresses which are not IP literals (FQDN endpoints) are always kept last.
+ * <p>
+ * The policy is set for all targets by {@link ResolverOptions#addressFamilyPolicy()} and can be
+ * overridden per target by the {@code addressFamily} query parameter of the target URI, e.g.,
+ * {@code kubernetes:///my-service:grpc?addressFamily=prefer-ipv4}.
+ */
+public enum AddressFamilyPolicy {
+
+    /**
+     * Alternates the address families, starting with IPv6 (RFC 8305, section 4).
+     */
+    INTERLEAVE("interleave"),
+
+    /**
+     * Orders all IPv4 addresses before IPv6 addresses.
+     */
+    PREFER_IPV4("prefer-ipv4"),
+
+    /**
+     * Orders all IPv6 addresses before IPv4 addresses.
+     */
+    PREFER_IPV6("prefer-ipv6"),
+
+    /**
+     * Uses IPv4 addresses only.
+     */
+    IPV4_ONLY("ipv4-only"),
+
+    /**
+     * Uses IPv6 addresses only.
+     */
+    IPV6_ONLY("ipv6-only");
+
+    private final String value;
+
+    AddressFamilyPolicy(String value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the value of the policy in the {@code addressFamily} query parameter of a target URI.
+     *
+     * @return the query parameter value, e.g., {@code prefer-ipv6}
+     */
+    public String value() {
+        return value;
+    }
+
+    /**
+     * Parses the value of the {@code addressFamily} query parameter of a target URI.
+     *
+     * @param value the query parameter value, case-insensitive
+     * @return the policy
+     * @throws IllegalArgumentException if the value does not name a policy
+     */
+    public static AddressFamilyPolicy parse(String value) throws IllegalArgumentException {
+        for (var policy : values()) {
+            if (policy.value.equals(value.toLowerCase(Locale.ROOT))) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException(String.format("unknown address family '%s'", value));
+    }
+
+    /**
+     * Checks whether addresses of the given EndpointSlice address type are used by this policy.
+     *
+     * @param addressType the address type of an EndpointSlice, or {@code null} if unknown
+     * @return {@code false} if the policy excludes the address type
+     */
+    boolean accepts(AddressType addressType) {
+        return switch (this) {
+            case IPV4_ONLY -> addressType != AddressType.IPV6;
+            case IPV6_ONLY -> addressType != AddressType.IPV4;
+            default -> true;
+        };
+    }
+
+    /**
+     * Selects and orders the addresses of a single address group.
+     *
+     * @param addresses the addresses of an endpoint, or of all endpoints of the same pod
+     * @return the ordered addresses, empty if the policy excludes all of them
+     */
+    List<SocketAddress> order(List<SocketAddress> addresses) {
+        var ipv4 = new ArrayList<SocketAddress>(addresses.size());
+        var ipv6 = new ArrayList<SocketAddress>(addresses.size());
+        var other = new ArrayList<SocketAddress>(0);
+        for (var address : addresses) {
+            // unresolved addresses (FQDN endpoints) have no family, so they are kept by every policy
+            if (!(address instanceof InetSocketAddress socketAddress) || socketAddress.isUnresolved()) {
+                other.add(address);
+            } else if (socketAddress.getAddress() instanceof Inet4Address) {
+                ipv4.add(address);
+            } else if (socketAddress.getAddress() instanceof Inet6Address) {
+                ipv6.add(address);
+            } else {
+                other.add(address);
+            }
+        }
+
+        var ordered = new ArrayList<SocketAddress>(addresses.size());
+        switch (this) {
+            case INTERLEAVE -> {
+                for (int i = 0; i < Math.max(ipv4.size(), ipv6.size()); i++) {
+                    if (i < ipv6.size()) {
+                        ordered.add(ipv6.get(i));
+                    }
+                    if (i < ipv4.size()) {
+                        ordered.add(ipv4.get(i));
+                    }
+                }
+            }
+            case PREFER_IPV4 -> {
+                ordered.addAll(ipv4);
+                ordered.addAll(ipv6);
+            }
+            case PREFER_IPV6 -> {
+                ordered.addAll(ipv6);
+                ordered.addAll(ipv4);
+            }
+            case IPV4_ONLY -> ordered.addAll(ipv4);
+            case IPV6_ONLY -> ordered.addAll(ipv6);
+        }
+        ordered.addAll(other);
+        return ordered;
+    }
+}
@@ -0,0 +1,200 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Orders the address groups passed to the gRPC channel.
+ * <p>
+ * EndpointSlices are indexed in no particular order, and the Kubernetes API does not keep the order of
+ * the endpoints of a slice either, so the same set of endpoints could be published in a different order
+ * by every update. Since {@code pick_first} connects to the first reachable address, a reordered list makes
+ * it reconnect needlessly. Every snapshot is therefore ordered canonically, by the addresses of its groups:
+ * IPv4 before IPv6 addresses, numerically, then hostnames, then ports.
+ * <p>
+ * The canonical order puts all clients of the same service on the same {@code pick_first} endpoint.
+ * A {@link #shuffled() shuffled} order spreads them instead: every client orders the groups by a hash
+ * of their addresses seeded by the client, so the relative order of two groups never changes for
+ * the client while their addresses do not, and unrelated EndpointSlice changes do not disturb its
+ * existing connections.
+ * <p>
+ * The order is set for all targets by {@link ResolverOptions#addressOrder()}.
+ */
+public final class AddressOrder {
+
+    /**
+     * Orders the address groups canonically, the same way for all clients.
+     */
+    public static final AddressOrder CANONICAL = new AddressOrder(false, 0L, false);
+
+    /**
+     * Compares the address groups canonically: lexicographically by their addresses.
+     */
+    static final Comparator<List<SocketAddress>> CANONICAL_GROUPS = AddressOrder::compareGroups;
+
+    private final boolean shuffled;
+    private final long seed;
+    private final boolean seeded;
+
+    private AddressOrder(boolean shuffled, long seed, boolean seeded) {
+        this.shuffled = shuffled;
+        this.seed = seed;
+        this.seeded = seeded;
+    }
+
+    /**
+     * Returns an order which shuffles the address groups by a seed drawn for every resolver, so every
+     * client, i.e., every channel, has its own order, kept across updates.
+     *
+     * @return the shuffled order
+     */
+    public static AddressOrder shuffled() {
+        return new AddressOrder(true, 0L, false);
+    }
+
+    /**
+     * Returns an order which shuffles the address groups by the given seed, kept across updates. Resolvers
+     * with the same seed order the same groups the same way, e.g., to reproduce the order of a client.
+     *
+     * @param seed the seed of the shuffle
+     * @return the shuffled order
+     */
+    public static AddressOrder shuffled(long seed) {
+        return new AddressOrder(true, seed, true);
+    }
+
+    /**
+     * Checks whether this order shuffles the address groups.
+     *
+     * @return {@code true} if the order is shuffled, {@code false} if it is canonical
+     */
+    public boolean isShuffled() {
+        return shuffled;
+    }
+
+    /**
+     * Returns the order used by a single resolver, with its seed drawn if this order is shuffled by
+     * a seed drawn for every resolver.
+     *
+     * @return the order of the resolver
+     */
+    AddressOrder forResolver() {
+        return shuffled && !seeded ? shuffled(ThreadLocalRandom.current().nextLong()) : this;
+    }
+
+    /**
+     * Orders the canonically ordered address groups of a snapshot.
+     *
+     * @param addressGroups the address groups in the canonical order
+     * @return the address groups in this order
+     */
+    List<List<SocketAddress>> order(List<List<SocketAddress>> addressGroups) {
+        if (!shuffled || addressGroups.size() < 2) {
+            return addressGroups;
+        }
+        var keys = new long[addressGroups.size()];
+        var indices = new Integer[addressGroups.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = mix(seed ^ hash(addressGroups.get(i)));
+            indices[i] = i;
+        }
+        // ties keep the canonical order, as the sort is stable
+        Arrays.sort(indices, Comparator.comparingLong(index -> keys[index]));
+        return Arrays.stream(indices).map(addressGroups::get).toList();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof AddressOrder order
+                && shuffled == order.shuffled && seed == order.seed && seeded == order.seeded;
+    }
+
+    @Override
+    public int hashCode() {
+        return Boolean.hashCode(shuffled) * 31 + Long.hashCode(seed) * 2 + Boolean.hashCode(seeded);
+    }
+
+    @Override
+    public String toString() {
+        if (!shuffled) {
+            return "AddressOrder[canonical]";
+        }
+        return seeded ? "AddressOrder[shuffled, seed=" + seed + "]" : "AddressOrder[shuffled]";
+    }
+
+    private static int compareGroups(List<SocketAddress> first, List<SocketAddress> second) {
+        for (int i = 0; i < Math.min(first.size(), second.size()); i++) {
+            var result = compareAddresses(first.get(i), second.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(first.size(), second.size());
+    }
+
+    private static int compareAddresses(SocketAddress first, SocketAddress second) {
+        var result = Integer.compare(rank(first), rank(second));
+        if (result != 0) {
+            return result;
+        }
+        if (first instanceof InetSocketAddress firstInet && second instanceof InetSocketAddress secondInet) {
+            result = firstInet.isUnresolved()
+                    ? firstInet.getHostString().compareTo(secondInet.getHostString())
+                    : Arrays.compareUnsigned(firstInet.getAddress().getAddress(),
+                    secondInet.getAddress().getAddress());
+            return result != 0 ? result : Integer.compare(firstInet.getPort(), secondInet.getPort());
+        }
+        return first.toString().compareTo(second.toString());
+    }
+
+    private static int rank(SocketAddress address) {
+        if (!(address instanceof InetSocketAddress inetAddress)) {
+            return 3;
+        }
+        if (inetAddress.isUnresolved()) {
+            return 2;
+        }
+        return inetAddress.getAddress() instanceof Inet4Address ? 0 : 1;
+    }
+
+    /**
+     * Hashes the addresses of a group independently of the JVM, so the order of a seed is reproducible.
+     */
+    private static long hash(List<SocketAddress> group) {
+        long hash = 0xcbf29ce484222325L;
+        for (var address : group) {
+            byte[] bytes;
+            var port = 0;
+            if (address instanceof InetSocketAddress inetAddress) {
+                bytes = inetAddress.isUnresolved()
+                        ? inetAddress.getHostString().getBytes(StandardCharsets.UTF_8)
+                        : inetAddress.getAddress().getAddress();
+                port = inetAddress.getPort();
+            } else {
+                bytes = address.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            for (var b : bytes) {
+                hash ^= b & 0xFF;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= port;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizes a hash so every bit of the seed affects every bit of the key (the SplitMix64 finalizer).
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.lothar1998.kuberesolver;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event of a set of addresses passed by a {@link KubernetesNameResolver} to its gRPC listener. The added
+ * and removed addresses are counted against the previous event of the resolver, i.e., against no addresses
+ * when the event was just enabled.
+ */
+@Name("io.github.lothar1998.kuberesolver.AddressesPublished")
+@Label("Addresses Published")
+@Category({"Kubernetes Resolver", "Resolution"})
+@Description("Addresses passed by the Kubernetes name resolver to the gRPC channel")
+final class AddressesPublishedEvent extends jdk.jfr.Event {
+
+    @Label("Target")
+    String target;
+
+    @Label("Generation")
+    @Description("Generation of the EndpointSlices the addresses were resolved from")
+    long generation;
+
+    @Label("Address Groups")
+    int addressGroups;
+
+    @Label("Addresses")
+    int addresses;
+
+    @Label("Added")
+    @Description("Number of addresses not passed to the listener in the previous recorded event")
+    int added;
+
+    @Label("Removed")
+    @Description("Number of addresses passed to the listener in the previous recorded event and no longer resolved")
+    int removed;
+}
@@ -0,0 +1,489 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.TargetRef;
+
+/**
+ * A compact, immutable representation of the endpoints of a single EndpointSlice resolved
+ * to one port.
+ * <p>
+ * IP addresses are kept in packed primitive arrays: one {@code int} per IPv4 address and
+ * a pair of {@code long}s per IPv6 address. Endpoint conditions are kept in a bitset and
+ * the resolved port is stored once per slice. Socket address objects are materialized
+ * only when the addresses are published with {@link #addressGroups()}. Note that the latest
+ * published {@link EndpointSnapshot} still holds its materialized {@link InetSocketAddress}es,
+ * so the compact form bounds the memory of the index of all slices, not of the snapshot.
+ * <p>
+ * Addresses of endpoint {@code i} are located in range {@code [offsets[i], offsets[i + 1])}
+ * of the array of their family. When every endpoint has exactly one address of a family
+ * (or none of the endpoints has an address of that family), the offsets are implied and
+ * not stored at all. For the common case of single-stack endpoints with one address each,
+ * a slice of 1000 endpoints retains about 4.3 bytes per IPv4 endpoint and 14-16 bytes per IPv6
+ * endpoint on a 64-bit JVM with compressed references, compared to about 280 and 340 bytes for
+ * a set of {@link InetSocketAddress}es per endpoint. {@link #retainedBytes()} estimates an upper
+ * bound of that size from the layout of such a JVM.
+ * <p>
+ * Addresses which are not IP literals (e.g., FQDN endpoints) are kept as strings and published as
+ * unresolved {@link InetSocketAddress}es.
+ * <p>
+ * If requested, the pods backing the endpoints are kept as 64-bit hashes of their {@code targetRef},
+ * so the endpoints of the same dual-stack pod can be merged across the slices of both families.
+ */
+final class CompactEndpointSlice {
+
+    private static final int OBJECT_HEADER_BYTES = 16;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+
+    private final int port;
+    private final int endpointCount;
+    private final long[] readyBits;
+
+    private final int[] ipv4;
+    private final int[] ipv4Offsets;
+    private final long[] ipv6;
+    private final int[] ipv6Offsets;
+    private final String[] hostnames;
+    private final int[] hostnameOffsets;
+    private final long[] targetKeys;
+
+    private CompactEndpointSlice(int port, int endpointCount, long[] readyBits,
+                                 int[] ipv4, int[] ipv4Offsets,
+                                 long[] ipv6, int[] ipv6Offsets,
+                                 String[] hostnames, int[] hostnameOffsets,
+                                 long[] targetKeys) {
+        this.port = port;
+        this.endpointCount = endpointCount;
+        this.readyBits = readyBits;
+        this.ipv4 = ipv4;
+        this.ipv4Offsets = ipv4Offsets;
+        this.ipv6 = ipv6;
+        this.ipv6Offsets = ipv6Offsets;
+        this.hostnames = hostnames;
+        this.hostnameOffsets = hostnameOffsets;
+        this.targetKeys = targetKeys;
+    }
+
+    /**
+     * Packs the given endpoints resolved to the given port.
+     *
+     * @param endpoints the endpoints of an EndpointSlice
+     * @param port      the port resolved for the EndpointSlice
+     * @return the compact representation of the endpoints
+     */
+    static CompactEndpointSlice of(List<Endpoint> endpoints, int port) {
+        return of(endpoints, port, false);
+    }
+
+    /**
+     * Packs the given endpoints resolved to the given port, optionally keeping the pods backing them.
+     *
+     * @param endpoints   the endpoints of an EndpointSlice
+     * @param port        the port resolved for the EndpointSlice
+     * @param keepTargets whether the target references of the endpoints should be kept
+     * @return the compact representation of the endpoints
+     */
+    static CompactEndpointSlice of(List<Endpoint> endpoints, int port, boolean keepTargets) {
+        var builder = new Builder(port, endpoints.size());
+        for (var endpoint : endpoints) {
+            builder.addEndpoint(endpoint.addresses(), isReady(endpoint),
+                    keepTargets ? targetKey(endpoint.targetRef()) : 0L);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Hashes the target reference of an endpoint with 64-bit FNV-1a. The UID of the target is used if
+     * present, its kind and name otherwise.
+     *
+     * @param targetRef the target reference, or {@code null} if unknown
+     * @return the non-zero hash of the target, or {@code 0} if the target is unknown
+     */
+    static long targetKey(TargetRef targetRef) {
+        if (targetRef == null) {
+            return 0L;
+        }
+        String target;
+        if (targetRef.uid() != null) {
+            target = targetRef.uid();
+        } else if (targetRef.name() != null) {
+            target = targetRef.kind() + "/" + targetRef.name();
+        } else {
+            return 0L;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < target.length(); i++) {
+            hash ^= target.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1L : hash;
+    }
+
+    /**
+     * Returns the number of endpoints in the slice, including the ones which are not ready.
+     *
+     * @return the number of endpoints
+     */
+    int endpointCount() {
+        return endpointCount;
+    }
+
+    /**
+     * Returns the port resolved for the slice.
+     *
+     * @return the port number
+     */
+    int port() {
+        return port;
+    }
+
+    /**
+     * Checks whether the endpoint is ready to receive traffic.
+     *
+     * @param endpoint the index of the endpoint
+     * @return {@code true} if the endpoint is ready
+     */
+    boolean isReady(int endpoint) {
+        return (readyBits[endpoint >>> 6] & (1L << endpoint)) != 0;
+    }
+
+    /**
+     * Checks whether the endpoint is ready to receive traffic. A missing readiness condition means the readiness is
+     * unknown, which the discovery/v1 API asks consumers to interpret as ready.
+     *
+     * @param endpoint the endpoint of an EndpointSlice
+     * @return {@code false} only if the endpoint is explicitly not ready
+     */
+    static boolean isReady(Endpoint endpoint) {
+        var conditions = endpoint.conditions();
+        return conditions == null || !Boolean.FALSE.equals(conditions.isReady());
+    }
+
+    /**
+     * Returns the hash of the pod backing the endpoint, as computed by {@link #targetKey(TargetRef)}.
+     *
+     * @param endpoint the index of the endpoint
+     * @return the hash of the target, or {@code 0} if the target is unknown or was not kept
+     */
+    long targetKey(int endpoint) {
+        return targetKeys == null ? 0L : targetKeys[endpoint];
+    }
+
+    /**
+     * Materializes socket addresses of the ready endpoints. Each endpoint with at least one
+     * address is represented by one group of addresses.
+     *
+     * @return the list of address groups of the ready endpoints
+     */
+    List<List<SocketAddress>> addressGroups() {
+        var groups = new ArrayList<List<SocketAddress>>(endpointCount);
+        for (int i = 0; i < endpointCount; i++) {
+            if (!isReady(i)) {
+                continue;
+            }
+            var group = addressGroup(i);
+            if (!group.isEmpty()) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Materializes socket addresses of a single endpoint.
+     *
+     * @param endpoint the index of the endpoint
+     * @return the socket addresses of the endpoint
+     */
+    List<SocketAddress> addressGroup(int endpoint) {
+        var group = new ArrayList<SocketAddress>(1);
+        for (int j = start(ipv4Offsets, ipv4.length, endpoint); j < end(ipv4Offsets, ipv4.length, endpoint); j++) {
+            group.add(new InetSocketAddress(toInetAddress(ipv4ToBytes(ipv4[j])), port));
+        }
+        int ipv6Count = ipv6.length / 2;
+        for (int j = start(ipv6Offsets, ipv6Count, endpoint); j < end(ipv6Offsets, ipv6Count, endpoint); j++) {
+            group.add(new InetSocketAddress(toInetAddress(ipv6ToBytes(ipv6[2 * j], ipv6[2 * j + 1])), port));
+        }
+        for (int j = start(hostnameOffsets, hostnames.length, endpoint);
+             j < end(hostnameOffsets, hostnames.length, endpoint); j++) {
+            // not resolved, so publishing never blocks on a DNS lookup
+            group.add(InetSocketAddress.createUnresolved(hostnames[j], port));
+        }
+        return group;
+    }
+
+    /**
+     * Estimates the number of bytes retained by this object, assuming a 64-bit JVM with
+     * compressed references. Strings of non-IP addresses are not included.
+     *
+     * @return the estimated retained size in bytes
+     */
+    long retainedBytes() {
+        long bytes = OBJECT_HEADER_BYTES + 2 * Integer.BYTES + 8L * REFERENCE_BYTES;
+        bytes += arrayBytes(readyBits.length, Long.BYTES);
+        bytes += arrayBytes(ipv4.length, Integer.BYTES);
+        bytes += arrayBytes(ipv6.length, Long.BYTES);
+        bytes += arrayBytes(hostnames.length, REFERENCE_BYTES);
+        bytes += ipv4Offsets == null ? 0 : arrayBytes(ipv4Offsets.length, Integer.BYTES);
+        bytes += ipv6Offsets == null ? 0 : arrayBytes(ipv6Offsets.length, Integer.BYTES);
+        bytes += hostnameOffsets == null ? 0 : arrayBytes(hostnameOffsets.length, Integer.BYTES);
+        bytes += targetKeys == null ? 0 : arrayBytes(targetKeys.length, Long.BYTES);
+        return bytes;
+    }
+
+    private static long arrayBytes(int length, int elementBytes) {
+        return align(ARRAY_HEADER_BYTES + (long) length * elementBytes);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static int start(int[] offsets, int count, int endpoint) {
+        if (offsets != null) {
+            return offsets[endpoint];
+        }
+        return count == 0 ? 0 : endpoint;
+    }
+
+    private static int end(int[] offsets, int count, int endpoint) {
+        if (offsets != null) {
+            return offsets[endpoint + 1];
+        }
+        return count == 0 ? 0 : endpoint + 1;
+    }
+
+    private static InetAddress toInetAddress(byte[] address) {
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Invalid packed IP address", e);
+        }
+    }
+
+    private static byte[] ipv4ToBytes(int address) {
+        return new byte[]{
+                (byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+
+    private static byte[] ipv6ToBytes(long high, long low) {
+        var bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 literal without consulting DNS.
+     *
+     * @param address the address literal
+     * @return the packed address, or {@code -1L} if the string is not an IPv4 literal
+     */
+    static long parseIpv4(String address) {
+        int length = address.length();
+        if (length < 7 || length > 15) {
+            return -1L;
+        }
+        long packed = 0;
+        int octet = -1;
+        int octets = 0;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? address.charAt(i) : '.';
+            if (c == '.') {
+                if (octet < 0 || ++octets > 4) {
+                    return -1L;
+                }
+                packed = (packed << 8) | octet;
+                octet = -1;
+            } else if (c >= '0' && c <= '9') {
+                octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255) {
+                    return -1L;
+                }
+            } else {
+                return -1L;
+            }
+        }
+        return octets == 4 ? packed : -1L;
+    }
+
+    /**
+     * Incrementally packs endpoints of a single slice.
+     */
+    static final class Builder {
+
+        private final int port;
+
+        private long[] readyBits;
+        private int endpointCount = 0;
+
+        private int[] ipv4;
+        private int ipv4Count = 0;
+        private int[] ipv4Offsets;
+        private long[] ipv6 = new long[0];
+        private int ipv6Count = 0;
+        private int[] ipv6Offsets;
+        private String[] hostnames = new String[0];
+        private int hostnameCount = 0;
+        private int[] hostnameOffsets;
+        private long[] targetKeys;
+
+        /**
+         * Creates a builder of a slice resolved to the given port.
+         *
+         * @param port              the port resolved for the slice
+         * @param expectedEndpoints the expected number of endpoints, used for presizing
+         */
+        Builder(int port, int expectedEndpoints) {
+            this.port = port;
+            int capacity = Math.max(expectedEndpoints, 1);
+            this.readyBits = new long[(capacity + 63) >>> 6];
+            this.ipv4 = new int[capacity];
+            this.ipv4Offsets = new int[capacity + 1];
+            this.ipv6Offsets = new int[capacity + 1];
+            this.hostnameOffsets = new int[capacity + 1];
+        }
+
+        /**
+         * Adds an endpoint with the given addresses.
+         *
+         * @param addresses the IP addresses (or hostnames) of the endpoint
+         * @param ready     whether the endpoint is ready to receive traffic
+         * @return this builder
+         */
+        Builder addEndpoint(List<String> addresses, boolean ready) {
+            return addEndpoint(addresses, ready, 0L);
+        }
+
+        /**
+         * Adds an endpoint with the given addresses backed by the given target.
+         *
+         * @param addresses the IP addresses (or hostnames) of the endpoint
+         * @param ready     whether the endpoint is ready to receive traffic
+         * @param targetKey the hash of the target backing the endpoint, or {@code 0} if unknown
+         * @return this builder
+         */
+        Builder addEndpoint(List<String> addresses, boolean ready, long targetKey) {
+            if (endpointCount + 1 >= ipv4Offsets.length) {
+                int capacity = ipv4Offsets.length * 2;
+                ipv4Offsets = Arrays.copyOf(ipv4Offsets, capacity);
+                ipv6Offsets = Arrays.copyOf(ipv6Offsets, capacity);
+                hostnameOffsets = Arrays.copyOf(hostnameOffsets, capacity);
+                readyBits = Arrays.copyOf(readyBits, (capacity + 63) >>> 6);
+            }
+            if (targetKey != 0) {
+                if (targetKeys == null) {
+                    targetKeys = new long[ipv4Offsets.length];
+                } else if (targetKeys.length < ipv4Offsets.length) {
+                    targetKeys = Arrays.copyOf(targetKeys, ipv4Offsets.length);
+                }
+                targetKeys[endpointCount] = targetKey;
+            }
+
+            for (var address : addresses) {
+                addAddress(address);
+            }
+
+            if (ready) {
+                readyBits[endpointCount >>> 6] |= 1L << endpointCount;
+            }
+            endpointCount++;
+            ipv4Offsets[endpointCount] = ipv4Count;
+            ipv6Offsets[endpointCount] = ipv6Count;
+            hostnameOffsets[endpointCount] = hostnameCount;
+            return this;
+        }
+
+        private void addAddress(String address) {
+            long packedIpv4 = parseIpv4(address);
+            if (packedIpv4 >= 0) {
+                if (ipv4Count == ipv4.length) {
+                    ipv4 = Arrays.copyOf(ipv4, Math.max(8, ipv4.length * 2));
+                }
+                ipv4[ipv4Count++] = (int) packedIpv4;
+                return;
+            }
+
+            if (address.indexOf(':') >= 0) {
+                try {
+                    // IPv6 literals are parsed without any name service lookup
+                    var bytes = InetAddress.getByName(address).getAddress();
+                    if (bytes.length == 16) {
+                        if (2 * ipv6Count == ipv6.length) {
+                            ipv6 = Arrays.copyOf(ipv6, Math.max(8, ipv6.length * 2));
+                        }
+                        ipv6[2 * ipv6Count] = toLong(bytes, 0);
+                        ipv6[2 * ipv6Count + 1] = toLong(bytes, 8);
+                        ipv6Count++;
+                        return;
+                    }
+                    if (bytes.length == 4) {
+                        addAddress(InetAddress.getByAddress(bytes).getHostAddress());
+                        return;
+                    }
+                } catch (UnknownHostException e) {
+                    // not an IP literal, kept as a hostname
+                }
+            }
+
+            if (hostnameCount == hostnames.length) {
+                hostnames = Arrays.copyOf(hostnames, Math.max(4, hostnames.length * 2));
+            }
+            hostnames[hostnameCount++] = address;
+        }
+
+        private static long toLong(byte[] bytes, int offset) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[offset + i] & 0xFFL);
+            }
+            return value;
+        }
+
+        /**
+         * Builds the compact slice, trimming all arrays to their used size.
+         *
+         * @return the compact slice
+         */
+        CompactEndpointSlice build() {
+            return new CompactEndpointSlice(
+                    port,
+                    endpointCount,
+                    Arrays.copyOf(readyBits, (endpointCount + 63) >>> 6),
+                    Arrays.copyOf(ipv4, ipv4Count),
+                    offsets(ipv4Offsets, ipv4Count),
+                    Arrays.copyOf(ipv6, 2 * ipv6Count),
+                    offsets(ipv6Offsets, ipv6Count),
+                    Arrays.copyOf(hostnames, hostnameCount),
+                    offsets(hostnameOffsets, hostnameCount),
+                    targetKeys == null ? null : Arrays.copyOf(targetKeys, endpointCount));
+        }
+
+        private int[] offsets(int[] offsets, int count) {
+            if (count == 0 || count == endpointCount && isIdentity(offsets)) {
+                return null;
+            }
+            return Arrays.copyOf(offsets, endpointCount + 1);
+        }
+
+        private boolean isIdentity(int[] offsets) {
+            for (int i = 0; i <= endpointCount; i++) {
+                if (offsets[i] != i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.time.Duration;
+
+/**
+ * Options of probing the endpoints added to a target before they are published.
+ * <p>
+ * A ready endpoint may not accept connections yet, e.g., while the listener of a new pod is starting, so
+ * the first requests routed to it pay the connection setup or fail. When probing is enabled by
+ * {@link ResolverOptions#withEndpointProbe(EndpointProbeOptions)}, the addresses added after the initial
+ * sync are published only once a TCP connection to them succeeds or the maximum delay elapses. Removed
+ * addresses are published immediately.
+ * <p>
+ * Use {@link #DEFAULT} and the {@code with*} methods to derive the options, e.g.,
+ * {@code EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofSeconds(2))}.
+ *
+ * @param connectTimeout the timeout of a single connection attempt
+ * @param maxDelay       the maximum time an added address is held back until it accepts a connection
+ * @param maxConcurrency the maximum number of connection attempts in flight per target
+ */
+public record EndpointProbeOptions(Duration connectTimeout, Duration maxDelay, int maxConcurrency) {
+
+    /**
+     * Default options: connection attempts time out after 1 second, at most 8 of them are in flight, and
+     * added addresses are held back for at most 5 seconds.
+     */
+    public static final EndpointProbeOptions DEFAULT = new EndpointProbeOptions(Duration.ofSeconds(1),
+            Duration.ofSeconds(5), 8);
+
+    /**
+     * Validates the options.
+     *
+     * @throws IllegalArgumentException if any of the options is out of range
+     */
+    public EndpointProbeOptions {
+        if (connectTimeout == null || connectTimeout.toMillis() <= 0) {
+            throw new IllegalArgumentException("connectTimeout must be at least one millisecond");
+        }
+        if (maxDelay == null || maxDelay.isNegative()) {
+            throw new IllegalArgumentException("maxDelay must not be negative");
+        }
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+    }
+
+    /**
+     * Returns a copy of these options with the given timeout of a single connection attempt.
+     *
+     * @param connectTimeout the connect timeout
+     * @return the new options
+     */
+    public EndpointProbeOptions withConnectTimeout(Duration connectTimeout) {
+        return new EndpointProbeOptions(connectTimeout, maxDelay, maxConcurrency);
+    }
+
+    /**
+     * Returns a copy of these options with the given maximum time an added address is held back.
+     *
+     * @param maxDelay the maximum delay
+     * @return the new options
+     */
+    public EndpointProbeOptions withMaxDelay(Duration maxDelay) {
+        return new EndpointProbeOptions(connectTimeout, maxDelay, maxConcurrency);
+    }
+
+    /**
+     * Returns a copy of these options with the given maximum number of connection attempts in flight.
+     *
+     * @param maxConcurrency the maximum number of concurrent connection attempts
+     * @return the new options
+     */
+    public EndpointProbeOptions withMaxConcurrency(int maxConcurrency) {
+        return new EndpointProbeOptions(connectTimeout, maxDelay, maxConcurrency);
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Holds back the addresses added to a target until they accept a TCP connection.
+ * <p>
+ * The addresses of the first published snapshot are admitted at once. Every address added later is
+ * connected to asynchronously, by at most {@link EndpointProbeOptions#maxConcurrency()} attempts in
+ * flight, and retried until a connection succeeds or {@link EndpointProbeOptions#maxDelay()} elapses;
+ * either admits the address and calls the admission callback, so the publisher publishes it. Removed
+ * addresses are forgotten, so they are removed from the next snapshot without delay and probed again
+ * if they are added back. The probe only opens and closes a connection; the connections of clients
+ * are established by the clients themselves.
+ */
+final class EndpointProber implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(EndpointProber.class.getName());
+
+    private static final Duration RETRY_DELAY = Duration.ofMillis(200);
+    private static final Duration IDLE_THREAD_KEEP_ALIVE = Duration.ofSeconds(30);
+
+    private final EndpointProbeOptions options;
+    private final Connector connector;
+    private final Runnable onAdmitted;
+    private final ThreadPoolExecutor executor;
+
+    // guarded by this
+    private final Set<SocketAddress> admitted = new HashSet<>();
+    private final Map<SocketAddress, Long> pending = new HashMap<>();
+    private boolean initialized = false;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a prober connecting to the addresses by TCP.
+     *
+     * @param options    the probe options
+     * @param onAdmitted the callback called whenever a held back address is admitted
+     */
+    EndpointProber(EndpointProbeOptions options, Runnable onAdmitted) {
+        this(options, onAdmitted, EndpointProber::connect);
+    }
+
+    /**
+     * Creates a prober connecting to the addresses with the given connector.
+     *
+     * @param options    the probe options
+     * @param onAdmitted the callback called whenever a held back address is admitted
+     * @param connector  the connector probing a single address
+     */
+    EndpointProber(EndpointProbeOptions options, Runnable onAdmitted, Connector connector) {
+        this.options = options;
+        this.onAdmitted = onAdmitted;
+        this.connector = connector;
+        this.executor = new ThreadPoolExecutor(options.maxConcurrency(), options.maxConcurrency(),
+                IDLE_THREAD_KEEP_ALIVE.toNanos(), TimeUnit.NANOSECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    var thread = new Thread(runnable, "kuberesolver-endpoint-probe");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Selects the admitted addresses of the given address groups and starts probing the added ones.
+     * Groups without any admitted address are skipped, unless no group has one, in which case all
+     * addresses are admitted, as publishing no addresses would be worse than publishing unprobed ones.
+     *
+     * @param addressGroups the address groups about to be published
+     * @return the address groups with the admitted addresses only
+     */
+    synchronized List<List<SocketAddress>> admit(List<List<SocketAddress>> addressGroups) {
+        var present = addressGroups.stream().flatMap(List::stream).collect(Collectors.toSet());
+        admitted.retainAll(present);
+        pending.keySet().retainAll(present);
+        if (!initialized) {
+            initialized = true;
+            admitted.addAll(present);
+            return addressGroups;
+        }
+
+        for (var address : present) {
+            if (admitted.contains(address) || pending.containsKey(address)) {
+                continue;
+            }
+            if (address instanceof InetSocketAddress inetAddress && !inetAddress.isUnresolved()) {
+                hold(inetAddress);
+            } else {
+                admitted.add(address);
+            }
+        }
+        if (pending.isEmpty()) {
+            return addressGroups;
+        }
+
+        var admittedGroups = addressGroups.stream()
+                .map(group -> group.stream().filter(admitted::contains).toList())
+                .filter(group -> !group.isEmpty())
+                .toList();
+        if (admittedGroups.isEmpty()) {
+            admitted.addAll(present);
+            pending.clear();
+            return addressGroups;
+        }
+        return admittedGroups;
+    }
+
+    /**
+     * Stops probing. Probes in flight are interrupted and no address is admitted anymore.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        synchronized (this) {
+            pending.clear();
+        }
+    }
+
+    private void hold(InetSocketAddress address) {
+        var deadline = System.nanoTime() + options.maxDelay().toNanos();
+        pending.put(address, deadline);
+        CompletableFuture.delayedExecutor(options.maxDelay().toNanos(), TimeUnit.NANOSECONDS)
+                .execute(() -> {
+                    if (admit(address, deadline)) {
+                        LOGGER.log(Level.FINE, "Address {0} accepted no connection within {1}, publishing it anyway",
+                                new Object[]{address, options.maxDelay()});
+                    }
+                });
+        probe(address, deadline);
+    }
+
+    private void probe(InetSocketAddress address, long deadline) {
+        if (closed) {
+            return;
+        }
+        try {
+            executor.execute(() -> run(address, deadline));
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINER, "Probe of address " + address + " rejected", e);
+        }
+    }
+
+    private void run(InetSocketAddress address, long deadline) {
+        synchronized (this) {
+            if (!Long.valueOf(deadline).equals(pending.get(address))) {
+                return;
+            }
+        }
+        try {
+            connector.connect(address, (int) options.connectTimeout().toMillis());
+            LOGGER.log(Level.FINER, "Address {0} accepted a connection", new Object[]{address});
+            admit(address, deadline);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, "Address " + address + " accepted no connection, retrying", e);
+            CompletableFuture.delayedExecutor(RETRY_DELAY.toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> probe(address, deadline));
+        }
+    }
+
+    /**
+     * Admits a held back address unless it was removed in the meantime.
+     *
+     * @param address  the address
+     * @param deadline the deadline of the address, telling its holds apart if it was removed and added again
+     * @return {@code true} if the address was admitted
+     */
+    private boolean admit(InetSocketAddress address, long deadline) {
+        synchronized (this) {
+            if (closed || !pending.remove(address, deadline)) {
+                return false;
+            }
+            admitted.add(address);
+        }
+        onAdmitted.run();
+        return true;
+    }
+
+    private static void connect(InetSocketAddress address, int timeoutMillis) throws IOException {
+        try (var socket = new Socket()) {
+            socket.connect(address, timeoutMillis);
+        }
+    }
+
+    /**
+     * Opens and closes a connection to an address.
+     */
+    @FunctionalInterface
+    interface Connector {
+
+        /**
+         * Connects to the address and closes the connection.
+         *
+         * @param address       the address
+         * @param timeoutMillis the connect timeout in milliseconds
+         * @throws IOException if the connection cannot be established
+         */
+        void connect(InetSocketAddress address, int timeoutMillis) throws IOException;
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the resolved addresses of a target, published by {@link EndpointSnapshotPublisher}.
+ * <p>
+ * Each address group holds the addresses of one ready endpoint, or of all ready endpoints backed by the same
+ * dual-stack pod, ordered by the {@link AddressFamilyPolicy} of the target. The addresses are resolved
+ * {@link java.net.InetSocketAddress}es, except for FQDN endpoints, which are unresolved.
+ * <p>
+ * The generation increases with every change of the EndpointSlices of the target or of its probed
+ * addresses, so of two snapshots of the same publisher the one with the greater generation is newer.
+ * Generations of consecutive snapshots are not necessarily consecutive, as changes received together
+ * are published at once.
+ *
+ * @param target           the resolved target
+ * @param generation       the generation of the snapshot
+ * @param resourceVersions the resource versions of the EndpointSlices of the snapshot by their names
+ * @param addressGroups    the address groups of the ready endpoints of the target, empty if it has none
+ */
+public record EndpointSnapshot(ResolverTarget target,
+                               long generation,
+                               Map<String, String> resourceVersions,
+                               List<List<SocketAddress>> addressGroups) {
+
+    /**
+     * Creates a snapshot, copying the resource versions and the address groups.
+     *
+     * @param target           the resolved target
+     * @param generation       the generation of the snapshot
+     * @param resourceVersions the resource versions of the EndpointSlices of the snapshot by their names
+     * @param addressGroups    the address groups of the ready endpoints of the target
+     */
+    public EndpointSnapshot {
+        resourceVersions = Map.copyOf(resourceVersions);
+        addressGroups = addressGroups.stream().map(List::copyOf).toList();
+    }
+}
@@ -0,0 +1,1200 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+import io.github.lothar1998.kuberesolver.kubernetes.AgentEndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.EventDecoder;
+import io.github.lothar1998.kuberesolver.kubernetes.EventTiming;
+import io.github.lothar1998.kuberesolver.kubernetes.FilteringEventDecoder;
+import io.github.lothar1998.kuberesolver.kubernetes.InClusterEndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.model.AddressType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+
+/**
+ * A {@link Flow.Publisher} of the resolved addresses of a Kubernetes target, independent of gRPC.
+ * <p>
+ * The publisher watches the EndpointSlices of the target and publishes an {@link EndpointSnapshot} of
+ * the addresses of its ready endpoints whenever they change. It backs every {@link KubernetesNameResolver},
+ * and can be used directly by other clients, e.g., a load balancer of HTTP connections:
+ * <pre>{@code
+ * var publisher = new EndpointSnapshotPublisher(ResolverTarget.parse(URI.create("kubernetes:///my-service:http")));
+ * publisher.subscribe(subscriber);
+ * }</pre>
+ * The publisher of a target watched by gRPC channels is shared by
+ * {@link KubernetesNameResolverProvider#publisher(java.net.URI)}, so one watch serves all clients of the target.
+ * <p>
+ * Subscribers receive the snapshots with backpressure: a snapshot is passed to a subscriber only when
+ * requested, and snapshots published while a subscriber has no outstanding demand are conflated, so a slow
+ * subscriber receives only the latest one when it requests more. A new subscriber receives the latest
+ * snapshot, if any, first. Subscribers are called on the executor given to {@link #subscribe(Flow.Subscriber,
+ * Executor)}, {@link ForkJoinPool#commonPool()} by default, never on the watch thread.
+ * <p>
+ * The first snapshot is published once the initial state of the target is synced, i.e., all its
+ * EndpointSlices are listed, bounded by {@link ResolverOptions#initialSyncTimeout()}. A failed watch is not
+ * reported to subscribers; it is restarted with exponential backoff while there are subscribers, or by
+ * {@link #refresh()}. A target which has published addresses reconnects after a random delay of up to a
+ * second, so targets whose watches failed at once, e.g., when the Kubernetes API restarted, do not reconnect
+ * at once; a target without addresses reconnects immediately, and its requests take precedence in the
+ * {@link io.github.lothar1998.kuberesolver.kubernetes.ApiRequestBudget}. Subscribers are completed when the
+ * publisher is closed. If {@link ResolverOptions#endpointProbe()} is set, addresses added after the first
+ * snapshot are published only once they accept a connection, see {@link EndpointProbeOptions}.
+ * <p>
+ * Deleted EndpointSlices, and slices which lost all their usable endpoints, are removed from the published
+ * addresses at once. A target without ready endpoints is published as a snapshot without addresses, after
+ * {@link ResolverOptions#emptyGracePeriod()} if it had addresses before.
+ * <p>
+ * While started, the live state of the publisher can be inspected, and a relist forced, through its
+ * {@link EndpointSnapshotPublisherMXBean} in the platform MBean server.
+ * <p>
+ * The publisher is a lock-free state machine: {@code IDLE} until started, {@code SYNCING} while the
+ * initial state is listed, {@code WATCHING} once synced, {@code BACKOFF} after the watch ended until it
+ * is refreshed, and {@code SHUTDOWN}. At most one watch runs at a time, and the EndpointSlices indexed by
+ * a previous watch are kept and reconciled by the next sync.
+ */
+public final class EndpointSnapshotPublisher implements Flow.Publisher<EndpointSnapshot>, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(EndpointSnapshotPublisher.class.getName());
+
+    private static final Set<EventType> SUPPORTED_KUBERNETES_EVENTS = Set.of(EventType.ADDED, EventType.MODIFIED,
+            EventType.DELETED);
+
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(2);
+    private static final double BACKOFF_MULTIPLIER = 1.6;
+    private static final double BACKOFF_JITTER = 0.2;
+    private static final Duration RECONNECT_STAGGER = Duration.ofSeconds(1);
+    private static final long NO_EVENT = Long.MIN_VALUE;
+    private static final long NOT_EMPTY = -1;
+    private static final long GRACE_ELAPSED = -2;
+
+    private final Executor executor;
+    private final ResolverTarget params;
+
+    private final Watch watcher;
+    private final EventDecoder decoder;
+    private final Duration initialSyncTimeout;
+    private final Duration emptyGracePeriod;
+    private final AddressFamilyPolicy addressFamilyPolicy;
+    private final EndpointProber prober;
+    private final CompletableFuture<Void> initialSync = new CompletableFuture<>();
+
+    private final PropagationLatency propagationLatency;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final AtomicLong oversizedEvents = new AtomicLong();
+    private final AtomicLong watchesStarted = new AtomicLong();
+    private final AtomicLong watchFailures = new AtomicLong();
+    private final AtomicBoolean relistRequested = new AtomicBoolean();
+    // stream of the running watch, closed to abort the watch on relist
+    private final AtomicReference<Closeable> stream = new AtomicReference<>();
+    private volatile long lastEventNanos = NO_EVENT;
+    private volatile String lastResourceVersion;
+
+    // EndpointSlices indexed by the watch; written only by the running watch
+    private final Map<String, CompactEndpointSlice> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, String> resourceVersions = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean deferring = new AtomicBoolean();
+    private volatile boolean initialSyncExpired;
+    // whether a list of the EndpointSlices completed, so a state without addresses is known to be empty
+    private volatile boolean listCompleted;
+    // generation which emptied the published addresses, held back for the grace period, or GRACE_ELAPSED
+    // if the grace period elapsed while a relist deferred publishing
+    private final AtomicLong emptySince = new AtomicLong(NOT_EMPTY);
+
+    // latest published snapshot, read by current() and passed to new subscribers
+    private final AtomicReference<EndpointSnapshot> latest = new AtomicReference<>();
+    // notified on every published snapshot, awaited by awaitNewerThan()
+    private final Object published = new Object();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final boolean defaultExecutorUsed;
+
+    /**
+     * Creates a publisher of the given target with the default options.
+     *
+     * @param target the target to resolve
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    public EndpointSnapshotPublisher(ResolverTarget target) throws IOException {
+        this(target, ResolverOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a publisher of the given target with custom options.
+     *
+     * @param target  the target to resolve
+     * @param options the options of the resolution
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    public EndpointSnapshotPublisher(ResolverTarget target, ResolverOptions options) throws IOException {
+        this(null, target, options);
+    }
+
+    /**
+     * Creates a publisher of the given target watching it on the given executor.
+     *
+     * @param executor the executor running the blocking watch, or {@code null} to use
+     *                 a default single-threaded executor
+     * @param target   the target to resolve
+     * @param options  the options of the resolution
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    public EndpointSnapshotPublisher(Executor executor, ResolverTarget target, ResolverOptions options)
+            throws IOException {
+        this(executor, target, options, new PropagationLatency());
+    }
+
+    /**
+     * Creates a publisher recording propagation latency of the target into the given histograms, which
+     * may be shared with other publishers of the same target.
+     *
+     * @param executor           the executor running the blocking watch, or {@code null} to use
+     *                           a default single-threaded executor
+     * @param target             the target to resolve
+     * @param options            the options of the resolution
+     * @param propagationLatency the propagation latency of the target
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    EndpointSnapshotPublisher(Executor executor, ResolverTarget target, ResolverOptions options,
+                              PropagationLatency propagationLatency) throws IOException {
+        this(executor, target, options, propagationLatency, createWatcher(target, options)::watch);
+    }
+
+    /**
+     * Creates a publisher watching the EndpointSlices of the target with the given watch.
+     *
+     * @param executor           the executor running the blocking watch, or {@code null} to use
+     *                           a default single-threaded executor
+     * @param target             the target to resolve
+     * @param options            the options of the resolution
+     * @param propagationLatency the propagation latency of the target
+     * @param watcher            the watch of the EndpointSlices of the target
+     */
+    EndpointSnapshotPublisher(Executor executor, ResolverTarget target, ResolverOptions options,
+                              PropagationLatency propagationLatency, Watch watcher) {
+        this.defaultExecutorUsed = executor == null;
+        this.executor = executor != null ? executor : Executors.newSingleThreadExecutor();
+        this.params = target;
+        this.propagationLatency = propagationLatency;
+        this.decoder = new FilteringEventDecoder(target.port(), true);
+        this.initialSyncTimeout = options.initialSyncTimeout();
+        this.emptyGracePeriod = options.emptyGracePeriod();
+        this.addressFamilyPolicy = target.addressFamily() != null
+                ? target.addressFamily() : options.addressFamilyPolicy();
+        this.prober = options.endpointProbe() != null
+                ? new EndpointProber(options.endpointProbe(), this::onAddressAdmitted) : null;
+        this.watcher = watcher;
+    }
+
+    private static EndpointSliceWatcher createWatcher(ResolverTarget params, ResolverOptions options)
+            throws IOException {
+        EndpointSliceWatcher inClusterWatcher;
+        if (params.namespace() != null) {
+            inClusterWatcher = new InClusterEndpointSliceWatcher(params.namespace(), options.watchOptions());
+        } else {
+            inClusterWatcher = new InClusterEndpointSliceWatcher(options.watchOptions());
+        }
+        return AgentEndpointSliceWatcher.getSocketPath()
+                .<EndpointSliceWatcher>map(socketPath -> new AgentEndpointSliceWatcher(socketPath, inClusterWatcher))
+                .orElse(inClusterWatcher);
+    }
+
+    /**
+     * Returns the resolved target.
+     *
+     * @return the target of this publisher
+     */
+    public ResolverTarget target() {
+        return params;
+    }
+
+    /**
+     * Subscribes the given subscriber, calling it on {@link ForkJoinPool#commonPool()}. Starts the watch
+     * of the target unless it is running.
+     *
+     * @param subscriber the subscriber of the snapshots
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super EndpointSnapshot> subscriber) {
+        subscribe(subscriber, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Subscribes the given subscriber, calling it on the given executor. Starts the watch of the target
+     * unless it is running.
+     *
+     * @param subscriber the subscriber of the snapshots
+     * @param executor   the executor calling the subscriber
+     */
+    public void subscribe(Flow.Subscriber<? super EndpointSnapshot> subscriber, Executor executor) {
+        var subscription = new Subscription(subscriber, executor);
+        subscriptions.add(subscription);
+        if (state.get() == State.SHUTDOWN) {
+            subscription.complete();
+        } else {
+            subscription.onSnapshot(latest.get());
+            start();
+        }
+        subscription.signal();
+    }
+
+    /**
+     * Starts the watch of the target unless it is running. The initial sync timeout starts with the first call.
+     */
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            ResolverDiagnostics.register(this, new Diagnostics());
+            if (initialSyncTimeout != null && initialSyncTimeout.isZero()) {
+                initialSyncExpired = true;
+            } else if (initialSyncTimeout != null) {
+                CompletableFuture.delayedExecutor(initialSyncTimeout.toNanos(), TimeUnit.NANOSECONDS)
+                        .execute(this::onInitialSyncTimeout);
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Restarts the watch of the target if it ended. Has no effect while the watch is running.
+     */
+    public void refresh() {
+        var current = state.get();
+        if ((current == State.IDLE || current == State.BACKOFF) && state.compareAndSet(current, State.SYNCING)) {
+            if (current == State.BACKOFF && latest.get() != null) {
+                var stagger = ThreadLocalRandom.current().nextLong(RECONNECT_STAGGER.toNanos());
+                CompletableFuture.delayedExecutor(stagger, TimeUnit.NANOSECONDS).execute(this::resolve);
+            } else {
+                resolve();
+            }
+        }
+    }
+
+    /**
+     * Lists the EndpointSlices of the target again, e.g., when the published addresses are suspected to have
+     * drifted from the Kubernetes API. A running watch is aborted and restarted with a list at once, without
+     * reporting the watch as failed; an ended watch is restarted without backoff. Has no effect until the
+     * publisher is started.
+     */
+    public void relist() {
+        var current = state.get();
+        if (current == State.IDLE || current == State.SHUTDOWN) {
+            return;
+        }
+        if (current == State.BACKOFF) {
+            if (state.compareAndSet(State.BACKOFF, State.SYNCING)) {
+                resolve();
+            }
+            return;
+        }
+        relistRequested.set(true);
+        closeStream(stream.get());
+    }
+
+    /**
+     * Returns the latest published snapshot. The snapshot is read from a volatile reference without
+     * locking or allocation, so it can be read on every request, e.g., to shard requests by the
+     * current endpoints.
+     *
+     * @return the latest snapshot, or {@code null} if none was published yet
+     */
+    @Nullable
+    public EndpointSnapshot current() {
+        return latest.get();
+    }
+
+    /**
+     * Waits until a snapshot newer than the given generation is published, e.g., to long-poll
+     * for changes of the endpoints. Returns at once if the latest snapshot is already newer.
+     * Snapshots are published only once the publisher is started.
+     *
+     * @param generation the generation of the last snapshot seen by the caller, or {@code -1} to
+     *                   await the first snapshot
+     * @param timeout    the maximum time to wait
+     * @return the latest snapshot, or {@code null} if none newer was published within the timeout
+     * or the publisher was closed
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    @Nullable
+    public EndpointSnapshot awaitNewerThan(long generation, Duration timeout) throws InterruptedException {
+        var snapshot = latest.get();
+        if (snapshot != null && snapshot.generation() > generation) {
+            return snapshot;
+        }
+
+        var deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (published) {
+            while (true) {
+                snapshot = latest.get();
+                if (snapshot != null && snapshot.generation() > generation) {
+                    return snapshot;
+                }
+                var remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || state.get() == State.SHUTDOWN) {
+                    return null;
+                }
+                TimeUnit.NANOSECONDS.timedWait(published, remaining);
+            }
+        }
+    }
+
+    /**
+     * Returns a future completed once the initial state of the target is synced and
+     * published. The future is not completed when the initial sync times out, so it can
+     * be awaited, e.g., by readiness probes.
+     *
+     * @return the future of the initial sync
+     */
+    public CompletableFuture<Void> initialSync() {
+        return initialSync.copy();
+    }
+
+    /**
+     * Returns the number of watch events of the target rejected because they exceeded
+     * {@link io.github.lothar1998.kuberesolver.kubernetes.WatchOptions#maxEventBytes()}. Every rejected event
+     * ended its watch, and the EndpointSlices were listed again by the next one.
+     *
+     * @return the number of rejected events
+     */
+    public long oversizedEvents() {
+        return oversizedEvents.get();
+    }
+
+    /**
+     * Returns the number of watches of the target started after the first one.
+     *
+     * @return the number of reconnections
+     */
+    long reconnects() {
+        return Math.max(0, watchesStarted.get() - 1);
+    }
+
+    /**
+     * Returns the latency of propagating EndpointSlice changes of the target to the subscribers.
+     *
+     * @return the propagation latency of the target
+     */
+    public PropagationLatency propagationLatency() {
+        return propagationLatency;
+    }
+
+    /**
+     * Stops the watch of the target, completes all subscribers and wakes up the threads awaiting a snapshot.
+     */
+    @Override
+    public void close() {
+        if (state.getAndSet(State.SHUTDOWN) == State.SHUTDOWN) {
+            return;
+        }
+        if (defaultExecutorUsed && executor instanceof ExecutorService executor) {
+            executor.shutdownNow();
+        }
+        if (prober != null) {
+            prober.close();
+        }
+        ResolverDiagnostics.unregister(this);
+        subscriptions.forEach(Subscription::complete);
+        synchronized (published) {
+            published.notifyAll();
+        }
+    }
+
+    /**
+     * Adds a listener of the snapshots and of the ended watches, called on the publishing thread.
+     *
+     * @param listener the listener to add
+     */
+    void addListener(Listener listener) {
+        listeners.add(listener);
+        var snapshot = latest.get();
+        if (snapshot != null) {
+            listener.onSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Removes a listener added by {@link #addListener(Listener)}.
+     *
+     * @param listener the listener to remove
+     */
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Resolves the Kubernetes service by watching EndpointSlices.
+     */
+    private void resolve() {
+        if (state.get() == State.SHUTDOWN) {
+            return;
+        }
+        try {
+            executor.execute(this::watch);
+        } catch (RejectedExecutionException e) {
+            onWatchEnded(e);
+        }
+    }
+
+    /**
+     * Restarts the watch aborted by {@link #relist()} at once.
+     */
+    private void onRelistAborted() {
+        LOGGER.log(Level.FINE, "Watch of service {0} aborted, listing EndpointSlices again",
+                new Object[]{params.service()});
+        var current = state.get();
+        if ((current == State.SYNCING || current == State.WATCHING) && state.compareAndSet(current, State.SYNCING)) {
+            resolve();
+        }
+    }
+
+    private static void closeStream(Closeable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, "Cannot close watch stream", e);
+        }
+    }
+
+    /**
+     * Moves the publisher to {@code BACKOFF} after the watch ended, reports it to the listeners and
+     * schedules a refresh if there are subscribers.
+     *
+     * @param cause the error the watch failed with, or {@code null} if the watch was finished by the server
+     */
+    private void onWatchEnded(Throwable cause) {
+        var current = state.get();
+        while (current != State.SHUTDOWN && !state.compareAndSet(current, State.BACKOFF)) {
+            current = state.get();
+        }
+        if (current == State.SHUTDOWN) {
+            return;
+        }
+        listeners.forEach(listener -> listener.onWatchEnded(cause));
+        if (!subscriptions.isEmpty()) {
+            var backoff = Math.min(INITIAL_BACKOFF.toNanos() * Math.pow(BACKOFF_MULTIPLIER, retries.getAndIncrement()),
+                    MAX_BACKOFF.toNanos());
+            var jitter = 1 + BACKOFF_JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+            CompletableFuture.delayedExecutor((long) (backoff * jitter), TimeUnit.NANOSECONDS).execute(this::refresh);
+        }
+    }
+
+    private void onInitialSyncTimeout() {
+        initialSyncExpired = true;
+        if (!initialSync.isDone() && deferring.compareAndSet(true, false)) {
+            LOGGER.log(Level.FINE,
+                    "Initial sync of service {0} did not complete within {1}, publishing partial state",
+                    new Object[]{params.service(), initialSyncTimeout});
+            publish();
+        }
+    }
+
+    /**
+     * Publishes an address admitted by the endpoint prober as a new generation, unless the EndpointSlices
+     * are being synced, in which case it is published once the sync completes.
+     */
+    private void onAddressAdmitted() {
+        if (!deferring.get()) {
+            generation.incrementAndGet();
+            publish();
+        }
+    }
+
+    /**
+     * Publishes the current addresses of all indexed EndpointSlices as an immutable snapshot
+     * to all listeners and subscribers.
+     * <p>
+     * A snapshot without addresses is published once the EndpointSlices are listed, as the target has
+     * no ready endpoints then. If the published addresses become empty, the empty snapshot is held back
+     * for {@link ResolverOptions#emptyGracePeriod()}, so a transient empty state, e.g., while all pods of
+     * a deployment are replaced at once, keeps the last addresses.
+     *
+     * @return {@code true} if changed addresses were passed to the listeners and subscribers
+     */
+    private boolean publish() {
+        return publish(false);
+    }
+
+    /**
+     * Publishes the current addresses of all indexed EndpointSlices.
+     *
+     * @param graceElapsed whether the grace period of an empty state elapsed
+     * @return {@code true} if changed addresses were passed to the listeners and subscribers, {@code false}
+     * if nothing was published, the empty state was held back, or the prober held back all added addresses
+     * of an unchanged state
+     */
+    private boolean publish(boolean graceElapsed) {
+        var generation = this.generation.get();
+        if (state.get() == State.SHUTDOWN || (endpoints.isEmpty() && !listCompleted)) {
+            return false;
+        }
+
+        var addressGroups = addressGroups();
+        var allAddresses = prober != null ? prober.admit(addressGroups) : addressGroups;
+        if (allAddresses.isEmpty() && !graceElapsed && holdBackEmpty(generation)) {
+            return false;
+        }
+        if (!allAddresses.isEmpty()) {
+            emptySince.set(NOT_EMPTY);
+        }
+
+        LOGGER.log(Level.FINEST, () -> String.format(
+                "All resolved addresses for service %s: %s",
+                params.service(), addressGroupsToString(allAddresses)));
+
+        var snapshot = new EndpointSnapshot(params, generation, resourceVersions, allAddresses);
+        var previous = latest.getAndAccumulate(snapshot, EndpointSnapshotPublisher::newer);
+        synchronized (published) {
+            published.notifyAll();
+        }
+        listeners.forEach(listener -> listener.onSnapshot(snapshot));
+        subscriptions.forEach(subscription -> {
+            subscription.onSnapshot(snapshot);
+            subscription.signal();
+        });
+        return previous == null || !previous.addressGroups().equals(allAddresses);
+    }
+
+    /**
+     * Holds back an empty state which would replace published addresses until the grace period elapses.
+     *
+     * @param generation the generation of the empty state
+     * @return {@code true} if the empty state is held back
+     */
+    private boolean holdBackEmpty(long generation) {
+        var previous = latest.get();
+        if (emptyGracePeriod == null || emptyGracePeriod.isZero()
+                || previous == null || previous.addressGroups().isEmpty()) {
+            return false;
+        }
+        if (emptySince.compareAndSet(GRACE_ELAPSED, NOT_EMPTY)) {
+            // the grace period elapsed during a relist, which completed still empty
+            return false;
+        }
+        if (emptySince.compareAndSet(NOT_EMPTY, generation)) {
+            LOGGER.log(Level.FINE, "No ready endpoints of service {0}, keeping its addresses for {1}",
+                    new Object[]{params.service(), emptyGracePeriod});
+            CompletableFuture.delayedExecutor(emptyGracePeriod.toNanos(), TimeUnit.NANOSECONDS)
+                    .execute(() -> onEmptyGraceElapsed(generation));
+        }
+        return true;
+    }
+
+    private void onEmptyGraceElapsed(long generation) {
+        if (!deferring.get()) {
+            if (emptySince.compareAndSet(generation, NOT_EMPTY)) {
+                LOGGER.log(Level.FINE, "Service {0} has no ready endpoints, publishing no addresses",
+                        new Object[]{params.service()});
+                publish(true);
+            }
+            return;
+        }
+        // a relist defers publishing, the empty state is published at once if it completes still empty
+        if (emptySince.compareAndSet(generation, GRACE_ELAPSED) && !deferring.get()) {
+            publish();
+        }
+    }
+
+    private static EndpointSnapshot newer(EndpointSnapshot current, EndpointSnapshot next) {
+        return current == null || next.generation() > current.generation() ? next : current;
+    }
+
+    /**
+     * Collects the address groups of the ready endpoints of all indexed EndpointSlices. Endpoints backed
+     * by the same pod, i.e., the IPv4 and IPv6 endpoints of a dual-stack pod, are merged into one group
+     * placed where the first of them occurs, and the addresses of every group are selected and ordered
+     * by the address family policy. The groups are sorted canonically, see {@link AddressOrder}, as
+     * neither the slices nor their endpoints are indexed in a stable order.
+     *
+     * @return the distinct non-empty address groups in the canonical order
+     */
+    private List<List<SocketAddress>> addressGroups() {
+        var groups = new ArrayList<List<SocketAddress>>();
+        var groupsByTarget = new HashMap<Long, List<SocketAddress>>();
+        for (var slice : endpoints.values()) {
+            for (int i = 0; i < slice.endpointCount(); i++) {
+                if (!slice.isReady(i)) {
+                    continue;
+                }
+                var group = slice.addressGroup(i);
+                var targetKey = slice.targetKey(i);
+                var merged = targetKey == 0 ? null : groupsByTarget.putIfAbsent(targetKey, group);
+                if (merged == null) {
+                    groups.add(group);
+                    continue;
+                }
+                for (var address : group) {
+                    if (!merged.contains(address)) {
+                        merged.add(address);
+                    }
+                }
+            }
+        }
+        return groups.stream()
+                .map(addressFamilyPolicy::order)
+                .filter(group -> !group.isEmpty())
+                .distinct()
+                .sorted(AddressOrder.CANONICAL_GROUPS)
+                .toList();
+    }
+
+    /**
+     * Watches for changes in EndpointSlices and publishes the resolved addresses. Events are
+     * decoded by a {@link FilteringEventDecoder}, so endpoints which are not ready and ports
+     * not used by the target are skipped while parsing.
+     */
+    private void watch() {
+        watchesStarted.incrementAndGet();
+        watcher.watch(params.service(), decoder, new EndpointSliceWatcher.Subscriber() {
+            private final Set<String> listed = new HashSet<>();
+            private boolean syncing = false;
+
+            @Override
+            public void onSyncStarted() {
+                // list started, its EndpointSlices are published at once when it completes
+                syncing = true;
+                listed.clear();
+                deferring.set(initialSync.isDone() || !initialSyncExpired);
+                if (initialSyncExpired && !initialSync.isDone() && deferring.compareAndSet(true, false)) {
+                    publish();
+                }
+            }
+
+            @Override
+            public void onSyncCompleted() {
+                // EndpointSlices not present in the (re)started list were deleted in the meantime
+                syncing = false;
+                deferring.set(false);
+                resourceVersions.keySet().retainAll(listed);
+                if (endpoints.keySet().retainAll(listed)) {
+                    generation.incrementAndGet();
+                }
+                listed.clear();
+                listCompleted = true;
+                state.compareAndSet(State.SYNCING, State.WATCHING);
+                retries.set(0);
+                publish();
+                initialSync.complete(null);
+            }
+
+            @Override
+            public void onEvent(Event event) {
+                onEvent(event, null);
+            }
+
+            @Override
+            public void onStreamOpened(Closeable watchStream) {
+                stream.set(watchStream);
+                if (relistRequested.get()) {
+                    closeStream(watchStream);
+                }
+            }
+
+            @Override
+            public void onEvent(Event event, EventTiming timing) {
+                lastEventNanos = timing != null ? timing.receivedNanos() : System.nanoTime();
+                if (event.endpointSlice() != null && event.endpointSlice().metadata() != null
+                        && event.endpointSlice().metadata().resourceVersion() != null) {
+                    lastResourceVersion = event.endpointSlice().metadata().resourceVersion();
+                }
+
+                // watch event occurred
+                if (!SUPPORTED_KUBERNETES_EVENTS.contains(event.type())) {
+                    LOGGER.log(Level.FINER, "Unsupported Kubernetes event type {0}",
+                            new Object[]{event.type().toString()});
+                    return;
+                }
+
+                if (event.endpointSlice() == null) {
+                    LOGGER.log(Level.FINE, "No EndpointSlice found in watch event");
+                    return;
+                }
+
+                if (event.endpointSlice().metadata() == null || event.endpointSlice().metadata().name() == null) {
+                    LOGGER.log(Level.FINE, "No EndpointSlice name found in watch event metadata");
+                    return;
+                }
+
+                if (event.type().equals(EventType.DELETED)) {
+                    LOGGER.log(Level.FINE, "EndpointSlice {0} was deleted",
+                            new Object[]{event.endpointSlice().metadata().name()});
+                    if (remove(event.endpointSlice().metadata().name()) && !deferring.get()) {
+                        publish();
+                    }
+                    return;
+                }
+
+                LOGGER.log(Level.FINER, "Resolving addresses for service {0}", new Object[]{params.service()});
+                var endpointSliceAddresses = buildAddresses(event.endpointSlice());
+                if (endpointSliceAddresses.isEmpty()) {
+                    // the slice lost all its usable endpoints, e.g., its ports were dropped with its last endpoint
+                    LOGGER.log(Level.FINE, "No usable addresses found for service {0} in EndpointSlice {1}",
+                            new Object[]{params.service(), event.endpointSlice().metadata().name()});
+                    if (remove(event.endpointSlice().metadata().name()) && !deferring.get()
+                            && publish() && !syncing && timing != null) {
+                        recordPropagationLatency(event.endpointSlice(), timing);
+                    }
+                } else {
+                    LOGGER.log(Level.FINEST,
+                            () -> String.format(
+                                    "Resolved addresses for service %s from EndpointSlice %s: %s",
+                                    params.service(),
+                                    event.endpointSlice().metadata().name(),
+                                    addressGroupsToString(endpointSliceAddresses.get().addressGroups())
+                            ));
+                    endpoints.put(event.endpointSlice().metadata().name(), endpointSliceAddresses.get());
+                    var resourceVersion = event.endpointSlice().metadata().resourceVersion();
+                    if (resourceVersion != null) {
+                        resourceVersions.put(event.endpointSlice().metadata().name(), resourceVersion);
+                    }
+                    generation.incrementAndGet();
+                    if (syncing) {
+                        listed.add(event.endpointSlice().metadata().name());
+                    }
+                    if (!deferring.get() && publish() && !syncing && timing != null) {
+                        recordPropagationLatency(event.endpointSlice(), timing);
+                    }
+                }
+            }
+
+            /**
+             * Removes the addresses of an EndpointSlice from the index.
+             *
+             * @param name the name of the EndpointSlice
+             * @return {@code true} if the EndpointSlice was indexed
+             */
+            private boolean remove(String name) {
+                resourceVersions.remove(name);
+                if (endpoints.remove(name) == null) {
+                    return false;
+                }
+                generation.incrementAndGet();
+                return true;
+            }
+
+            private void recordPropagationLatency(EndpointSlice endpointSlice, EventTiming timing) {
+                var triggerTime = endpointSlice.metadata().lastChangeTriggerTime();
+                if (triggerTime == null) {
+                    return;
+                }
+                var publishedNanos = System.nanoTime();
+                propagationLatency.record(
+                        Duration.between(triggerTime, timing.receivedAt()).toNanos(),
+                        timing.decodeNanos(),
+                        publishedNanos - timing.decodedNanos());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                // watch encountered an error
+                stream.set(null);
+                if (relistRequested.compareAndSet(true, false)) {
+                    onRelistAborted();
+                    return;
+                }
+                watchFailures.incrementAndGet();
+                if (throwable instanceof EndpointSliceWatcher.EventTooLargeException) {
+                    // the event is lost, the EndpointSlices are listed again by the next watch
+                    oversizedEvents.incrementAndGet();
+                    LOGGER.log(Level.WARNING, "Rejected oversized EndpointSlice event of service "
+                            + params.service() + ", listing EndpointSlices again", throwable);
+                } else {
+                    LOGGER.log(Level.FINE, "Encountered an error when watching EndpointSlice", throwable);
+                }
+                onWatchEnded(throwable);
+            }
+
+            @Override
+            public boolean isUnresolved() {
+                return latest.get() == null;
+            }
+
+            @Override
+            public void onCompleted() {
+                // watch was finished and it should be performed again after some backoff
+                stream.set(null);
+                if (relistRequested.compareAndSet(true, false)) {
+                    onRelistAborted();
+                    return;
+                }
+                LOGGER.log(Level.FINER, "Watch stream of EndpointSlice was finished by server");
+                onWatchEnded(null);
+            }
+        });
+    }
+
+    /**
+     * Extracts and processes network addresses from a Kubernetes {@link EndpointSlice}.
+     * <p>
+     * This method performs several key steps in the address resolution process:
+     * <ol>
+     *   <li>Finds the appropriate port to use from the EndpointSlice</li>
+     *   <li>Packs the endpoints' IP addresses and readiness conditions into a {@link CompactEndpointSlice},
+     *   along with the pods backing them if the endpoints of both address families are used</li>
+     * </ol>
+     * <p>
+     * EndpointSlices of an address family excluded by the address family policy are skipped.
+     * Socket addresses of the ready endpoints are materialized from the compact slice only
+     * when the addresses are published. If no suitable port can be found or the slice is skipped,
+     * an empty Optional will be returned.
+     *
+     * @param endpointSlice the Kubernetes EndpointSlice containing endpoint information
+     * @return an Optional containing the compact endpoints of the slice,
+     * or an empty Optional if no addresses could be resolved
+     */
+    private Optional<CompactEndpointSlice> buildAddresses(EndpointSlice endpointSlice) {
+        var addressType = endpointSlice.addressType();
+        if (!addressFamilyPolicy.accepts(addressType)) {
+            return Optional.empty();
+        }
+        var keepTargets = (addressType == AddressType.IPV4 || addressType == AddressType.IPV6)
+                && addressFamilyPolicy != AddressFamilyPolicy.IPV4_ONLY
+                && addressFamilyPolicy != AddressFamilyPolicy.IPV6_ONLY;
+        return findPort(endpointSlice.ports())
+                .map(port -> CompactEndpointSlice.of(endpointSlice.endpoints(), port, keepTargets));
+    }
+
+    /**
+     * Finds the port to use for the service from the list of ports in the
+     * EndpointSlice. If the port is not provided in {@link ResolverTarget}
+     * then first port found in EndpointSlice is used.
+     *
+     * @param ports the list of ports in the EndpointSlice
+     * @return an optional port number
+     */
+    private Optional<Integer> findPort(List<EndpointPort> ports) {
+        if (params.port() == null) {
+            return ports.stream().map(EndpointPort::port).findFirst();
+        }
+
+        try {
+            return Optional.of(Integer.parseInt(params.port()));
+        } catch (NumberFormatException e) {
+            return ports.stream()
+                    .filter(port -> port.name().equals(params.port()))
+                    .map(EndpointPort::port)
+                    .findFirst();
+        }
+    }
+
+    /**
+     * Converts a list of socket address groups into a human-readable string representation.
+     * The format is a nested structure like: [(addr1, addr2), (addr3), (addr4, addr5)]
+     * where each group of addresses is represented in parentheses.
+     *
+     * @param addressGroups the list of socket address groups to convert to string
+     * @return a string representation of the address groups
+     */
+    private String addressGroupsToString(List<List<SocketAddress>> addressGroups) {
+        if (addressGroups == null || addressGroups.isEmpty()) {
+            return "[]";
+        }
+
+        var result = new StringBuilder("[");
+
+        result.append("(");
+        boolean firstAddr = true;
+        for (SocketAddress address : addressGroups.get(0)) {
+            if (!firstAddr) {
+                result.append(", ");
+            }
+            result.append(address);
+            firstAddr = false;
+        }
+        result.append(")");
+
+        for (int i = 1; i < addressGroups.size(); i++) {
+            result.append(", (");
+            firstAddr = true;
+            for (SocketAddress address : addressGroups.get(i)) {
+                if (!firstAddr) {
+                    result.append(", ");
+                }
+                result.append(address);
+                firstAddr = false;
+            }
+            result.append(")");
+        }
+
+        result.append("]");
+        return result.toString();
+    }
+
+    /**
+     * Watch of the EndpointSlices of a service, {@link EndpointSliceWatcher#watch(String, EventDecoder,
+     * EndpointSliceWatcher.Subscriber)} unless replaced, e.g., by concurrency tests.
+     */
+    @FunctionalInterface
+    interface Watch {
+
+        /**
+         * Lists and watches the EndpointSlices of the service. This method blocks until the watch ends.
+         *
+         * @param serviceName the name of the Kubernetes service
+         * @param decoder     the decoder of watch events
+         * @param subscriber  the subscriber that receives events
+         */
+        void watch(String serviceName, EventDecoder decoder, EndpointSliceWatcher.Subscriber subscriber);
+    }
+
+    /**
+     * Listener of a publisher, called on the publishing thread.
+     */
+    interface Listener {
+
+        /**
+         * Called with every published snapshot. Snapshots published concurrently may be passed out of order.
+         *
+         * @param snapshot the published snapshot
+         */
+        void onSnapshot(EndpointSnapshot snapshot);
+
+        /**
+         * Called when the watch of the target ended, until the publisher is refreshed.
+         *
+         * @param cause the error the watch failed with, or {@code null} if the watch was finished by the server
+         */
+        void onWatchEnded(Throwable cause);
+    }
+
+    /**
+     * The MBean of the publisher. Every attribute is read from the live state of the publisher.
+     */
+    private final class Diagnostics implements EndpointSnapshotPublisherMXBean {
+
+        @Override
+        public String getTarget() {
+            return params.describe();
+        }
+
+        @Override
+        public String getState() {
+            return state.get().name();
+        }
+
+        @Override
+        public long getGeneration() {
+            return generation.get();
+        }
+
+        @Override
+        public Map<String, Integer> getSliceEndpointCounts() {
+            var counts = new TreeMap<String, Integer>();
+            endpoints.forEach((name, slice) -> {
+                var ready = 0;
+                for (int i = 0; i < slice.endpointCount(); i++) {
+                    if (slice.isReady(i)) {
+                        ready++;
+                    }
+                }
+                counts.put(name, ready);
+            });
+            return counts;
+        }
+
+        @Override
+        public Map<String, String> getSliceResourceVersions() {
+            return new TreeMap<>(resourceVersions);
+        }
+
+        @Override
+        public List<String> getPublishedAddresses() {
+            var snapshot = latest.get();
+            if (snapshot == null) {
+                return List.of();
+            }
+            return snapshot.addressGroups().stream()
+                    .map(group -> group.stream().map(SocketAddress::toString).collect(Collectors.joining(", ")))
+                    .toList();
+        }
+
+        @Override
+        public String getLastResourceVersion() {
+            return lastResourceVersion;
+        }
+
+        @Override
+        public long getMillisSinceLastEvent() {
+            var receivedNanos = lastEventNanos;
+            return receivedNanos == NO_EVENT ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedNanos);
+        }
+
+        @Override
+        public long getReconnects() {
+            return reconnects();
+        }
+
+        @Override
+        public long getWatchFailures() {
+            return watchFailures.get();
+        }
+
+        @Override
+        public long getOversizedEvents() {
+            return oversizedEvents.get();
+        }
+
+        @Override
+        public void forceRelist() {
+            relist();
+        }
+    }
+
+    /**
+     * States of the publisher.
+     */
+    private enum State {
+        /** Not started yet. */
+        IDLE,
+        /** Watch started, the initial state is being listed. */
+        SYNCING,
+        /** Initial state listed, changes are being watched. */
+        WATCHING,
+        /** Watch ended, waiting to be refreshed. */
+        BACKOFF,
+        /** Closed, no more snapshots are published. */
+        SHUTDOWN
+    }
+
+    /**
+     * Subscription of a single subscriber, passing it the latest snapshot when requested.
+     * All signals of the subscriber are serialized by a work-in-progress counter.
+     */
+    private final class Subscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super EndpointSnapshot> subscriber;
+        private final Executor executor;
+
+        private final AtomicReference<EndpointSnapshot> pending = new AtomicReference<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean completed = false;
+        private volatile boolean cancelled = false;
+        private volatile Throwable invalidRequest;
+
+        // accessed only by the draining task
+        private boolean subscribed = false;
+        private long deliveredGeneration = -1;
+
+        Subscription(Flow.Subscriber<? super EndpointSnapshot> subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive subscription request: " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, requested) -> {
+                    var sum = current + requested;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void onSnapshot(EndpointSnapshot snapshot) {
+            if (snapshot != null) {
+                pending.accumulateAndGet(snapshot, EndpointSnapshotPublisher::newer);
+            }
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Cannot signal subscriber of service " + params.service(), e);
+                    cancel();
+                }
+            }
+        }
+
+        private void drain() {
+            var missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                while (!cancelled && demand.get() > 0) {
+                    var snapshot = pending.getAndSet(null);
+                    if (snapshot == null) {
+                        break;
+                    }
+                    if (snapshot.generation() > deliveredGeneration) {
+                        deliveredGeneration = snapshot.generation();
+                        demand.decrementAndGet();
+                        try {
+                            subscriber.onNext(snapshot);
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.WARNING, "Subscriber of service " + params.service()
+                                    + " failed, cancelling its subscription", e);
+                            cancel();
+                        }
+                    }
+                }
+                if (!cancelled && invalidRequest != null) {
+                    cancel();
+                    subscriber.onError(invalidRequest);
+                } else if (!cancelled && completed) {
+                    cancel();
+                    subscriber.onComplete();
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
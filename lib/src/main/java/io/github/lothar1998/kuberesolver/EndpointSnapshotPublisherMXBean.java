@@ -0,0 +1,98 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JMX view of the live state of an {@link EndpointSnapshotPublisher}, registered as
+ * {@code io.github.lothar1998.kuberesolver:type=EndpointSnapshotPublisher,target=...,id=...} while the
+ * publisher runs.
+ * <p>
+ * The attributes are computed from the state of the publisher when they are read, so the view costs nothing
+ * while it is not inspected.
+ */
+public interface EndpointSnapshotPublisherMXBean {
+
+    /**
+     * Returns the resolved target.
+     *
+     * @return the target in the {@code namespace/service:port} form
+     */
+    String getTarget();
+
+    /**
+     * Returns the state of the watch of the target.
+     *
+     * @return {@code IDLE}, {@code SYNCING}, {@code WATCHING}, {@code BACKOFF} or {@code SHUTDOWN}
+     */
+    String getState();
+
+    /**
+     * Returns the generation of the indexed EndpointSlices, incremented by every change.
+     *
+     * @return the generation
+     */
+    long getGeneration();
+
+    /**
+     * Returns the number of ready endpoints of every indexed EndpointSlice.
+     *
+     * @return the number of ready endpoints by the name of the EndpointSlice
+     */
+    Map<String, Integer> getSliceEndpointCounts();
+
+    /**
+     * Returns the resource versions of the indexed EndpointSlices.
+     *
+     * @return the resource version by the name of the EndpointSlice
+     */
+    Map<String, String> getSliceResourceVersions();
+
+    /**
+     * Returns the address groups of the latest published snapshot.
+     *
+     * @return the address groups, each formatted as a comma-separated list of addresses
+     */
+    List<String> getPublishedAddresses();
+
+    /**
+     * Returns the resource version of the last received event or bookmark.
+     *
+     * @return the resource version, or {@code null} if no event was received yet
+     */
+    String getLastResourceVersion();
+
+    /**
+     * Returns the time since the last received event or bookmark.
+     *
+     * @return the time in milliseconds, or {@code -1} if no event was received yet
+     */
+    long getMillisSinceLastEvent();
+
+    /**
+     * Returns the number of watches started after the first one.
+     *
+     * @return the number of reconnections
+     */
+    long getReconnects();
+
+    /**
+     * Returns the number of watches which failed.
+     *
+     * @return the number of failed watches
+     */
+    long getWatchFailures();
+
+    /**
+     * Returns the number of watch events rejected for their size.
+     *
+     * @return the number of oversized events
+     * @see EndpointSnapshotPublisher#oversizedEvents()
+     */
+    long getOversizedEvents();
+
+    /**
+     * Lists the EndpointSlices of the target again, see {@link EndpointSnapshotPublisher#relist()}.
+     */
+    void forceRelist();
+}
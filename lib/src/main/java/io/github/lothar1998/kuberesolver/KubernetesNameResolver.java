@@ -1,33 +1,26 @@
 package io.github.lothar1998.kuberesolver;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-
-import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
-import io.github.lothar1998.kuberesolver.kubernetes.InClusterEndpointSliceWatcher;
-import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
-import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
-import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
-import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
 
 import io.grpc.Attributes;
 import io.grpc.EquivalentAddressGroup;
 import io.grpc.NameResolver;
 import io.grpc.Status;
+import io.grpc.SynchronizationContext;
 
 /**
  * A gRPC {@link NameResolver} implementation that resolves Kubernetes services
@@ -65,21 +58,62 @@ import io.grpc.Status;
  * {@code kubernetes:///myservice:grpc}), the resolver will look for a port with
  * that name in the EndpointSlice. If a numerical port is provided, that port
  * will be used directly.
+ * <p>
+ * The first addresses are published once the initial state of the service is synced, i.e.,
+ * all its EndpointSlices are listed, instead of publishing the first slice alone and skewing
+ * the first calls onto it. The wait is bounded by {@link ResolverOptions#initialSyncTimeout()},
+ * after which the state received so far is published. {@link #initialSync()} completes once
+ * the initial sync is done.
+ * <p>
+ * The IPv4 and IPv6 endpoints of the same pod of a dual-stack service are published as one address
+ * group, with the addresses selected and ordered by the {@link AddressFamilyPolicy} of the target. The address
+ * groups are passed in a stable order, canonical or shuffled by the resolver, see {@link AddressOrder}.
+ * A target without ready endpoints is passed as an empty list of addresses, so the channel fails calls
+ * fast instead of routing them to removed pods, see {@link ResolverOptions#emptyGracePeriod()}.
+ * <p>
+ * If {@link ResolverOptions#slowStartWindow()} is set, the address groups of endpoints added after the
+ * initial sync carry a {@link SlowStartRamp} in their {@link #ATTR_SLOW_START_RAMP} attribute until the
+ * window elapses, which {@link SlowStartLoadBalancerProvider} weights the endpoints by.
+ * <p>
+ * The latency of propagating later changes, from the time the change was triggered in the
+ * cluster until the changed addresses are published by the watch thread, is recorded into
+ * {@link #propagationLatency()}. It does not include the hand-off to the channel's
+ * {@link SynchronizationContext}, and changes which are not published, e.g., an empty state
+ * held back by {@link ResolverOptions#emptyGracePeriod()}, are not recorded.
+ * <p>
+ * The EndpointSlices are watched by an {@link EndpointSnapshotPublisher}, which is also usable without
+ * gRPC. Its snapshots are passed to the listener on the channel's {@link SynchronizationContext},
+ * coalescing snapshots published faster than the listener consumes them.
+ * <p>
+ * If the {@code KUBERESOLVER_AGENT_SOCKET} environment variable is set, the resolver
+ * subscribes to the node-local resolver agent listening on that socket instead of watching
+ * the Kubernetes API itself, and falls back to the direct watch if the agent is unavailable.
  */
 public final class KubernetesNameResolver extends NameResolver {
 
-    private static final Logger LOGGER = Logger.getLogger(KubernetesNameResolver.class.getName());
+    /**
+     * The traffic ramp of an endpoint added recently, set on its address group while the ramp is not complete.
+     */
+    @EquivalentAddressGroup.Attr
+    public static final Attributes.Key<SlowStartRamp> ATTR_SLOW_START_RAMP =
+            Attributes.Key.create("io.github.lothar1998.kuberesolver.slowStartRamp");
 
-    private static final Set<EventType> SUPPORTED_KUBERNETES_EVENTS = Set.of(EventType.ADDED, EventType.MODIFIED,
-            EventType.DELETED);
+    private static final Logger LOGGER = Logger.getLogger(KubernetesNameResolver.class.getName());
 
-    private final Executor executor;
-    private final ResolverTarget params;
+    private final SynchronizationContext syncContext;
+    private final EndpointSnapshotPublisher publisher;
+    private final Duration slowStartWindow;
+    private final AddressOrder addressOrder;
+    private final PublisherListener publisherListener = new PublisherListener();
 
-    private final EndpointSliceWatcher watcher;
-    private final Semaphore semaphore = new Semaphore(1);
+    // latest snapshot not yet passed to the listener
+    private final AtomicReference<Snapshot> pending = new AtomicReference<>();
+    // accessed only from the synchronization context
+    private long deliveredVersion = -1;
+    private final Map<SocketAddress, Instant> addedAt = new HashMap<>();
+    private Set<SocketAddress> deliveredAddresses = Set.of();
 
-    private boolean defaultExecutorUsed = false;
+    private volatile boolean shutdown = false;
     private Listener listener;
 
     /**
@@ -90,8 +124,19 @@ public final class KubernetesNameResolver extends NameResolver {
      * @throws IOException if an error occurs while initializing the watcher
      */
     public KubernetesNameResolver(ResolverTarget params) throws IOException {
-        this(Executors.newSingleThreadExecutor(), params);
-        this.defaultExecutorUsed = true;
+        this(params, ResolverOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@link KubernetesNameResolver} with a default single-threaded
+     * executor and custom options.
+     *
+     * @param params  the target parameters for the resolver
+     * @param options the options of the resolver
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    public KubernetesNameResolver(ResolverTarget params, ResolverOptions options) throws IOException {
+        this(null, null, params, options, new PropagationLatency());
     }
 
     /**
@@ -102,13 +147,77 @@ public final class KubernetesNameResolver extends NameResolver {
      * @throws IOException if an error occurs while initializing the watcher
      */
     public KubernetesNameResolver(Executor executor, ResolverTarget params) throws IOException {
-        this.executor = executor;
-        this.params = params;
-        if (params.namespace() != null) {
-            this.watcher = new InClusterEndpointSliceWatcher(params.namespace());
-        } else {
-            this.watcher = new InClusterEndpointSliceWatcher();
-        }
+        this(executor, params, ResolverOptions.DEFAULT);
+    }
+
+    /**
+     * Creates a new {@link KubernetesNameResolver} with a custom executor and options.
+     *
+     * @param executor the executor to use for background tasks
+     * @param params   the target parameters for the resolver
+     * @param options  the options of the resolver
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    public KubernetesNameResolver(Executor executor, ResolverTarget params, ResolverOptions options)
+            throws IOException {
+        this(executor, null, params, options, new PropagationLatency());
+    }
+
+    /**
+     * Creates a new {@link KubernetesNameResolver} calling its listener on the given synchronization
+     * context and recording propagation latency of the target into the given histograms, which may
+     * be shared with other resolvers of the same target.
+     *
+     * @param executor           the executor to use for background tasks, or {@code null} to use
+     *                           a default single-threaded executor
+     * @param syncContext        the synchronization context of the channel, or {@code null} to use
+     *                           a context of the resolver
+     * @param params             the target parameters for the resolver
+     * @param options            the options of the resolver
+     * @param propagationLatency the propagation latency of the target
+     * @throws IOException if an error occurs while initializing the watcher
+     */
+    KubernetesNameResolver(Executor executor, SynchronizationContext syncContext, ResolverTarget params,
+                           ResolverOptions options, PropagationLatency propagationLatency) throws IOException {
+        this(syncContext, new EndpointSnapshotPublisher(executor, params, options, propagationLatency),
+                options);
+    }
+
+    /**
+     * Creates a new {@link KubernetesNameResolver} watching the EndpointSlices of the target with the given watch.
+     *
+     * @param executor           the executor to use for background tasks, or {@code null} to use
+     *                           a default single-threaded executor
+     * @param syncContext        the synchronization context of the channel, or {@code null} to use
+     *                           a context of the resolver
+     * @param params             the target parameters for the resolver
+     * @param options            the options of the resolver
+     * @param propagationLatency the propagation latency of the target
+     * @param watcher            the watch of the EndpointSlices of the target
+     */
+    KubernetesNameResolver(Executor executor, SynchronizationContext syncContext, ResolverTarget params,
+                           ResolverOptions options, PropagationLatency propagationLatency,
+                           EndpointSnapshotPublisher.Watch watcher) {
+        this(syncContext, new EndpointSnapshotPublisher(executor, params, options, propagationLatency, watcher),
+                options);
+    }
+
+    /**
+     * Creates a new {@link KubernetesNameResolver} passing the snapshots of the given publisher to its listener.
+     * The publisher is owned by the resolver and closed when the resolver is shut down.
+     *
+     * @param syncContext the synchronization context of the channel, or {@code null} to use
+     *                    a context of the resolver
+     * @param publisher   the publisher of the target, not started yet
+     * @param options     the options of the resolver
+     */
+    private KubernetesNameResolver(SynchronizationContext syncContext, EndpointSnapshotPublisher publisher,
+                                   ResolverOptions options) {
+        this.syncContext = syncContext != null ? syncContext : new SynchronizationContext((thread, throwable) ->
+                LOGGER.log(Level.SEVERE, "Uncaught exception in resolver synchronization context", throwable));
+        this.publisher = publisher;
+        this.slowStartWindow = options.slowStartWindow();
+        this.addressOrder = options.addressOrder().forResolver();
     }
 
     /**
@@ -120,7 +229,38 @@ public final class KubernetesNameResolver extends NameResolver {
     @Override
     public void start(Listener listener) {
         this.listener = listener;
-        refresh();
+        publisher.addListener(publisherListener);
+        publisher.start();
+    }
+
+    /**
+     * Returns a future completed once the initial state of the service is synced and
+     * published to the listener. The future is not completed when the initial sync times
+     * out, so it can be awaited, e.g., by readiness probes.
+     *
+     * @return the future of the initial sync
+     */
+    public CompletableFuture<Void> initialSync() {
+        return publisher.initialSync();
+    }
+
+    /**
+     * Returns the latency of propagating EndpointSlice changes of the target to the listener.
+     *
+     * @return the propagation latency of the target
+     */
+    public PropagationLatency propagationLatency() {
+        return publisher.propagationLatency();
+    }
+
+    /**
+     * Returns the publisher of the snapshots of the target, which may be subscribed by other clients
+     * of the target.
+     *
+     * @return the publisher backing this resolver
+     */
+    EndpointSnapshotPublisher publisher() {
+        return publisher;
     }
 
     /**
@@ -129,95 +269,48 @@ public final class KubernetesNameResolver extends NameResolver {
      */
     @Override
     public void refresh() {
-        if (semaphore.tryAcquire()) {
-            resolve();
-        }
+        publisher.refresh();
     }
 
     /**
-     * Resolves the Kubernetes service by watching EndpointSlices.
+     * Passes the latest published snapshot to the listener. Runs in the synchronization context.
      */
-    private void resolve() {
-        executor.execute(this::watch);
+    private void deliver() {
+        var snapshot = pending.getAndSet(null);
+        if (snapshot == null || snapshot.version() <= deliveredVersion || shutdown) {
+            return;
+        }
+        var addresses = toEquivalentAddressGroups(addressOrder.order(snapshot.addressGroups()), deliveredVersion < 0);
+        deliveredVersion = snapshot.version();
+        listener.onAddresses(addresses, Attributes.EMPTY);
+        recordDelivery(snapshot);
     }
 
     /**
-     * Watches for changes in EndpointSlices and updates the listener with resolved
-     * addresses.
+     * Records the delivered snapshot as a JFR event, if enabled. Runs in the synchronization context.
+     *
+     * @param snapshot the delivered snapshot
      */
-    private void watch() {
-        watcher.watch(params.service(), new EndpointSliceWatcher.Subscriber() {
-            private final Map<String, List<Set<SocketAddress>>> endpoints = new ConcurrentHashMap<>();
-
-            @Override
-            public void onEvent(Event event) {
-                // watch event occurred
-                if (!SUPPORTED_KUBERNETES_EVENTS.contains(event.type())) {
-                    LOGGER.log(Level.FINER, "Unsupported Kubernetes event type {0}",
-                            new Object[]{event.type().toString()});
-                    return;
-                }
-
-                if (event.endpointSlice() == null) {
-                    LOGGER.log(Level.FINE, "No EndpointSlice found in watch event");
-                    return;
-                }
-
-                if (event.endpointSlice().metadata() == null || event.endpointSlice().metadata().name() == null) {
-                    LOGGER.log(Level.FINE, "No EndpointSlice name found in watch event metadata");
-                    return;
-                }
-
-                if (event.type().equals(EventType.DELETED)) {
-                    LOGGER.log(Level.FINE, "EndpointSlice {0} was deleted",
-                            new Object[]{event.endpointSlice().metadata().name()});
-                    endpoints.remove(event.endpointSlice().metadata().name());
-                    return;
-                }
-
-                LOGGER.log(Level.FINER, "Resolving addresses for service {0}", new Object[]{params.service()});
-                var endpointSliceAddresses = buildAddresses(event.endpointSlice());
-                if (endpointSliceAddresses.isEmpty()) {
-                    LOGGER.log(Level.FINE, "No usable addresses found for service {0} in EndpointSlice {1}",
-                            new Object[]{params.service(), event.endpointSlice().metadata().name()});
-                } else {
-                    LOGGER.log(Level.FINEST,
-                            () -> String.format(
-                                    "Resolved addresses for service %s from EndpointSlice %s: %s",
-                                    params.service(),
-                                    event.endpointSlice().metadata().name(),
-                                    addressGroupsToString(endpointSliceAddresses.get())
-                            ));
-                    endpoints.put(event.endpointSlice().metadata().name(), endpointSliceAddresses.get());
-
-                    var allAddresses = endpoints.values().stream()
-                            .flatMap(List::stream)
-                            .distinct()
-                            .toList();
-
-                    LOGGER.log(Level.FINEST, () -> String.format(
-                            "All resolved addresses for service %s: %s",
-                            params.service(), addressGroupsToString(allAddresses)));
-                    listener.onAddresses(toEquivalentAddressGroups(allAddresses), Attributes.EMPTY);
-                }
-            }
-
-            @Override
-            public void onError(Throwable throwable) {
-                // watch encountered an error
-                LOGGER.log(Level.FINE, "Encountered an error when watching EndpointSlice", throwable);
-                listener.onError(Status.fromThrowable(throwable));
-                semaphore.release();
-            }
-
-            @Override
-            public void onCompleted() {
-                // watch was finished and it should be performed again after some backoff
-                LOGGER.log(Level.FINER, "Watch stream of EndpointSlice was finished by server");
-                listener.onError(Status.UNAVAILABLE);
-                semaphore.release();
-            }
-        });
+    private void recordDelivery(Snapshot snapshot) {
+        var event = new AddressesPublishedEvent();
+        if (!event.isEnabled()) {
+            deliveredAddresses = Set.of();
+            return;
+        }
+        var current = new HashSet<SocketAddress>();
+        snapshot.addressGroups().forEach(current::addAll);
+        var added = (int) current.stream().filter(address -> !deliveredAddresses.contains(address)).count();
+        var removed = (int) deliveredAddresses.stream().filter(address -> !current.contains(address)).count();
+        deliveredAddresses = current;
+        if (event.shouldCommit()) {
+            event.target = publisher.target().describe();
+            event.generation = snapshot.version();
+            event.addressGroups = snapshot.addressGroups().size();
+            event.addresses = current.size();
+            event.added = added;
+            event.removed = removed;
+            event.commit();
+        }
     }
 
     /**
@@ -225,9 +318,12 @@ public final class KubernetesNameResolver extends NameResolver {
      */
     @Override
     public void shutdown() {
-        if (defaultExecutorUsed && executor instanceof ExecutorService executor) {
-            executor.shutdownNow();
+        if (shutdown) {
+            return;
         }
+        shutdown = true;
+        publisher.removeListener(publisherListener);
+        publisher.close();
     }
 
     /**
@@ -241,126 +337,84 @@ public final class KubernetesNameResolver extends NameResolver {
     }
 
     /**
-     * Extracts and processes network addresses from a Kubernetes {@link EndpointSlice}.
-     * <p>
-     * This method performs several key steps in the address resolution process:
-     * <ol>
-     *   <li>Finds the appropriate port to use from the EndpointSlice</li>
-     *   <li>Filters for endpoints that are in the "ready" condition</li>
-     *   <li>Maps each endpoint's IP addresses to socket addresses using the resolved port</li>
-     * </ol>
+     * Converts a list of socket address groups into a list of {@link EquivalentAddressGroup} objects.
+     * Each group of socket addresses is transformed into a single {@link EquivalentAddressGroup},
+     * which gRPC uses to represent a group of equivalent addresses for load balancing.
      * <p>
-     * If no suitable port can be found or if the EndpointSlice contains no ready endpoints,
-     * an empty Optional will be returned.
+     * If slow start is enabled, the time every address was first delivered is tracked, and a group added
+     * after the initial addresses carries its {@link SlowStartRamp} from the time its oldest address was
+     * added until the ramp is complete. Runs in the synchronization context.
      *
-     * @param endpointSlice the Kubernetes EndpointSlice containing endpoint information
-     * @return an Optional containing a list of socket address sets for ready endpoints,
-     * or an empty Optional if no addresses could be resolved
+     * @param addressGroups the list of socket address groups to convert
+     * @param initial       whether the groups are the first ones passed to the listener
+     * @return a list of {@link EquivalentAddressGroup} objects, each representing one group of addresses
      */
-    private Optional<List<Set<SocketAddress>>> buildAddresses(EndpointSlice endpointSlice) {
-        return findPort(endpointSlice.ports())
-                .map(port -> endpointSlice.endpoints().stream()
-                        .filter(endpoint -> endpoint.conditions().isReady())
-                        .map(endpoint -> buildAddressGroup(endpoint.addresses(), port))
-                        .filter(group -> !group.isEmpty())
-                        .toList());
-    }
-
-    /**
-     * Finds the port to use for the service from the list of ports in the
-     * EndpointSlice. If the port is not provided in {@link ResolverTarget}
-     * then first port found in EndpointSlice is used.
-     *
-     * @param ports the list of ports in the EndpointSlice
-     * @return an optional port number
-     */
-    private Optional<Integer> findPort(List<EndpointPort> ports) {
-        if (params.port() == null) {
-            return ports.stream().map(EndpointPort::port).findFirst();
+    private List<EquivalentAddressGroup> toEquivalentAddressGroups(List<List<SocketAddress>> addressGroups,
+                                                                   boolean initial) {
+        if (slowStartWindow == null) {
+            return addressGroups.stream()
+                    .map(EquivalentAddressGroup::new)
+                    .toList();
         }
 
-        try {
-            return Optional.of(Integer.parseInt(params.port()));
-        } catch (NumberFormatException e) {
-            return ports.stream()
-                    .filter(port -> port.name().equals(params.port()))
-                    .map(EndpointPort::port)
-                    .findFirst();
+        var now = Instant.now();
+        var current = new HashMap<SocketAddress, Instant>();
+        var groups = new ArrayList<EquivalentAddressGroup>(addressGroups.size());
+        for (var group : addressGroups) {
+            var groupAddedAt = now;
+            for (var address : group) {
+                var addressAddedAt = addedAt.getOrDefault(address, initial ? Instant.EPOCH : now);
+                current.put(address, addressAddedAt);
+                if (addressAddedAt.isBefore(groupAddedAt)) {
+                    groupAddedAt = addressAddedAt;
+                }
+            }
+            var ramp = new SlowStartRamp(groupAddedAt, slowStartWindow);
+            if (ramp.isComplete(now)) {
+                groups.add(new EquivalentAddressGroup(group));
+            } else {
+                var attributes = Attributes.newBuilder().set(ATTR_SLOW_START_RAMP, ramp).build();
+                groups.add(new EquivalentAddressGroup(group, attributes));
+            }
         }
+        addedAt.clear();
+        addedAt.putAll(current);
+        return groups;
     }
 
     /**
-     * Builds a set of socket addresses from a list of IP addresses and a port number.
-     * This method converts each IP address into an {@link InetSocketAddress} using the given port,
-     * which represents one endpoint in a Kubernetes EndpointSlice.
-     * <p>
-     * The resulting set of addresses is used in the name resolution process to provide
-     * gRPC clients with possible connection endpoints for the target service.
-     *
-     * @param addresses the list of IP addresses from a Kubernetes endpoint
-     * @param port      the port number to use for all addresses
-     * @return a set of {@link SocketAddress} objects representing the endpoint addresses
-     */
-    private Set<SocketAddress> buildAddressGroup(List<String> addresses, int port) {
-        return addresses.stream()
-                .map(address -> (SocketAddress) new InetSocketAddress(address, port))
-                .collect(Collectors.toSet());
-    }
-
-    /**
-     * Converts a list of socket address sets into a list of {@link EquivalentAddressGroup} objects.
-     * Each set of socket addresses is transformed into a single {@link EquivalentAddressGroup},
-     * which gRPC uses to represent a group of equivalent addresses for load balancing.
-     *
-     * @param addressGroups the list of socket address sets to convert
-     * @return a list of {@link EquivalentAddressGroup} objects, each representing one set of addresses
+     * Passes the snapshots and ended watches of the publisher to the listener in the synchronization context.
      */
-    private List<EquivalentAddressGroup> toEquivalentAddressGroups(List<Set<SocketAddress>> addressGroups) {
-        return addressGroups.stream()
-                .map(group -> new EquivalentAddressGroup(new ArrayList<>(group)))
-                .toList();
-    }
-
-    /**
-     * Converts a list of socket address sets into a human-readable string representation.
-     * The format is a nested structure like: [(addr1, addr2), (addr3), (addr4, addr5)]
-     * where each set of addresses is represented as a group in parentheses.
-     *
-     * @param addressGroups the list of socket address sets to convert to string
-     * @return a string representation of the address groups
-     */
-    private String addressGroupsToString(List<Set<SocketAddress>> addressGroups) {
-        if (addressGroups == null || addressGroups.isEmpty()) {
-            return "[]";
-        }
-
-        var result = new StringBuilder("[");
-
-        result.append("(");
-        boolean firstAddr = true;
-        for (SocketAddress address : addressGroups.get(0)) {
-            if (!firstAddr) {
-                result.append(", ");
+    private final class PublisherListener implements EndpointSnapshotPublisher.Listener {
+
+        @Override
+        public void onSnapshot(EndpointSnapshot endpointSnapshot) {
+            var snapshot = new Snapshot(endpointSnapshot.generation(), endpointSnapshot.addressGroups());
+            var previous = pending.getAndAccumulate(snapshot,
+                    (current, next) -> current == null || next.version() > current.version() ? next : current);
+            if (previous == null) {
+                syncContext.execute(KubernetesNameResolver.this::deliver);
             }
-            result.append(address);
-            firstAddr = false;
         }
-        result.append(")");
 
-        for (int i = 1; i < addressGroups.size(); i++) {
-            result.append(", (");
-            firstAddr = true;
-            for (SocketAddress address : addressGroups.get(i)) {
-                if (!firstAddr) {
-                    result.append(", ");
+        @Override
+        public void onWatchEnded(Throwable cause) {
+            // the listener refreshes the resolver after its backoff
+            var status = cause == null ? Status.UNAVAILABLE : Status.fromThrowable(cause);
+            syncContext.execute(() -> {
+                if (!shutdown) {
+                    listener.onError(status);
                 }
-                result.append(address);
-                firstAddr = false;
-            }
-            result.append(")");
+            });
         }
+    }
 
-        result.append("]");
-        return result.toString();
+    /**
+     * Immutable snapshot of the addresses of all indexed EndpointSlices.
+     *
+     * @param version       the version of the indexed EndpointSlices the snapshot was built from
+     * @param addressGroups the address groups passed to the listener
+     */
+    private record Snapshot(long version, List<List<SocketAddress>> addressGroups) {
     }
 }
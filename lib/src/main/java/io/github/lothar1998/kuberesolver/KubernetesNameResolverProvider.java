@@ -2,11 +2,22 @@ package io.github.lothar1998.kuberesolver;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 import io.grpc.NameResolver;
 import io.grpc.NameResolver.Args;
 import io.grpc.NameResolverProvider;
+import io.grpc.SynchronizationContext;
 
 /**
  * A gRPC {@link NameResolverProvider} that resolves service names using Kubernetes.
@@ -40,10 +51,31 @@ import io.grpc.NameResolverProvider;
  * by its name in the URI (e.g., {@code kubernetes:///myservice:grpc}), in which
  * case the resolver will look for an EndpointSlice port with that name. If a
  * numerical port is provided, that port will be used.
+ * <p>
+ * Targets known up front can be pre-warmed with {@link #prewarm(ResolverTarget...)} during
+ * application boot. Their watches are started in parallel and shared by all resolvers later
+ * created for those targets, which receive the already resolved addresses when started.
+ * <p>
+ * Clients other than gRPC channels, e.g., HTTP clients, can share the watch of a target by subscribing
+ * to its {@link #publisher(URI)}.
+ * <p>
+ * The watches of pre-warmed targets run until the provider is {@link #close() closed}, which should be done
+ * once the channels resolving those targets are shut down.
+ * <p>
+ * {@link #initialSync(URI)} exposes the initial sync of a target, e.g., for readiness probes,
+ * and {@link #propagationLatency(URI)} the latency of propagating its changes.
  */
-public class KubernetesNameResolverProvider extends NameResolverProvider {
+public class KubernetesNameResolverProvider extends NameResolverProvider implements AutoCloseable {
 
     private String scheme = "kubernetes";
+    private ResolverOptions options = ResolverOptions.DEFAULT;
+
+    private final Map<ResolverTarget, SharedResolution> prewarmed = new ConcurrentHashMap<>();
+    private final Map<ResolverTarget, CompletableFuture<Void>> initialSyncs = new ConcurrentHashMap<>();
+    private final Map<ResolverTarget, PropagationLatency> propagationLatencies = new ConcurrentHashMap<>();
+    private ExecutorService prewarmExecutor;
+    private Function<ResolverTarget, EndpointSnapshotPublisher.Watch> watches;
+    private volatile boolean closed = false;
 
     /**
      * Constructs a new provider with a custom scheme.
@@ -54,12 +86,45 @@ public class KubernetesNameResolverProvider extends NameResolverProvider {
         this.scheme = schema;
     }
 
+    /**
+     * Constructs a new provider with a custom scheme and resolver options.
+     *
+     * @param schema  the URI scheme this provider should support (e.g., "kubernetes")
+     * @param options the options of created resolvers
+     */
+    public KubernetesNameResolverProvider(String schema, ResolverOptions options) {
+        this.scheme = schema;
+        this.options = options;
+    }
+
+    /**
+     * Constructs a new provider with the default scheme ("kubernetes") and custom resolver options.
+     *
+     * @param options the options of created resolvers
+     */
+    public KubernetesNameResolverProvider(ResolverOptions options) {
+        this.options = options;
+    }
+
     /**
      * Constructs a new provider with the default scheme ("kubernetes").
      */
     public KubernetesNameResolverProvider() {
     }
 
+    /**
+     * Constructs a new provider watching the EndpointSlices of every target with the watch created
+     * by the given function instead of the Kubernetes API, e.g., in tests.
+     *
+     * @param options the options of created resolvers
+     * @param watches the function creating the watch of a target
+     */
+    KubernetesNameResolverProvider(ResolverOptions options,
+                                   Function<ResolverTarget, EndpointSnapshotPublisher.Watch> watches) {
+        this.options = options;
+        this.watches = watches;
+    }
+
     /**
      * Indicates whether this provider is available for use.
      *
@@ -91,28 +156,188 @@ public class KubernetesNameResolverProvider extends NameResolverProvider {
     public NameResolver newNameResolver(URI targetUri, Args args) {
         if (targetUri.getScheme().equals(this.scheme)) {
             var params = ResolverTarget.parse(targetUri);
-            return buildResolver(args.getOffloadExecutor(), params);
+            var resolution = prewarmed.get(params);
+            if (resolution != null) {
+                return new SharedNameResolver(resolution, args.getSynchronizationContext());
+            }
+            return buildResolver(args.getOffloadExecutor(), args.getSynchronizationContext(), params);
         }
         return null;
     }
 
     /**
-     * Builds a {@link KubernetesNameResolver} using the provided executor and target parameters.
+     * Starts watching the given target URIs ahead of channel creation.
+     *
+     * @param targetUris the URIs of the targets, with the scheme of this provider
+     * @return a future completed once all targets are resolved or failed to resolve for the first time
+     * @throws IllegalArgumentException if any URI has a different scheme or cannot be parsed
+     * @see #prewarm(ResolverTarget...)
+     */
+    public CompletableFuture<Void> prewarm(Collection<URI> targetUris) {
+        var targets = targetUris.stream()
+                .map(this::parseTarget)
+                .toArray(ResolverTarget[]::new);
+        return prewarm(targets);
+    }
+
+    /**
+     * Starts watching the given targets ahead of channel creation.
+     * <p>
+     * Each target is watched on its own thread, so all targets are resolved in parallel.
+     * Resolvers later created for a pre-warmed target share its watch and receive the
+     * addresses resolved so far synchronously when started. Pre-warming a target again has
+     * no effect, the returned future then completes with the first resolution of the earlier call.
+     *
+     * @param targets the targets to pre-warm
+     * @return a future completed once all targets are resolved or failed to resolve for the first time
+     * @throws IllegalStateException if the provider is closed
+     */
+    public CompletableFuture<Void> prewarm(ResolverTarget... targets) {
+        var ready = Arrays.stream(targets)
+                .distinct()
+                .map(this::getPrewarmed)
+                .map(SharedResolution::ready)
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(ready);
+    }
+
+    /**
+     * Returns the publisher of the resolved addresses of the given target, shared with all resolvers
+     * later created for that target. The target is pre-warmed if it was not already.
+     * <p>
+     * The publisher is owned by this provider and must not be closed; it is closed with the provider.
+     *
+     * @param targetUri the URI of the target, with the scheme of this provider
+     * @return the publisher of the target
+     * @throws IllegalArgumentException if the URI has a different scheme or cannot be parsed
+     * @throws IllegalStateException    if the provider is closed
+     * @see #prewarm(ResolverTarget...)
+     */
+    public EndpointSnapshotPublisher publisher(URI targetUri) {
+        return getPrewarmed(parseTarget(targetUri)).publisher();
+    }
+
+    /**
+     * Shuts down the watches of all pre-warmed targets, including those shared by {@link #publisher(URI)}.
+     * Resolvers sharing them are not updated anymore, while resolvers created afterwards watch their targets
+     * on their own. Closing the provider again has no effect.
+     */
+    @Override
+    public void close() {
+        List<SharedResolution> resolutions;
+        ExecutorService executor;
+        // guarded by the lock of getPrewarmed(), so no target is pre-warmed after the resolutions are drained
+        synchronized (this) {
+            closed = true;
+            resolutions = new ArrayList<>(prewarmed.values());
+            prewarmed.clear();
+            executor = prewarmExecutor;
+        }
+        resolutions.forEach(SharedResolution::shutdown);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the shared resolution of the given target, starting it if the target was not pre-warmed yet.
+     *
+     * @param target the target to pre-warm
+     * @return the shared resolution of the target
+     * @throws IllegalStateException if the provider is closed
+     */
+    private synchronized SharedResolution getPrewarmed(ResolverTarget target) {
+        if (closed) {
+            throw new IllegalStateException("Provider is closed");
+        }
+        return prewarmed.computeIfAbsent(target, key -> {
+            var resolution = new SharedResolution(key, buildResolver(getPrewarmExecutor(), null, key));
+            resolution.start();
+            return resolution;
+        });
+    }
+
+    private synchronized Executor getPrewarmExecutor() {
+        if (closed) {
+            throw new IllegalStateException("Provider is closed");
+        }
+        if (prewarmExecutor == null) {
+            prewarmExecutor = Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "kuberesolver-prewarm");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return prewarmExecutor;
+    }
+
+    /**
+     * Builds a {@link KubernetesNameResolver} using the provided executor, synchronization context
+     * and target parameters.
      *
-     * @param executor the executor for offloading tasks
-     * @param params   the parsed target parameters
+     * @param executor    the executor for offloading tasks
+     * @param syncContext the synchronization context of the channel, or {@code null} if not bound to a channel
+     * @param params      the parsed target parameters
      * @return a new {@link KubernetesNameResolver}
      * @throws RuntimeException if an I/O error occurs
      */
-    private NameResolver buildResolver(Executor executor, ResolverTarget params) {
+    private KubernetesNameResolver buildResolver(Executor executor, SynchronizationContext syncContext,
+                                                 ResolverTarget params) {
+        KubernetesNameResolver resolver;
         try {
-            if (executor != null) {
-                return new KubernetesNameResolver(executor, params);
-            }
-            return new KubernetesNameResolver(params);
+            resolver = watches == null
+                    ? new KubernetesNameResolver(executor, syncContext, params, options, getPropagationLatency(params))
+                    : new KubernetesNameResolver(executor, syncContext, params, options, getPropagationLatency(params),
+                    watches.apply(params));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        var initialSync = getInitialSync(params);
+        resolver.initialSync().thenRun(() -> initialSync.complete(null));
+        return resolver;
+    }
+
+    /**
+     * Returns a future completed once the initial state of the given target is synced by
+     * any resolver created by this provider, including a pre-warmed one. The future may
+     * be requested before the target's resolver is created.
+     *
+     * @param targetUri the URI of the target, with the scheme of this provider
+     * @return the future of the target's initial sync
+     * @throws IllegalArgumentException if the URI has a different scheme or cannot be parsed
+     * @see KubernetesNameResolver#initialSync()
+     */
+    public CompletableFuture<Void> initialSync(URI targetUri) {
+        return getInitialSync(parseTarget(targetUri)).copy();
+    }
+
+    /**
+     * Returns the latency of propagating EndpointSlice changes of the given target to the
+     * listeners, recorded by all resolvers of the target created by this provider.
+     *
+     * @param targetUri the URI of the target, with the scheme of this provider
+     * @return the propagation latency of the target
+     * @throws IllegalArgumentException if the URI has a different scheme or cannot be parsed
+     * @see PropagationLatency
+     */
+    public PropagationLatency propagationLatency(URI targetUri) {
+        return getPropagationLatency(parseTarget(targetUri));
+    }
+
+    private PropagationLatency getPropagationLatency(ResolverTarget target) {
+        return propagationLatencies.computeIfAbsent(target, key -> new PropagationLatency());
+    }
+
+    private CompletableFuture<Void> getInitialSync(ResolverTarget target) {
+        return initialSyncs.computeIfAbsent(target, key -> new CompletableFuture<>());
+    }
+
+    private ResolverTarget parseTarget(URI targetUri) {
+        if (!this.scheme.equals(targetUri.getScheme())) {
+            throw new IllegalArgumentException(
+                    String.format("URI '%s' does not match the '%s' scheme", targetUri, this.scheme));
+        }
+        return ResolverTarget.parse(targetUri);
     }
 
     /**
@@ -0,0 +1,112 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with exponential buckets.
+ * <p>
+ * Bucket {@code i} counts latencies below {@code 2^i} microseconds, so percentiles are
+ * reported with the precision of a factor of two, from 1 microsecond up to ~35 minutes.
+ * Negative latencies, e.g., caused by clock skew between the control plane and the client,
+ * are counted in the first bucket.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a single latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        var latency = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(latency));
+        count.incrementAndGet();
+        sumNanos.addAndGet(latency);
+        maxNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return the number of recorded latencies
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of the recorded latencies.
+     *
+     * @return the mean latency, or {@link Duration#ZERO} if nothing was recorded
+     */
+    public Duration mean() {
+        var count = this.count.get();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(sumNanos.get() / count);
+    }
+
+    /**
+     * Returns the maximum of the recorded latencies.
+     *
+     * @return the maximum latency, or {@link Duration#ZERO} if nothing was recorded
+     */
+    public Duration max() {
+        return Duration.ofNanos(maxNanos.get());
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the given percentile of the recorded latencies.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the percentile, or {@link Duration#ZERO} if nothing was recorded
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public Duration percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        long total = 0;
+        var counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return Duration.ZERO;
+        }
+
+        var rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Duration.ofNanos(Math.min(upperBoundNanos(i), maxNanos.get()));
+            }
+        }
+        return max();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%s p50=%s p99=%s max=%s",
+                count(), mean(), percentile(50), percentile(99), max());
+    }
+
+    private static int bucketOf(long nanos) {
+        var micros = nanos / 1000;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static long upperBoundNanos(int bucket) {
+        return (1L << bucket) * 1000;
+    }
+}
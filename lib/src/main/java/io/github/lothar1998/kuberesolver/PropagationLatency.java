@@ -0,0 +1,84 @@
+package io.github.lothar1998.kuberesolver;
+
+/**
+ * End-to-end latency of propagating EndpointSlice changes of a single target until the changed
+ * addresses are published, measured from the {@code endpoints.kubernetes.io/last-change-trigger-time}
+ * annotation set by the EndpointSlice controller, e.g., when a pod becomes ready.
+ * <p>
+ * The {@link #total()} latency is broken down into stages, so that lag of the control plane
+ * can be told apart from lag of the resolver:
+ * <ul>
+ *   <li>{@link #apiServerToClient()} - from the trigger time until the event is received
+ *   from the watch stream, i.e., the EndpointSlice controller, the API server and the network</li>
+ *   <li>{@link #decode()} - decoding the received event</li>
+ *   <li>{@link #publish()} - indexing the decoded EndpointSlice and publishing the addresses to the
+ *   listeners and subscribers of the {@link EndpointSnapshotPublisher}, on the watch thread</li>
+ * </ul>
+ * The hand-off of the addresses to the synchronization context of a gRPC channel is not included.
+ * Only changes received after the initial sync which change the published addresses are recorded.
+ * As the trigger time is set by the control plane, the total and API-server-to-client latencies
+ * include clock skew between the control plane and the client.
+ */
+public final class PropagationLatency {
+
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram apiServerToClient = new LatencyHistogram();
+    private final LatencyHistogram decode = new LatencyHistogram();
+    private final LatencyHistogram publish = new LatencyHistogram();
+
+    /**
+     * Records the latencies of a single propagated change.
+     *
+     * @param apiServerToClientNanos the time from the trigger until the event was received
+     * @param decodeNanos            the time spent decoding the event
+     * @param publishNanos           the time spent indexing and publishing the addresses
+     */
+    void record(long apiServerToClientNanos, long decodeNanos, long publishNanos) {
+        apiServerToClient.record(apiServerToClientNanos);
+        decode.record(decodeNanos);
+        publish.record(publishNanos);
+        total.record(apiServerToClientNanos + decodeNanos + publishNanos);
+    }
+
+    /**
+     * Returns the latency from the trigger time until the changed addresses were published.
+     *
+     * @return the histogram of total latencies
+     */
+    public LatencyHistogram total() {
+        return total;
+    }
+
+    /**
+     * Returns the latency from the trigger time until the event was received from the watch stream.
+     *
+     * @return the histogram of API-server-to-client latencies
+     */
+    public LatencyHistogram apiServerToClient() {
+        return apiServerToClient;
+    }
+
+    /**
+     * Returns the time spent decoding events.
+     *
+     * @return the histogram of decode latencies
+     */
+    public LatencyHistogram decode() {
+        return decode;
+    }
+
+    /**
+     * Returns the time spent indexing decoded EndpointSlices and publishing the changed addresses.
+     *
+     * @return the histogram of publish latencies
+     */
+    public LatencyHistogram publish() {
+        return publish;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("total[%s] apiServerToClient[%s] decode[%s] publish[%s]",
+                total, apiServerToClient, decode, publish);
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Registers the {@link EndpointSnapshotPublisherMXBean} of every running publisher, and the
+ * {@link ResolverRegistryMXBean} of all of them, in the platform MBean server.
+ * <p>
+ * Registration is best effort: if the platform MBean server is unavailable, e.g., in a native image built
+ * without JMX support, the publishers run without their MBeans.
+ */
+final class ResolverDiagnostics implements ResolverRegistryMXBean {
+
+    static final String DOMAIN = "io.github.lothar1998.kuberesolver";
+
+    private static final Logger LOGGER = Logger.getLogger(ResolverDiagnostics.class.getName());
+
+    private static final ResolverDiagnostics INSTANCE = new ResolverDiagnostics();
+
+    private final Map<EndpointSnapshotPublisher, ObjectName> publishers = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicBoolean registryRegistered = new AtomicBoolean();
+
+    private ResolverDiagnostics() {
+    }
+
+    /**
+     * Registers the MBean of the publisher, and the registry MBean unless it is registered.
+     *
+     * @param publisher the started publisher
+     * @param mbean     the MBean of the publisher
+     */
+    static void register(EndpointSnapshotPublisher publisher, EndpointSnapshotPublisherMXBean mbean) {
+        try {
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (INSTANCE.registryRegistered.compareAndSet(false, true)) {
+                var registryName = new ObjectName(DOMAIN + ":type=ResolverRegistry");
+                if (!server.isRegistered(registryName)) {
+                    server.registerMBean(INSTANCE, registryName);
+                }
+            }
+            var name = new ObjectName(DOMAIN + ":type=EndpointSnapshotPublisher,target="
+                    + ObjectName.quote(mbean.getTarget()) + ",id=" + INSTANCE.ids.incrementAndGet());
+            INSTANCE.publishers.put(publisher, name);
+            try {
+                server.registerMBean(mbean, name);
+            } catch (JMException | RuntimeException e) {
+                INSTANCE.publishers.remove(publisher);
+                throw e;
+            }
+        } catch (JMException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Cannot register MBean of publisher of " + mbean.getTarget(), e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean of the publisher, if registered.
+     *
+     * @param publisher the closed publisher
+     */
+    static void unregister(EndpointSnapshotPublisher publisher) {
+        var name = INSTANCE.publishers.remove(publisher);
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Cannot unregister MBean " + name, e);
+        }
+    }
+
+    /**
+     * Returns the object name of the MBean of the publisher.
+     *
+     * @param publisher the publisher
+     * @return the object name, or {@code null} if the MBean of the publisher is not registered
+     */
+    static ObjectName objectName(EndpointSnapshotPublisher publisher) {
+        return INSTANCE.publishers.get(publisher);
+    }
+
+    @Override
+    public List<String> getPublishers() {
+        return publishers.values().stream()
+                .map(ObjectName::getCanonicalName)
+                .sorted()
+                .toList();
+    }
+
+    @Override
+    public int getPublisherCount() {
+        return publishers.size();
+    }
+
+    @Override
+    public int getUnresolvedCount() {
+        return (int) publishers.keySet().stream()
+                .filter(publisher -> publisher.current() == null)
+                .count();
+    }
+
+    @Override
+    public long getReconnects() {
+        return publishers.keySet().stream()
+                .mapToLong(EndpointSnapshotPublisher::reconnects)
+                .sum();
+    }
+
+    @Override
+    public int forceRelistAll() {
+        var count = 0;
+        for (var publisher : publishers.keySet()) {
+            publisher.relist();
+            count++;
+        }
+        return count;
+    }
+}
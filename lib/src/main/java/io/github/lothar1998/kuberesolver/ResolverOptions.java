@@ -0,0 +1,144 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.time.Duration;
+
+import io.github.lothar1998.kuberesolver.kubernetes.WatchOptions;
+
+/**
+ * Options of {@link KubernetesNameResolver} instances created by {@link KubernetesNameResolverProvider}.
+ * <p>
+ * Use {@link #DEFAULT} and the {@code with*} methods to derive the options, e.g.,
+ * {@code ResolverOptions.DEFAULT.withWatchOptions(WatchOptions.DEFAULT.withGzip(true))}.
+ *
+ * @param watchOptions        the options of requests sent to the Kubernetes API
+ * @param initialSyncTimeout  the maximum time the first addresses are held back until the initial sync completes,
+ *                            {@link Duration#ZERO} to publish partial state as it arrives, or {@code null}
+ *                            to wait for the initial sync without bound
+ * @param addressFamilyPolicy the selection and order of the addresses of dual-stack endpoints, unless
+ *                            overridden by the target URI
+ * @param endpointProbe       the options of probing added endpoints before they are published, or {@code null}
+ *                            to publish them immediately
+ * @param slowStartWindow     the duration of the traffic ramp of added endpoints, see {@link SlowStartRamp}, or
+ *                            {@code null} to give them their full share of the traffic immediately
+ * @param addressOrder        the order of the address groups passed to the gRPC channel
+ * @param emptyGracePeriod    the maximum time the last addresses are kept once the target has no ready endpoints,
+ *                            or {@code null} to publish the empty state immediately
+ */
+public record ResolverOptions(WatchOptions watchOptions, Duration initialSyncTimeout,
+                              AddressFamilyPolicy addressFamilyPolicy, EndpointProbeOptions endpointProbe,
+                              Duration slowStartWindow, AddressOrder addressOrder, Duration emptyGracePeriod) {
+
+    /**
+     * Default options: the first addresses are held back for at most 10 seconds until the initial sync completes,
+     * the address families of dual-stack endpoints are interleaved, added endpoints are published without probing
+     * or slow start, the address groups are ordered canonically and a target without ready endpoints is published
+     * as empty immediately.
+     */
+    public static final ResolverOptions DEFAULT = new ResolverOptions(WatchOptions.DEFAULT, Duration.ofSeconds(10),
+            AddressFamilyPolicy.INTERLEAVE, null, null, AddressOrder.CANONICAL, null);
+
+    /**
+     * Validates the options.
+     *
+     * @throws IllegalArgumentException if any of the options is out of range
+     */
+    public ResolverOptions {
+        if (watchOptions == null) {
+            throw new IllegalArgumentException("watchOptions must not be null");
+        }
+        if (initialSyncTimeout != null && initialSyncTimeout.isNegative()) {
+            throw new IllegalArgumentException("initialSyncTimeout must not be negative");
+        }
+        if (addressFamilyPolicy == null) {
+            throw new IllegalArgumentException("addressFamilyPolicy must not be null");
+        }
+        if (slowStartWindow != null && (slowStartWindow.isNegative() || slowStartWindow.isZero())) {
+            throw new IllegalArgumentException("slowStartWindow must be positive");
+        }
+        if (addressOrder == null) {
+            throw new IllegalArgumentException("addressOrder must not be null");
+        }
+        if (emptyGracePeriod != null && emptyGracePeriod.isNegative()) {
+            throw new IllegalArgumentException("emptyGracePeriod must not be negative");
+        }
+    }
+
+    /**
+     * Returns a copy of these options with the given options of requests sent to the Kubernetes API.
+     *
+     * @param watchOptions the watch options
+     * @return the new options
+     */
+    public ResolverOptions withWatchOptions(WatchOptions watchOptions) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+
+    /**
+     * Returns a copy of these options with the given timeout of the initial sync.
+     *
+     * @param initialSyncTimeout the maximum time the first addresses are held back, {@link Duration#ZERO} to
+     *                           disable the barrier, or {@code null} to wait without bound
+     * @return the new options
+     */
+    public ResolverOptions withInitialSyncTimeout(Duration initialSyncTimeout) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+
+    /**
+     * Returns a copy of these options with the given address family policy.
+     *
+     * @param addressFamilyPolicy the selection and order of the addresses of dual-stack endpoints
+     * @return the new options
+     */
+    public ResolverOptions withAddressFamilyPolicy(AddressFamilyPolicy addressFamilyPolicy) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+
+    /**
+     * Returns a copy of these options with the given probing of added endpoints.
+     *
+     * @param endpointProbe the probe options, or {@code null} to publish added endpoints immediately
+     * @return the new options
+     */
+    public ResolverOptions withEndpointProbe(EndpointProbeOptions endpointProbe) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+
+    /**
+     * Returns a copy of these options with the given slow start window of added endpoints.
+     *
+     * @param slowStartWindow the duration of the traffic ramp, or {@code null} to disable slow start
+     * @return the new options
+     */
+    public ResolverOptions withSlowStartWindow(Duration slowStartWindow) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+
+    /**
+     * Returns a copy of these options with the given order of address groups.
+     *
+     * @param addressOrder the order of the address groups passed to the gRPC channel
+     * @return the new options
+     */
+    public ResolverOptions withAddressOrder(AddressOrder addressOrder) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+
+    /**
+     * Returns a copy of these options with the given grace period of a target without ready endpoints.
+     *
+     * @param emptyGracePeriod the maximum time the last addresses are kept, or {@code null} to publish
+     *                         the empty state immediately
+     * @return the new options
+     */
+    public ResolverOptions withEmptyGracePeriod(Duration emptyGracePeriod) {
+        return new ResolverOptions(watchOptions, initialSyncTimeout, addressFamilyPolicy, endpointProbe,
+                slowStartWindow, addressOrder, emptyGracePeriod);
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.util.List;
+
+/**
+ * The JMX view of all running {@link EndpointSnapshotPublisher}s of the process, registered as
+ * {@code io.github.lothar1998.kuberesolver:type=ResolverRegistry} once the first publisher is started.
+ */
+public interface ResolverRegistryMXBean {
+
+    /**
+     * Returns the object names of the MBeans of the running publishers.
+     *
+     * @return the object names, see {@link EndpointSnapshotPublisherMXBean}
+     */
+    List<String> getPublishers();
+
+    /**
+     * Returns the number of running publishers.
+     *
+     * @return the number of publishers
+     */
+    int getPublisherCount();
+
+    /**
+     * Returns the number of running publishers which have not published any addresses yet.
+     *
+     * @return the number of unresolved publishers
+     */
+    int getUnresolvedCount();
+
+    /**
+     * Returns the number of watches started after the first one, summed over all running publishers.
+     *
+     * @return the number of reconnections
+     */
+    long getReconnects();
+
+    /**
+     * Lists the EndpointSlices of every running publisher again.
+     *
+     * @return the number of publishers which list again
+     */
+    int forceRelistAll();
+}
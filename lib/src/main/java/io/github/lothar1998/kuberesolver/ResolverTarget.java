@@ -6,12 +6,32 @@ import javax.annotation.Nonnull;
 
 /**
  * Represents a parsed Kubernetes target including service name, namespace, and optional port.
- * Service name is always required but namespace and port are optional.
+ * Service name is always required but namespace, port and address family are optional.
  * Used by {@link KubernetesNameResolver} to extract target information from a URI.
+ *
+ * @param namespace     the namespace of the service, or {@code null} for the namespace of the pod
+ * @param service       the name of the service
+ * @param port          the port number or name, or {@code null} for the first port of the service
+ * @param addressFamily the address family policy of the target, or {@code null} for the policy
+ *                      of {@link ResolverOptions}
  */
 public record ResolverTarget(@Nullable String namespace,
                              @Nonnull String service,
-                             @Nullable String port) {
+                             @Nullable String port,
+                             @Nullable AddressFamilyPolicy addressFamily) {
+
+    private static final String ADDRESS_FAMILY_PARAMETER = "addressFamily";
+
+    /**
+     * Creates a target using the address family policy of {@link ResolverOptions}.
+     *
+     * @param namespace the namespace of the service, or {@code null} for the namespace of the pod
+     * @param service   the name of the service
+     * @param port      the port number or name, or {@code null} for the first port of the service
+     */
+    public ResolverTarget(@Nullable String namespace, @Nonnull String service, @Nullable String port) {
+        this(namespace, service, port, null);
+    }
 
     /**
      * Parses a {@link URI} into a {@link ResolverTarget}, extracting the service, namespace, and port.
@@ -31,10 +51,12 @@ public record ResolverTarget(@Nullable String namespace,
      *   <li>kubernetes://service-name.namespace.svc.cluster_name</li>
      *   <li>kubernetes://service-name.namespace.svc.cluster_name:8080</li>
      * </ul>
+     * Any of the formats may be followed by the {@code addressFamily} query parameter naming an
+     * {@link AddressFamilyPolicy}, e.g., {@code kubernetes:///service-name:8080?addressFamily=prefer-ipv6}.
      *
      * @param uri the URI to parse
      * @return the parsed {@link ResolverTarget}
-     * @throws IllegalArgumentException if the service name cannot be determined
+     * @throws IllegalArgumentException if the service name cannot be determined or the address family is unknown
      */
     public static ResolverTarget parse(URI uri) throws IllegalArgumentException {
         ResolverTarget params;
@@ -53,9 +75,37 @@ public record ResolverTarget(@Nullable String namespace,
         if (params.service.isEmpty()) {
             throw new IllegalArgumentException(String.format("cannot parse service name from URI '%s'", uri));
         }
+        var addressFamily = parseAddressFamily(uri.getQuery());
+        if (addressFamily != null) {
+            params = new ResolverTarget(params.namespace, params.service, params.port, addressFamily);
+        }
         return params;
     }
 
+    /**
+     * Returns a short description of the target for diagnostics, in the {@code namespace/service:port} form.
+     *
+     * @return the description of the target
+     */
+    String describe() {
+        var target = service + (port != null ? ":" + port : "");
+        return namespace != null ? namespace + "/" + target : target;
+    }
+
+    private static AddressFamilyPolicy parseAddressFamily(String query) {
+        if (query == null || query.isEmpty()) {
+            return null;
+        }
+        AddressFamilyPolicy addressFamily = null;
+        for (var parameter : query.split("&")) {
+            int equalsIndex = parameter.indexOf('=');
+            if (equalsIndex != -1 && parameter.substring(0, equalsIndex).equals(ADDRESS_FAMILY_PARAMETER)) {
+                addressFamily = AddressFamilyPolicy.parse(parameter.substring(equalsIndex + 1));
+            }
+        }
+        return addressFamily;
+    }
+
     private static ResolverTarget parse(String s) {
         String service = s;
         String namespace = null;
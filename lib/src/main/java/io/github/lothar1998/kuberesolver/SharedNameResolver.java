@@ -0,0 +1,67 @@
+package io.github.lothar1998.kuberesolver;
+
+import io.grpc.NameResolver;
+import io.grpc.SynchronizationContext;
+
+/**
+ * A {@link NameResolver} of a target pre-warmed by {@link KubernetesNameResolverProvider#prewarm}.
+ * <p>
+ * Instead of starting its own watch, the resolver subscribes to the {@link SharedResolution}
+ * of the target, so the addresses resolved so far are passed to the listener as soon as
+ * {@link #start(Listener)} is called. The listener is called on the synchronization context of the channel.
+ */
+final class SharedNameResolver extends NameResolver {
+
+    private final SharedResolution resolution;
+    private final SynchronizationContext syncContext;
+    private SharedResolution.Subscription subscription;
+
+    /**
+     * Creates a resolver subscribing to the given shared resolution.
+     *
+     * @param resolution  the shared resolution of the target
+     * @param syncContext the synchronization context of the channel
+     */
+    SharedNameResolver(SharedResolution resolution, SynchronizationContext syncContext) {
+        this.resolution = resolution;
+        this.syncContext = syncContext;
+    }
+
+    /**
+     * Subscribes the listener to the shared resolution.
+     *
+     * @param listener the listener to notify when addresses are resolved or errors occur
+     */
+    @Override
+    public void start(Listener listener) {
+        subscription = resolution.subscribe(listener, syncContext);
+    }
+
+    /**
+     * Refreshes the shared resolution, which restarts its watch if it is not running.
+     */
+    @Override
+    public void refresh() {
+        resolution.refresh();
+    }
+
+    /**
+     * Unsubscribes the listener from the shared resolution, which keeps running.
+     */
+    @Override
+    public void shutdown() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Returns the authority of the service being resolved.
+     *
+     * @return an empty string as this resolver does not use service authority
+     */
+    @Override
+    public String getServiceAuthority() {
+        return "";
+    }
+}
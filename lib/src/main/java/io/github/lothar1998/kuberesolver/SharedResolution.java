@@ -0,0 +1,210 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+
+/**
+ * The resolution of a single target pre-warmed by {@link KubernetesNameResolverProvider#prewarm}
+ * and shared by all resolvers later created for that target.
+ * <p>
+ * The resolution is backed by one {@link KubernetesNameResolver} which is started
+ * immediately. The latest addresses (or error) are kept, so a resolver subscribing later
+ * receives the current snapshot when it subscribes, and then every update as it is resolved.
+ * <p>
+ * Every subscribed listener is called on the synchronization context of its channel, never under
+ * the lock of the resolution. A listener subscribed outside of that context, or while it is idle,
+ * receives the current snapshot before {@link #subscribe} returns. Updates resolved faster than a
+ * context runs them are coalesced, so a listener never receives a snapshot older than the last one
+ * it received.
+ * <p>
+ * The underlying resolver is refreshed by the subscribed resolvers, i.e., by the backoff
+ * policy of their channels. If its watch failed while no resolver was subscribed, it is
+ * refreshed by the next subscription.
+ */
+final class SharedResolution implements NameResolver.Listener {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedResolution.class.getName());
+
+    private final ResolverTarget target;
+    private final KubernetesNameResolver resolver;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    // guarded by this, the version is incremented by every resolved update
+    private long version;
+    private List<EquivalentAddressGroup> addresses;
+    private Attributes attributes;
+    private Status error;
+
+    /**
+     * Creates a shared resolution of the given target backed by the given resolver.
+     *
+     * @param target   the resolved target
+     * @param resolver the resolver of the target, not started yet
+     */
+    SharedResolution(ResolverTarget target, KubernetesNameResolver resolver) {
+        this.target = target;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Starts the underlying resolver.
+     */
+    void start() {
+        resolver.start(this);
+    }
+
+    /**
+     * Returns a future completed once the first addresses or error of the target are resolved.
+     *
+     * @return the future of the first resolution
+     */
+    CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    /**
+     * Returns the publisher of the snapshots of the target backing the underlying resolver.
+     *
+     * @return the publisher of the target
+     */
+    EndpointSnapshotPublisher publisher() {
+        return resolver.publisher();
+    }
+
+    /**
+     * Subscribes a listener, passing it the current snapshot of the target's resolution.
+     *
+     * @param listener    the listener of the subscribed resolver
+     * @param syncContext the synchronization context of the channel of the subscribed resolver
+     * @return the subscription of the listener
+     */
+    Subscription subscribe(NameResolver.Listener listener, SynchronizationContext syncContext) {
+        var subscription = new Subscription(listener, syncContext);
+        boolean failed;
+        synchronized (this) {
+            subscriptions.add(subscription);
+            failed = error != null;
+        }
+        subscription.schedule();
+        if (failed) {
+            refresh();
+        }
+        return subscription;
+    }
+
+    /**
+     * Refreshes the underlying resolver, which restarts its watch if it is not running.
+     */
+    void refresh() {
+        resolver.refresh();
+    }
+
+    /**
+     * Shuts down the underlying resolver, which stops its watch. The subscribed listeners are not called anymore.
+     */
+    void shutdown() {
+        List<Subscription> cancelled;
+        synchronized (this) {
+            cancelled = List.copyOf(subscriptions);
+        }
+        cancelled.forEach(Subscription::cancel);
+        resolver.shutdown();
+    }
+
+    @Override
+    public void onAddresses(List<EquivalentAddressGroup> addresses, Attributes attributes) {
+        List<Subscription> notified;
+        synchronized (this) {
+            this.version++;
+            this.addresses = addresses;
+            this.attributes = attributes;
+            this.error = null;
+            notified = List.copyOf(subscriptions);
+        }
+        notified.forEach(Subscription::schedule);
+        ready.complete(null);
+    }
+
+    @Override
+    public void onError(Status error) {
+        LOGGER.log(Level.FINE, "Shared resolution of target {0} failed: {1}", new Object[]{target, error});
+        List<Subscription> notified;
+        synchronized (this) {
+            this.version++;
+            this.error = error;
+            notified = List.copyOf(subscriptions);
+        }
+        notified.forEach(Subscription::schedule);
+        ready.complete(null);
+    }
+
+    /**
+     * The subscription of a listener, passing the latest resolution to it on the synchronization context
+     * of its channel.
+     */
+    final class Subscription {
+
+        private final NameResolver.Listener listener;
+        private final SynchronizationContext syncContext;
+        private volatile boolean cancelled;
+        // accessed only from the synchronization context
+        private long deliveredVersion;
+
+        private Subscription(NameResolver.Listener listener, SynchronizationContext syncContext) {
+            this.listener = listener;
+            this.syncContext = syncContext;
+        }
+
+        /**
+         * Cancels the subscription. The listener is not called anymore, even by updates already scheduled.
+         */
+        void cancel() {
+            cancelled = true;
+            synchronized (SharedResolution.this) {
+                subscriptions.remove(this);
+            }
+        }
+
+        private void schedule() {
+            syncContext.execute(this::deliver);
+        }
+
+        /**
+         * Passes the latest resolution to the listener unless it was passed already. Runs in the synchronization
+         * context. A listener which has not received anything yet gets the addresses resolved before a failure,
+         * as the failed watch is refreshed by its subscription.
+         */
+        private void deliver() {
+            long currentVersion;
+            List<EquivalentAddressGroup> currentAddresses;
+            Attributes currentAttributes;
+            Status currentError;
+            synchronized (SharedResolution.this) {
+                currentVersion = version;
+                currentAddresses = addresses;
+                currentAttributes = attributes;
+                currentError = error;
+            }
+            if (cancelled || currentVersion <= deliveredVersion) {
+                return;
+            }
+            var initial = deliveredVersion == 0;
+            deliveredVersion = currentVersion;
+            if (currentError != null && (currentAddresses == null || !initial)) {
+                listener.onError(currentError);
+            } else {
+                listener.onAddresses(currentAddresses, currentAttributes);
+            }
+        }
+    }
+}
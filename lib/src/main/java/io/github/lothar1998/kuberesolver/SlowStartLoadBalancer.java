@@ -0,0 +1,260 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+
+/**
+ * The load balancer of the {@value SlowStartLoadBalancerProvider#POLICY_NAME} policy.
+ * <p>
+ * Every address group has its own subchannel, which is kept connected. Calls are spread across the
+ * ready subchannels at random, in proportion to the weights of their endpoints: {@code 1}, or the
+ * current weight of the {@link SlowStartRamp} of an endpoint added recently. While any ready endpoint
+ * is ramping, the picker is rebuilt with the current weights every {@link #WEIGHT_UPDATE_PERIOD}.
+ * All methods run in the synchronization context of the channel.
+ */
+final class SlowStartLoadBalancer extends LoadBalancer {
+
+    private static final Duration WEIGHT_UPDATE_PERIOD = Duration.ofSeconds(1);
+
+    private final Helper helper;
+    private final Map<EquivalentAddressGroup, Endpoint> endpoints = new HashMap<>();
+
+    private SynchronizationContext.ScheduledHandle weightUpdate;
+    private Status lastResolutionError;
+
+    SlowStartLoadBalancer(Helper helper) {
+        this.helper = helper;
+    }
+
+    @Override
+    public Status acceptResolvedAddresses(ResolvedAddresses resolvedAddresses) {
+        var addressGroups = resolvedAddresses.getAddresses();
+        if (addressGroups.isEmpty()) {
+            var status = Status.UNAVAILABLE.withDescription("Name resolver returned no usable address groups");
+            handleNameResolutionError(status);
+            return status;
+        }
+        lastResolutionError = null;
+
+        var resolved = new HashMap<EquivalentAddressGroup, SlowStartRamp>();
+        for (var addressGroup : addressGroups) {
+            // subchannels are identified by their addresses, not by the ramp attached to them
+            resolved.put(new EquivalentAddressGroup(addressGroup.getAddresses()),
+                    addressGroup.getAttributes().get(KubernetesNameResolver.ATTR_SLOW_START_RAMP));
+        }
+
+        var removed = endpoints.entrySet().iterator();
+        while (removed.hasNext()) {
+            var endpoint = removed.next();
+            if (!resolved.containsKey(endpoint.getKey())) {
+                endpoint.getValue().subchannel.shutdown();
+                removed.remove();
+            }
+        }
+        resolved.forEach((addressGroup, ramp) -> {
+            var endpoint = endpoints.get(addressGroup);
+            if (endpoint == null) {
+                endpoint = new Endpoint(addressGroup);
+                endpoints.put(addressGroup, endpoint);
+                endpoint.start();
+            }
+            endpoint.ramp = ramp;
+        });
+
+        updateBalancingState();
+        return Status.OK;
+    }
+
+    @Override
+    public void handleNameResolutionError(Status error) {
+        lastResolutionError = error;
+        if (endpoints.values().stream().noneMatch(Endpoint::isReady)) {
+            var picker = new FixedPicker(PickResult.withError(error));
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE, picker);
+        }
+    }
+
+    @Override
+    public void requestConnection() {
+        endpoints.values().forEach(endpoint -> endpoint.subchannel.requestConnection());
+    }
+
+    @Override
+    public void shutdown() {
+        cancelWeightUpdate();
+        endpoints.values().forEach(endpoint -> endpoint.subchannel.shutdown());
+        endpoints.clear();
+    }
+
+    /**
+     * Publishes a picker of the ready subchannels weighted by the current weights of their endpoints, or the
+     * aggregated state of the subchannels if none of them is ready.
+     */
+    private void updateBalancingState() {
+        cancelWeightUpdate();
+        var now = Instant.now();
+        var ready = new ArrayList<Endpoint>(endpoints.size());
+        var connecting = false;
+        Status failure = null;
+        for (var endpoint : endpoints.values()) {
+            var state = endpoint.state.getState();
+            if (state == ConnectivityState.READY) {
+                ready.add(endpoint);
+            } else if (state == ConnectivityState.CONNECTING || state == ConnectivityState.IDLE) {
+                connecting = true;
+            } else if (state == ConnectivityState.TRANSIENT_FAILURE) {
+                failure = endpoint.state.getStatus();
+            }
+        }
+
+        if (!ready.isEmpty()) {
+            var picker = new WeightedPicker(ready, now);
+            helper.updateBalancingState(ConnectivityState.READY, picker);
+            if (picker.ramping) {
+                weightUpdate = helper.getSynchronizationContext().schedule(this::updateBalancingState,
+                        WEIGHT_UPDATE_PERIOD.toNanos(), TimeUnit.NANOSECONDS, helper.getScheduledExecutorService());
+            }
+        } else if (connecting) {
+            helper.updateBalancingState(ConnectivityState.CONNECTING, new FixedPicker(PickResult.withNoResult()));
+        } else {
+            var error = failure != null ? failure : lastResolutionError != null
+                    ? lastResolutionError : Status.UNAVAILABLE.withDescription("No ready endpoints");
+            var picker = new FixedPicker(PickResult.withError(error));
+            helper.updateBalancingState(ConnectivityState.TRANSIENT_FAILURE, picker);
+        }
+    }
+
+    private void cancelWeightUpdate() {
+        if (weightUpdate != null) {
+            weightUpdate.cancel();
+            weightUpdate = null;
+        }
+    }
+
+    /**
+     * The subchannel of an address group and its state.
+     */
+    private final class Endpoint {
+
+        private final EquivalentAddressGroup addressGroup;
+        private final Subchannel subchannel;
+        private ConnectivityStateInfo state = ConnectivityStateInfo.forNonError(ConnectivityState.IDLE);
+        private SlowStartRamp ramp;
+
+        Endpoint(EquivalentAddressGroup addressGroup) {
+            this.addressGroup = addressGroup;
+            this.subchannel = helper.createSubchannel(CreateSubchannelArgs.newBuilder()
+                    .setAddresses(addressGroup)
+                    .build());
+        }
+
+        void start() {
+            subchannel.start(this::onSubchannelState);
+            subchannel.requestConnection();
+        }
+
+        boolean isReady() {
+            return state.getState() == ConnectivityState.READY;
+        }
+
+        double weight(Instant now) {
+            return ramp == null ? 1 : ramp.weight(now);
+        }
+
+        private void onSubchannelState(ConnectivityStateInfo newState) {
+            if (endpoints.get(addressGroup) != this) {
+                // the endpoint was removed
+                return;
+            }
+            if (newState.getState() == ConnectivityState.IDLE) {
+                subchannel.requestConnection();
+            }
+            if (newState.getState() == ConnectivityState.TRANSIENT_FAILURE
+                    || newState.getState() == ConnectivityState.IDLE) {
+                helper.refreshNameResolution();
+            }
+            state = newState;
+            updateBalancingState();
+        }
+    }
+
+    /**
+     * Picks a ready subchannel at random in proportion to the weights of the endpoints.
+     */
+    private static final class WeightedPicker extends SubchannelPicker {
+
+        private final Subchannel[] subchannels;
+        // cumulative weights, or null if all weights are equal
+        private final double[] cumulativeWeights;
+        private final boolean ramping;
+
+        WeightedPicker(List<Endpoint> endpoints, Instant now) {
+            this.subchannels = new Subchannel[endpoints.size()];
+            var weights = new double[endpoints.size()];
+            var total = 0.0;
+            var rampingEndpoints = false;
+            for (int i = 0; i < endpoints.size(); i++) {
+                var weight = endpoints.get(i).weight(now);
+                subchannels[i] = endpoints.get(i).subchannel;
+                total += weight;
+                weights[i] = total;
+                rampingEndpoints |= weight < 1;
+            }
+            this.cumulativeWeights = rampingEndpoints ? weights : null;
+            this.ramping = rampingEndpoints;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            var random = ThreadLocalRandom.current();
+            if (cumulativeWeights == null) {
+                return PickResult.withSubchannel(subchannels[random.nextInt(subchannels.length)]);
+            }
+            var point = random.nextDouble(cumulativeWeights[cumulativeWeights.length - 1]);
+            var index = Arrays.binarySearch(cumulativeWeights, point);
+            index = index >= 0 ? index + 1 : -index - 1;
+            return PickResult.withSubchannel(subchannels[Math.min(index, subchannels.length - 1)]);
+        }
+
+        @Override
+        public String toString() {
+            return "WeightedPicker{subchannels=" + subchannels.length + ", ramping=" + ramping + "}";
+        }
+    }
+
+    /**
+     * Returns the same result for every pick.
+     */
+    private static final class FixedPicker extends SubchannelPicker {
+
+        private final PickResult result;
+
+        FixedPicker(PickResult result) {
+            this.result = result;
+        }
+
+        @Override
+        public PickResult pickSubchannel(PickSubchannelArgs args) {
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "FixedPicker{" + result + "}";
+        }
+    }
+}
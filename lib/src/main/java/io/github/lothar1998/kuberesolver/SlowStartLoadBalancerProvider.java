@@ -0,0 +1,68 @@
+package io.github.lothar1998.kuberesolver;
+
+import io.grpc.LoadBalancer;
+import io.grpc.LoadBalancerProvider;
+
+/**
+ * A gRPC {@link LoadBalancerProvider} of the {@value #POLICY_NAME} load balancing policy, which spreads
+ * calls across all ready endpoints like {@code round_robin}, but weights the endpoints added recently by
+ * their {@link SlowStartRamp}.
+ * <p>
+ * The ramps are attached by {@link KubernetesNameResolver} if {@link ResolverOptions#slowStartWindow()} is
+ * set; endpoints without a ramp have the weight {@code 1}. Register the provider and select the policy
+ * for the channel:
+ * <pre>{@code
+ * LoadBalancerRegistry.getDefaultRegistry().register(new SlowStartLoadBalancerProvider());
+ * var channel = ManagedChannelBuilder.forTarget("kubernetes:///my-service:grpc")
+ *         .defaultLoadBalancingPolicy(SlowStartLoadBalancerProvider.POLICY_NAME)
+ *         .build();
+ * }</pre>
+ */
+public final class SlowStartLoadBalancerProvider extends LoadBalancerProvider {
+
+    /**
+     * The name of the load balancing policy.
+     */
+    public static final String POLICY_NAME = "kubernetes_slow_start";
+
+    /**
+     * Indicates whether this provider is available for use.
+     *
+     * @return always returns {@code true}
+     */
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * Returns the priority of this provider.
+     *
+     * @return the priority value (5)
+     */
+    @Override
+    public int getPriority() {
+        return 5;
+    }
+
+    /**
+     * Returns the name of the load balancing policy provided.
+     *
+     * @return {@value #POLICY_NAME}
+     */
+    @Override
+    public String getPolicyName() {
+        return POLICY_NAME;
+    }
+
+    /**
+     * Creates a new load balancer of a channel.
+     *
+     * @param helper the helper of the channel
+     * @return the new load balancer
+     */
+    @Override
+    public LoadBalancer newLoadBalancer(LoadBalancer.Helper helper) {
+        return new SlowStartLoadBalancer(helper);
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.lothar1998.kuberesolver;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The traffic ramp of an endpoint which was added recently.
+ * <p>
+ * A freshly started pod is cold, e.g., its JIT compiler has not optimized the hot paths yet and its
+ * caches are empty, so giving it a full share of the traffic right away causes latency spikes after
+ * rollouts and scale-outs. When {@link ResolverOptions#slowStartWindow()} is set, the resolver attaches
+ * a ramp to the address group of every endpoint added after the initial sync, and
+ * {@link SlowStartLoadBalancerProvider} weights the endpoints by it: the weight of an added endpoint
+ * grows linearly from {@link #MIN_WEIGHT} to {@code 1} over the window.
+ *
+ * @param addedAt the time the endpoint was first published
+ * @param window  the duration of the ramp
+ */
+public record SlowStartRamp(Instant addedAt, Duration window) {
+
+    /**
+     * The weight of an endpoint at the start of its ramp, relative to the weight {@code 1} of an
+     * endpoint which is not ramping, so an added endpoint receives some traffic from the start.
+     */
+    public static final double MIN_WEIGHT = 0.1;
+
+    /**
+     * Validates the ramp.
+     *
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    public SlowStartRamp {
+        if (addedAt == null) {
+            throw new IllegalArgumentException("addedAt must not be null");
+        }
+        if (window == null || window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+    }
+
+    /**
+     * Returns the weight of the endpoint at the given time.
+     *
+     * @param now the current time
+     * @return the weight, between {@link #MIN_WEIGHT} and {@code 1}
+     */
+    public double weight(Instant now) {
+        var elapsed = Duration.between(addedAt, now);
+        if (elapsed.compareTo(window) >= 0) {
+            return 1;
+        }
+        if (elapsed.isNegative()) {
+            return MIN_WEIGHT;
+        }
+        var progress = (double) elapsed.toNanos() / window.toNanos();
+        return MIN_WEIGHT + (1 - MIN_WEIGHT) * progress;
+    }
+
+    /**
+     * Returns whether the ramp is complete at the given time.
+     *
+     * @param now the current time
+     * @return {@code true} if the endpoint receives its full share of the traffic
+     */
+    public boolean isComplete(Instant now) {
+        return !now.isBefore(addedAt.plus(window));
+    }
+}
@@ -0,0 +1,111 @@
+package io.github.lothar1998.kuberesolver.agent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A connection of a single local client subscribed to the {@link ResolverAgent}.
+ * <p>
+ * Frames are queued and written to the client's socket by a dedicated thread, so a slow
+ * client never blocks the shared watch. The snapshot of a subscription is queued as one frame,
+ * so only the changes sent after it count towards the limit of pending frames. If the client
+ * falls too far behind, the connection is closed and the client is expected to subscribe again
+ * and receive a fresh snapshot.
+ */
+final class AgentConnection {
+
+    private static final Logger LOGGER = Logger.getLogger(AgentConnection.class.getName());
+
+    private static final int MAX_PENDING_FRAMES = 1024;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final SocketChannel channel;
+    private final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(MAX_PENDING_FRAMES);
+    private final Thread writer;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a connection writing frames to the given channel.
+     *
+     * @param channel the client socket channel
+     */
+    AgentConnection(SocketChannel channel) {
+        this.channel = channel;
+        this.writer = new Thread(this::writeFrames, "kuberesolver-agent-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts writing queued frames to the client.
+     */
+    void start() {
+        writer.start();
+    }
+
+    /**
+     * Queues a frame to be sent to the client.
+     *
+     * @param frame the newline-terminated frame
+     * @return {@code false} if the connection is closed or the client is too slow to keep up
+     */
+    boolean send(byte[] frame) {
+        if (closed) {
+            return false;
+        }
+        if (!frames.offer(frame)) {
+            LOGGER.log(Level.FINE, "Agent client is too slow, closing its connection");
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Ends the stream after all queued frames are written to the client.
+     */
+    void finish() {
+        if (!closed && !frames.offer(END_OF_STREAM)) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection immediately, dropping all queued frames.
+     */
+    void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINEST, "Failed to close agent client connection", e);
+        }
+    }
+
+    private void writeFrames() {
+        try {
+            while (!closed) {
+                var frame = frames.take();
+                if (frame == END_OF_STREAM) {
+                    break;
+                }
+                var buffer = ByteBuffer.wrap(frame);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to write to agent client", e);
+        } finally {
+            close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.lothar1998.kuberesolver.agent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.github.lothar1998.kuberesolver.kubernetes.AgentEndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.InClusterEndpointSliceWatcher;
+
+/**
+ * A node-local resolver agent that watches EndpointSlices once per node and serves them
+ * to the resolvers of all local JVMs over a Unix domain socket.
+ * <p>
+ * The agent is meant to run as a DaemonSet (or a sidecar) with the socket directory shared
+ * with the client pods, for example through a {@code hostPath} volume. Clients enable
+ * the agent mode by setting the {@code KUBERESOLVER_AGENT_SOCKET} environment variable to
+ * the socket path, see {@link AgentEndpointSliceWatcher}.
+ * <p>
+ * Each client sends a single {@code namespace/service} line and then receives a snapshot
+ * of the service's EndpointSlices followed by their changes as newline-delimited watch
+ * events. All clients subscribed to the same service share one watch of the Kubernetes API.
+ */
+public final class ResolverAgent implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ResolverAgent.class.getName());
+
+    private static final String DEFAULT_SOCKET_PATH = "/var/run/kuberesolver/agent.sock";
+
+    private final Path socketPath;
+    private final Function<String, EndpointSliceWatcher> watcherFactory;
+    private final Map<String, EndpointSliceWatcher> watchers = new ConcurrentHashMap<>();
+    private final Map<String, SharedWatch> watches = new ConcurrentHashMap<>();
+
+    private ServerSocketChannel server;
+
+    /**
+     * Creates an agent watching the Kubernetes API from within the cluster.
+     *
+     * @param socketPath the path of the Unix domain socket to listen on
+     */
+    public ResolverAgent(Path socketPath) {
+        this(socketPath, InClusterEndpointSliceWatcher::new);
+    }
+
+    /**
+     * Creates an agent using a custom watcher for each namespace.
+     *
+     * @param socketPath     the path of the Unix domain socket to listen on
+     * @param watcherFactory creates the watcher of the given namespace
+     */
+    public ResolverAgent(Path socketPath, Function<String, EndpointSliceWatcher> watcherFactory) {
+        this.socketPath = socketPath;
+        this.watcherFactory = watcherFactory;
+    }
+
+    /**
+     * Starts the agent. The socket path is taken from the first argument or from the
+     * {@code KUBERESOLVER_AGENT_SOCKET} environment variable, and defaults to
+     * {@code /var/run/kuberesolver/agent.sock}.
+     *
+     * @param args the command line arguments
+     * @throws Exception if the agent cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        var socketPath = args.length > 0
+                ? Path.of(args[0])
+                : AgentEndpointSliceWatcher.getSocketPath().orElse(Path.of(DEFAULT_SOCKET_PATH));
+
+        var agent = new ResolverAgent(socketPath);
+        Runtime.getRuntime().addShutdownHook(new Thread(agent::close));
+        agent.start();
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Binds the agent socket and starts accepting client connections.
+     *
+     * @throws IOException if the socket cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        Files.deleteIfExists(socketPath);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+
+        var acceptor = new Thread(this::accept, "kuberesolver-agent-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.log(Level.INFO, "Resolver agent listening on {0}", new Object[]{socketPath});
+    }
+
+    /**
+     * Stops accepting client connections and removes the agent socket.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (server != null) {
+                server.close();
+            }
+            Files.deleteIfExists(socketPath);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close resolver agent socket", e);
+        }
+    }
+
+    private void accept() {
+        while (server.isOpen()) {
+            try {
+                var channel = server.accept();
+                var handler = new Thread(() -> handle(channel), "kuberesolver-agent-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (server.isOpen()) {
+                    LOGGER.log(Level.WARNING, "Failed to accept resolver agent client", e);
+                }
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        var connection = new AgentConnection(channel);
+        try {
+            var reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            var request = reader.readLine();
+            var separator = request == null ? -1 : request.indexOf('/');
+            if (separator <= 0 || separator == request.length() - 1) {
+                LOGGER.log(Level.FINE, "Invalid resolver agent request {0}", new Object[]{request});
+                connection.close();
+                return;
+            }
+
+            connection.start();
+            subscribe(request.substring(0, separator), request.substring(separator + 1), connection);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Failed to handle resolver agent client", e);
+            connection.close();
+        }
+    }
+
+    private void subscribe(String namespace, String serviceName, AgentConnection connection) {
+        var key = namespace + "/" + serviceName;
+        while (true) {
+            var created = new boolean[1];
+            var watch = watches.computeIfAbsent(key, k -> {
+                created[0] = true;
+                var watcher = watchers.computeIfAbsent(namespace, watcherFactory);
+                return new SharedWatch(serviceName, watcher, () -> watches.remove(k));
+            });
+
+            if (watch.subscribe(connection)) {
+                if (created[0]) {
+                    LOGGER.log(Level.FINE, "Starting shared watch of service {0}", new Object[]{key});
+                    var thread = new Thread(watch::run, "kuberesolver-agent-watch");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package io.github.lothar1998.kuberesolver.agent;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+
+/**
+ * A single EndpointSlice watch of one service shared by all agent clients subscribed to it.
+ * <p>
+ * The watch keeps the latest state of every slice of the service. A newly subscribed client
+ * receives that state, once the initial list is complete, as a snapshot of {@code ADDED} events
+ * terminated by a {@code BOOKMARK} event, and then every change as it is received from
+ * the Kubernetes API. The snapshot is queued as a single frame, so the limit of frames pending
+ * for a slow client applies only to the changes, however many slices the service has. Events
+ * are re-encoded from the decoded model, so clients receive only the fields the resolver uses
+ * instead of the full API objects.
+ * <p>
+ * When the watch ends, all client streams are ended as well, so each client re-subscribes
+ * the same way it would re-watch the Kubernetes API directly.
+ */
+final class SharedWatch implements EndpointSliceWatcher.Subscriber {
+
+    private static final Logger LOGGER = Logger.getLogger(SharedWatch.class.getName());
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final byte[] SNAPSHOT_END = encode(
+            new Event(EventType.BOOKMARK, new EndpointSlice(new Metadata(null), List.of(), List.of())));
+
+    private final String serviceName;
+    private final EndpointSliceWatcher watcher;
+    private final Runnable onFinished;
+
+    private final Map<String, EndpointSlice> slices = new LinkedHashMap<>();
+    private final List<AgentConnection> connections = new ArrayList<>();
+    // clients subscribed before the list completed, sent the snapshot once it completes
+    private final List<AgentConnection> pending = new ArrayList<>();
+
+    private boolean synced = false;
+    private boolean finished = false;
+
+    /**
+     * Creates a shared watch of the given service.
+     *
+     * @param serviceName the name of the Kubernetes service
+     * @param watcher     the watcher of the service's namespace
+     * @param onFinished  called once the watch ends
+     */
+    SharedWatch(String serviceName, EndpointSliceWatcher watcher, Runnable onFinished) {
+        this.serviceName = serviceName;
+        this.watcher = watcher;
+        this.onFinished = onFinished;
+    }
+
+    /**
+     * Runs the watch until the Kubernetes API ends it. This method blocks.
+     */
+    void run() {
+        watcher.watch(serviceName, this);
+    }
+
+    /**
+     * Subscribes a client connection to the watch, sending it the snapshot of the current state.
+     *
+     * @param connection the client connection
+     * @return {@code false} if the watch has already ended and a new one has to be started
+     */
+    synchronized boolean subscribe(AgentConnection connection) {
+        if (finished) {
+            return false;
+        }
+        if (!synced) {
+            pending.add(connection);
+        } else if (connection.send(snapshot())) {
+            connections.add(connection);
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void onSyncStarted() {
+        if (synced || !slices.isEmpty()) {
+            // the list was restarted, so clients re-subscribe to receive a consistent snapshot
+            connections.forEach(AgentConnection::finish);
+            connections.clear();
+        }
+        synced = false;
+        slices.clear();
+    }
+
+    @Override
+    public synchronized void onSyncCompleted() {
+        synced = true;
+        if (pending.isEmpty()) {
+            return;
+        }
+        var snapshot = snapshot();
+        for (var connection : pending) {
+            if (connection.send(snapshot)) {
+                connections.add(connection);
+            }
+        }
+        pending.clear();
+    }
+
+    @Override
+    public synchronized void onEvent(Event event) {
+        var slice = event.endpointSlice();
+        if (slice == null || slice.metadata() == null || slice.metadata().name() == null) {
+            return;
+        }
+
+        switch (event.type()) {
+            case ADDED, MODIFIED -> slices.put(slice.metadata().name(), slice);
+            case DELETED -> slices.remove(slice.metadata().name());
+            default -> {
+                return;
+            }
+        }
+
+        var frame = encode(event);
+        connections.removeIf(connection -> !connection.send(frame));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.log(Level.FINE, "Shared watch of service " + serviceName + " failed", throwable);
+        finish();
+    }
+
+    @Override
+    public void onCompleted() {
+        LOGGER.log(Level.FINER, "Shared watch of service {0} was finished by server", new Object[]{serviceName});
+        finish();
+    }
+
+    private void finish() {
+        synchronized (this) {
+            finished = true;
+            connections.forEach(AgentConnection::finish);
+            connections.clear();
+            pending.forEach(AgentConnection::finish);
+            pending.clear();
+            slices.clear();
+        }
+        onFinished.run();
+    }
+
+    /**
+     * Encodes the current state as a single frame of {@code ADDED} events terminated by a {@code BOOKMARK} event.
+     */
+    private byte[] snapshot() {
+        var snapshot = new ByteArrayOutputStream();
+        for (var slice : slices.values()) {
+            snapshot.writeBytes(encode(new Event(EventType.ADDED, slice)));
+        }
+        snapshot.writeBytes(SNAPSHOT_END);
+        return snapshot.toByteArray();
+    }
+
+    private static byte[] encode(Event event) {
+        try {
+            var json = OBJECT_MAPPER.writeValueAsBytes(event);
+            var frame = new byte[json.length + 1];
+            System.arraycopy(json, 0, frame, 0, json.length);
+            frame[json.length] = '\n';
+            return frame;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot encode EndpointSlice event", e);
+        }
+    }
+}
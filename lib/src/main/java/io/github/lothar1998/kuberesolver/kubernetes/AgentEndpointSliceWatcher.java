@@ -0,0 +1,131 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A watcher for Kubernetes EndpointSlices that subscribes to a node-local resolver agent
+ * over a Unix domain socket instead of watching the Kubernetes API directly.
+ * <p>
+ * The agent performs the EndpointSlice watch once per node and streams a snapshot of the
+ * current slices, terminated by a {@code BOOKMARK} event, followed by changes in the same
+ * newline-delimited format as the Kubernetes Watch API, so events are handled exactly as
+ * if they came from the API server.
+ * <p>
+ * If the agent socket cannot be connected, the watch falls back to the given watcher
+ * and watches the Kubernetes API directly.
+ */
+public final class AgentEndpointSliceWatcher extends EndpointSliceWatcher {
+
+    /**
+     * Name of the environment variable holding the path of the agent socket.
+     */
+    public static final String KUBERESOLVER_AGENT_SOCKET = "KUBERESOLVER_AGENT_SOCKET";
+
+    private static final Logger LOGGER = Logger.getLogger(AgentEndpointSliceWatcher.class.getName());
+
+    private final Path socketPath;
+    private final EndpointSliceWatcher fallback;
+
+    /**
+     * Constructs a watcher subscribing to the agent listening on the given socket.
+     *
+     * @param socketPath the path of the agent's Unix domain socket
+     * @param fallback   the watcher used when the agent is unavailable
+     */
+    public AgentEndpointSliceWatcher(Path socketPath, EndpointSliceWatcher fallback) {
+        super(fallback.host(), fallback.namespace(), fallback.options());
+        this.socketPath = socketPath;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Returns the agent socket path configured with the {@code KUBERESOLVER_AGENT_SOCKET}
+     * environment variable.
+     *
+     * @return the agent socket path, or an empty optional if the agent mode is not enabled
+     */
+    public static Optional<Path> getSocketPath() {
+        return Optional.ofNullable(System.getenv(KUBERESOLVER_AGENT_SOCKET))
+                .filter(path -> !path.isBlank())
+                .map(Path::of);
+    }
+
+    /**
+     * Watches the EndpointSlices of the given service through the agent. If the agent cannot
+     * be reached, the fallback watcher watches the Kubernetes API directly.
+     * <p>
+     * The agent first sends the snapshot of the current state, terminated by a
+     * {@code BOOKMARK} event, which is reported to the subscriber as the initial sync.
+     *
+     * @param serviceName the name of the Kubernetes service
+     * @param decoder the decoder of watch events
+     * @param subscriber the subscriber that receives events, errors, and completion signals
+     */
+    @Override
+    public void watch(String serviceName, EventDecoder decoder, Subscriber subscriber) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.log(Level.FINE, "Resolver agent at {0} is unavailable, falling back to direct watch",
+                    new Object[]{socketPath});
+            fallback.watch(serviceName, decoder, subscriber);
+            return;
+        }
+
+        var watchEvent = new WatchEndedEvent();
+        watchEvent.begin();
+        try (var stream = Channels.newInputStream(channel)) {
+            var request = String.format("%s/%s\n", namespace(), serviceName);
+            var buffer = ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            subscriber.onSyncStarted();
+            subscriber.onStreamOpened(stream);
+            readEvents(stream, decoder, new BookmarkSyncSubscriber(subscriber), options().maxEventBytes(),
+                    namespace() + "/" + serviceName);
+            watchEvent.report(namespace(), serviceName, null);
+            subscriber.onCompleted();
+        } catch (Exception e) {
+            watchEvent.report(namespace(), serviceName, e);
+            subscriber.onError(e);
+        }
+    }
+
+    /**
+     * Builds the request of the fallback watcher.
+     *
+     * @param uri the requested URI
+     * @return the {@link HttpRequest} of the fallback watcher
+     * @throws Exception if the request setup fails
+     */
+    @Override
+    protected HttpRequest getRequest(URI uri) throws Exception {
+        return fallback.getRequest(uri);
+    }
+
+    /**
+     * Returns the HTTP client of the fallback watcher.
+     *
+     * @return the {@link HttpClient} of the fallback watcher
+     * @throws Exception if the client cannot be constructed
+     */
+    @Override
+    protected HttpClient getClient() throws Exception {
+        return fallback.getClient();
+    }
+}
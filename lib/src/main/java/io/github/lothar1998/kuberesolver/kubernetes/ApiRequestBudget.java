@@ -0,0 +1,304 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A token bucket limiting the rate of requests sent to the Kubernetes API by all watchers of the process.
+ * <p>
+ * When the Kubernetes API restarts, every watch of the process fails at once, and without a limit every
+ * target would list and watch its EndpointSlices again at the same moment, slowing down the recovery of the
+ * control plane and of the targets alike. Every list and watch request takes a token from the bucket, which
+ * holds at most {@link #burst()} tokens and is refilled at {@link #requestsPerSecond()}. Requests which find
+ * the bucket empty wait in order of arrival, except for the requests of targets which have no addresses yet,
+ * which are served first, as they cannot serve any calls until they are resolved.
+ * <p>
+ * A {@code 429 Too Many Requests} response, or any response with a {@code Retry-After} header, pauses all
+ * requests for the requested time, at most {@link #MAX_PAUSE}. The bucket is emptied by the pause, so the
+ * requests are resumed at the refill rate rather than as a burst.
+ * <p>
+ * The limit of the process is set on the {@link #shared()} budget, e.g.,
+ * {@code ApiRequestBudget.shared().setRate(50, 100)}.
+ */
+public final class ApiRequestBudget {
+
+    /**
+     * The default refill rate of the shared budget, in requests per second.
+     */
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+
+    /**
+     * The default capacity of the shared budget, i.e., the number of requests which may be sent at once.
+     */
+    public static final int DEFAULT_BURST = 40;
+
+    /**
+     * The longest pause of requests requested by the Kubernetes API which is honored.
+     */
+    public static final Duration MAX_PAUSE = Duration.ofMinutes(1);
+
+    /**
+     * The pause of requests after a {@code 429 Too Many Requests} response without a {@code Retry-After} header.
+     */
+    static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private static final ApiRequestBudget SHARED = new ApiRequestBudget(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST,
+            System::nanoTime, WatchScheduler::schedule);
+
+    private final LongSupplier nanoTime;
+    private final ObjLongConsumer<Runnable> scheduler;
+
+    // guarded by this
+    private double requestsPerSecond;
+    private int burst;
+    private double tokens;
+    private long refilledAt;
+    private boolean paused = false;
+    private long pausedUntil;
+    private boolean dispatchScheduled = false;
+    private final Deque<CompletableFuture<Void>> prioritized = new ArrayDeque<>();
+    private final Deque<CompletableFuture<Void>> queued = new ArrayDeque<>();
+
+    /**
+     * Creates a full budget.
+     *
+     * @param requestsPerSecond the refill rate in requests per second
+     * @param burst             the capacity of the bucket
+     * @param nanoTime          the source of the current time in nanoseconds
+     * @param scheduler         schedules a task after a delay in nanoseconds
+     */
+    ApiRequestBudget(double requestsPerSecond, int burst, LongSupplier nanoTime, ObjLongConsumer<Runnable> scheduler) {
+        validate(requestsPerSecond, burst);
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.nanoTime = nanoTime;
+        this.scheduler = scheduler;
+        this.refilledAt = nanoTime.getAsLong();
+    }
+
+    /**
+     * Returns the budget shared by all watchers of the process, which allows
+     * {@value #DEFAULT_REQUESTS_PER_SECOND} requests per second in bursts of {@value #DEFAULT_BURST} by default.
+     *
+     * @return the shared budget
+     */
+    public static ApiRequestBudget shared() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the rate and the capacity of the budget. Requests already waiting are served at the new rate.
+     *
+     * @param requestsPerSecond the refill rate in requests per second, or {@link Double#POSITIVE_INFINITY}
+     *                          to send requests without limit except for pauses requested by the Kubernetes API
+     * @param burst             the capacity of the bucket, at least {@code 1}
+     * @throws IllegalArgumentException if the rate is not positive or the capacity is less than {@code 1}
+     */
+    public synchronized void setRate(double requestsPerSecond, int burst) {
+        validate(requestsPerSecond, burst);
+        refill(nanoTime.getAsLong());
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.tokens = Math.min(tokens, burst);
+    }
+
+    /**
+     * Returns the refill rate of the budget.
+     *
+     * @return the rate in requests per second
+     */
+    public synchronized double requestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * Returns the capacity of the budget.
+     *
+     * @return the maximum number of requests which may be sent at once
+     */
+    public synchronized int burst() {
+        return burst;
+    }
+
+    /**
+     * Takes a token for a request, waiting until one is available.
+     *
+     * @param priority whether the request is sent for a target which has no addresses yet
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    void acquire(boolean priority) throws InterruptedException {
+        var token = acquireAsync(priority);
+        try {
+            token.get();
+        } catch (InterruptedException e) {
+            if (!token.cancel(false)) {
+                release();
+            }
+            throw e;
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException("Request token was not granted", e);
+        }
+    }
+
+    /**
+     * Takes a token for a request asynchronously. Waiting requests are granted their tokens on the timer
+     * thread of the watches, so the dependent actions of the returned future must not block.
+     *
+     * @param priority whether the request is sent for a target which has no addresses yet
+     * @return the future completed once the token is taken; cancelling it gives up the wait
+     */
+    CompletableFuture<Void> acquireAsync(boolean priority) {
+        synchronized (this) {
+            var now = nanoTime.getAsLong();
+            refill(now);
+            if (prioritized.isEmpty() && queued.isEmpty() && !isPaused(now) && tokens >= 1) {
+                tokens -= 1;
+                return CompletableFuture.completedFuture(null);
+            }
+            var token = new CompletableFuture<Void>();
+            (priority ? prioritized : queued).addLast(token);
+            scheduleDispatch(now);
+            return token;
+        }
+    }
+
+    /**
+     * Pauses all requests for the given time, e.g., as requested by the {@code Retry-After} header of
+     * a response. A pause never shortens a longer one in effect, and is capped at {@link #MAX_PAUSE}.
+     *
+     * @param duration the duration of the pause
+     */
+    synchronized void pause(Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            return;
+        }
+        var now = nanoTime.getAsLong();
+        var until = now + (duration.compareTo(MAX_PAUSE) > 0 ? MAX_PAUSE : duration).toNanos();
+        if (!isPaused(now) || until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        paused = true;
+        tokens = 0;
+        refilledAt = now;
+    }
+
+    /**
+     * Parses the value of a {@code Retry-After} header, either a number of seconds or an HTTP date.
+     *
+     * @param value the value of the header
+     * @param now   the current time, to which an HTTP date is relative
+     * @return the requested pause, or {@code null} if the value is not valid
+     */
+    static Duration parseRetryAfter(String value, Instant now) {
+        var trimmed = value.trim();
+        if (!trimmed.isEmpty() && trimmed.chars().allMatch(Character::isDigit)) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(trimmed));
+            } catch (NumberFormatException e) {
+                return MAX_PAUSE;
+            }
+        }
+        try {
+            var date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.isAfter(now) ? Duration.between(now, date) : Duration.ZERO;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Grants tokens to the waiting requests, the prioritized ones first, and schedules the next dispatch
+     * if any request is still waiting.
+     */
+    private void dispatch() {
+        var granted = new ArrayList<CompletableFuture<Void>>();
+        synchronized (this) {
+            dispatchScheduled = false;
+            var now = nanoTime.getAsLong();
+            refill(now);
+            while (!isPaused(now) && tokens >= 1) {
+                var token = prioritized.isEmpty() ? queued.pollFirst() : prioritized.pollFirst();
+                if (token == null) {
+                    break;
+                }
+                if (!token.isDone()) {
+                    tokens -= 1;
+                    granted.add(token);
+                }
+            }
+            if (!prioritized.isEmpty() || !queued.isEmpty()) {
+                scheduleDispatch(now);
+            }
+        }
+        for (var token : granted) {
+            if (!token.complete(null)) {
+                // cancelled in the meantime
+                release();
+            }
+        }
+    }
+
+    private synchronized void release() {
+        tokens = Math.min(tokens + 1, burst);
+    }
+
+    private void scheduleDispatch(long now) {
+        if (dispatchScheduled) {
+            return;
+        }
+        dispatchScheduled = true;
+        long delay;
+        if (isPaused(now)) {
+            delay = pausedUntil - now;
+        } else if (tokens >= 1) {
+            delay = 0;
+        } else {
+            delay = (long) Math.ceil((1 - tokens) / requestsPerSecond * 1e9);
+        }
+        scheduler.accept(this::dispatch, delay);
+    }
+
+    private void refill(long now) {
+        if (isPaused(now)) {
+            // the bucket stays empty during a pause
+            refilledAt = now;
+            return;
+        }
+        if (Double.isInfinite(requestsPerSecond)) {
+            tokens = burst;
+        } else {
+            tokens = Math.min(burst, tokens + (now - refilledAt) / 1e9 * requestsPerSecond);
+        }
+        refilledAt = now;
+    }
+
+    private boolean isPaused(long now) {
+        if (paused && now - pausedUntil >= 0) {
+            // the bucket is refilled from the end of the pause
+            paused = false;
+            refilledAt = pausedUntil;
+        }
+        return paused;
+    }
+
+    private static void validate(double requestsPerSecond, int burst) {
+        if (!(requestsPerSecond > 0)) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+    }
+}
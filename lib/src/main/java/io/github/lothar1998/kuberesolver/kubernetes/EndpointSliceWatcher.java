@@ -1,35 +1,60 @@
 package io.github.lothar1998.kuberesolver.kubernetes;
 
-import java.io.InputStreamReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.util.Scanner;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.core.exc.StreamConstraintsException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
 
 /**
  * Watches Kubernetes EndpointSlice resource for changes using the Kubernetes Watch API.
- * This class handles streaming events related to a specific service's endpoint slices
- * and notifies a {@link Subscriber} about those changes.
+ * This class lists the current state of a specific service's endpoint slices, handles
+ * streaming events related to them and notifies a {@link Subscriber} about those changes.
  * <p>
  * Implementations must provide the request and HTTP client logic appropriate for secure or insecure access.
  */
-public abstract sealed class EndpointSliceWatcher permits InsecureEndpointSliceWatcher, SecureEndpointSliceWatcher {
+public abstract sealed class EndpointSliceWatcher permits AgentEndpointSliceWatcher, InsecureEndpointSliceWatcher,
+        SecureEndpointSliceWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(EndpointSliceWatcher.class.getName());
 
     private static final String KUBERNETES_WATCH_ENDPOINT_SLICES_URL_PATTERN = "%s/apis/discovery.k8s.io/v1/watch/namespaces/%s/endpointslices?labelSelector=kubernetes.io/service-name=%s";
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
-            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-            .configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_USING_DEFAULT_VALUE, true);
+    private static final String KUBERNETES_LIST_ENDPOINT_SLICES_URL_PATTERN = "%s/apis/discovery.k8s.io/v1/namespaces/%s/endpointslices?labelSelector=kubernetes.io/service-name=%s&limit=%d";
+    private static final int HTTP_GONE = 410;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MAX_LIST_RESTARTS = 3;
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     private final String host;
     private final String namespace;
+    private final WatchOptions options;
+    private final ApiRequestBudget budget;
 
     /**
      * Constructs a new watcher for a given Kubernetes API server and namespace.
@@ -38,8 +63,21 @@ public abstract sealed class EndpointSliceWatcher permits InsecureEndpointSliceW
      * @param namespace the Kubernetes namespace to watch for endpoint slices
      */
     public EndpointSliceWatcher(String host, String namespace) {
+        this(host, namespace, WatchOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a new watcher for a given Kubernetes API server and namespace with custom options.
+     *
+     * @param host the base URL of the Kubernetes API server
+     * @param namespace the Kubernetes namespace to watch for endpoint slices
+     * @param options the options of requests sent to the Kubernetes API
+     */
+    public EndpointSliceWatcher(String host, String namespace, WatchOptions options) {
         this.host = host;
         this.namespace = namespace;
+        this.options = options;
+        this.budget = ApiRequestBudget.shared();
     }
 
     /**
@@ -51,39 +89,386 @@ public abstract sealed class EndpointSliceWatcher permits InsecureEndpointSliceW
      * @throws UnexpectedStatusCodeException if the response status from the Kubernetes API is not 200
      */
     public void watch(String serviceName, Subscriber subscriber) throws UnexpectedStatusCodeException {
-        try {
-            var request = getRequest(serviceName);
-            var response = getClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+        watch(serviceName, EventDecoder.FULL, subscriber);
+    }
 
-            if (response.statusCode() != 200) {
-                throw new UnexpectedStatusCodeException(
-                        String.format("Got HTTP %s status code in response from kube-apiserver",
-                                response.statusCode()));
+    /**
+     * Starts watching for EndpointSlice events associated with a given service name.
+     * Events are decoded with the given decoder and passed to the provided subscriber.
+     * <p>
+     * Unless disabled with {@link WatchOptions#listPageSize()}, the current state is listed
+     * first in pages of bounded size, each slice passed to the subscriber as an {@code ADDED}
+     * event as soon as its page is parsed, and the watch is started from the resource version
+     * of the list. The list is reported with {@link Subscriber#onSyncStarted()} and
+     * {@link Subscriber#onSyncCompleted()}. If the continue token of the list expires,
+     * the list is restarted from the beginning.
+     * <p>
+     * If the list is disabled, the watch replays the current state and the first
+     * {@code BOOKMARK} event is reported as the completed sync.
+     * <p>
+     * Shortly before the server-side {@link WatchOptions#timeout()} of a watch request, a replacement
+     * request is opened from the last received resource version and the old stream is closed once
+     * the replacement is established, so the watch continues without a gap in event delivery.
+     * Events received on both streams are delivered once.
+     * <p>
+     * Events larger than {@link WatchOptions#maxEventBytes()} are not buffered; the watch fails with
+     * {@link EventTooLargeException} instead, so the subscriber lists the state again.
+     * <p>
+     * Every list and watch request takes a token of the {@link ApiRequestBudget#shared() shared request budget}
+     * of the process first, with priority if {@link Subscriber#isUnresolved()}.
+     * <p>
+     * The requests, the decoded events and the end of the watch are recorded as JDK Flight Recorder events in
+     * the {@code Kubernetes Resolver} category.
+     * <p>
+     * Every event and bookmark counts as a heartbeat of the watch. If no heartbeat is received within
+     * {@link WatchOptions#idleTimeout()}, the connection is considered dead, the stream is aborted and the
+     * watch is resumed from the last received resource version. If the resumed watch receives no heartbeat
+     * either, the watch fails with {@link HttpTimeoutException}.
+     *
+     * @param serviceName the name of the Kubernetes service
+     * @param decoder the decoder of watch events
+     * @param subscriber the subscriber that receives events, errors, and completion signals
+     * @throws UnexpectedStatusCodeException if the response status from the Kubernetes API is not 200
+     */
+    public void watch(String serviceName, EventDecoder decoder, Subscriber subscriber)
+            throws UnexpectedStatusCodeException {
+        var watchEvent = new WatchEndedEvent();
+        watchEvent.begin();
+        try {
+            var client = getClient();
+            String resourceVersion = null;
+            var watchSubscriber = subscriber;
+            if (options.listPageSize() > 0) {
+                resourceVersion = list(client, serviceName, decoder, subscriber);
+            } else {
+                subscriber.onSyncStarted();
+                watchSubscriber = new BookmarkSyncSubscriber(subscriber);
             }
 
-            var responseBody = response.body();
-
-            try (Scanner scanner = new Scanner(new InputStreamReader(responseBody))) {
-                while (scanner.hasNextLine()) {
-                    var line = scanner.nextLine();
-                    var event = OBJECT_MAPPER.readValue(line, Event.class);
-                    subscriber.onEvent(event);
-                }
-            }
+            new WatchSession(this, client, serviceName, decoder, watchSubscriber).run(resourceVersion);
+            watchEvent.report(namespace, serviceName, null);
             subscriber.onCompleted();
         } catch (Exception e) {
+            watchEvent.report(namespace, serviceName, e);
             subscriber.onError(e);
         }
     }
 
     /**
-     * Constructs an HTTP request to watch the EndpointSlices of the given service.
+     * Lists the EndpointSlices of the given service page by page, restarting the list
+     * if its continue token expires.
      *
+     * @param client      the HTTP client
      * @param serviceName the name of the Kubernetes service
+     * @param decoder     the decoder of listed EndpointSlices
+     * @param subscriber  the subscriber that receives listed EndpointSlices
+     * @return the resource version of the list
+     * @throws Exception if the list fails
+     */
+    private String list(HttpClient client, String serviceName, EventDecoder decoder, Subscriber subscriber)
+            throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            subscriber.onSyncStarted();
+            try {
+                var resourceVersion = listPages(client, serviceName, decoder, subscriber);
+                subscriber.onSyncCompleted();
+                return resourceVersion;
+            } catch (UnexpectedStatusCodeException e) {
+                if (e.getStatusCode() != HTTP_GONE || attempt >= MAX_LIST_RESTARTS) {
+                    throw e;
+                }
+                LOGGER.log(Level.FINE, "Continue token of EndpointSlice list of service {0} expired, restarting list",
+                        new Object[]{serviceName});
+            }
+        }
+    }
+
+    private String listPages(HttpClient client, String serviceName, EventDecoder decoder, Subscriber subscriber)
+            throws Exception {
+        String continueToken = null;
+        String resourceVersion;
+        do {
+            ListPage page;
+            var uri = getListURI(serviceName, continueToken);
+            try (var responseBody = send(client, uri, subscriber.isUnresolved())) {
+                var recorder = WatchRecorder.active();
+                if (recorder == null) {
+                    page = readListPage(responseBody, decoder, subscriber, options.maxEventBytes());
+                } else {
+                    var tee = recorder.teeListPage(namespace + "/" + serviceName, responseBody);
+                    page = readListPage(tee, decoder, subscriber, options.maxEventBytes());
+                    tee.record();
+                }
+            }
+            continueToken = page.continueToken();
+            resourceVersion = page.resourceVersion();
+        } while (continueToken != null && !continueToken.isEmpty());
+        return resourceVersion;
+    }
+
+    /**
+     * Sends a GET request to the Kubernetes API and returns the decoded response body.
+     *
+     * @param client   the HTTP client
+     * @param uri      the requested URI
+     * @param priority whether the request is sent for a target which has no addresses yet
+     * @return the response body, decompressed if the Kubernetes API responded with gzip-compressed content
+     * @throws Exception if the request fails
+     * @throws UnexpectedStatusCodeException if the response status from the Kubernetes API is not 200
+     */
+    private InputStream send(HttpClient client, URI uri, boolean priority) throws Exception {
+        var response = open(client, uri, priority);
+        return decodeContent(response.body(), contentEncoding(response));
+    }
+
+    private HttpResponse<InputStream> open(HttpClient client, URI uri, boolean priority) throws Exception {
+        var request = getRequest(uri);
+        budget.acquire(priority);
+        var connectEvent = new WatchConnectEvent();
+        connectEvent.begin();
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (Exception e) {
+            connectEvent.report(uri, null, e);
+            throw e;
+        }
+        connectEvent.report(uri, response, null);
+        return checkStatus(response);
+    }
+
+    /**
+     * Sends a watch request from the given resource version and returns the response with the raw,
+     * possibly compressed, stream of events.
+     *
+     * @param client          the HTTP client
+     * @param serviceName     the name of the Kubernetes service
+     * @param resourceVersion the resource version to start the watch from, or {@code null} to replay
+     *                        the current state
+     * @param priority        whether the watch is opened for a target which has no addresses yet
+     * @return the response of the watch request
+     * @throws Exception if the request fails
+     * @throws UnexpectedStatusCodeException if the response status from the Kubernetes API is not 200
+     */
+    HttpResponse<InputStream> openWatch(HttpClient client, String serviceName, String resourceVersion,
+                                        boolean priority) throws Exception {
+        return open(client, getWatchURI(serviceName, resourceVersion), priority);
+    }
+
+    /**
+     * Sends a watch request from the given resource version asynchronously, once the request budget
+     * allows it.
+     *
+     * @param client          the HTTP client
+     * @param serviceName     the name of the Kubernetes service
+     * @param resourceVersion the resource version to start the watch from
+     * @return the future of the response of the watch request, completed once its headers are received
+     */
+    CompletableFuture<HttpResponse<InputStream>> openWatchAsync(HttpClient client, String serviceName,
+                                                                String resourceVersion) {
+        try {
+            var uri = getWatchURI(serviceName, resourceVersion);
+            var request = getRequest(uri);
+            return budget.acquireAsync(false)
+                    .thenCompose(token -> {
+                        var connectEvent = new WatchConnectEvent();
+                        connectEvent.begin();
+                        return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                                .whenComplete((response, e) -> connectEvent.report(uri, response, e));
+                    })
+                    .thenApply(this::checkStatus);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Checks that the response succeeded. A {@code 429 Too Many Requests} response, or any failed response
+     * with a {@code Retry-After} header, pauses the requests of the request budget for the requested time.
+     *
+     * @param response the response
+     * @return the response if it succeeded
+     * @throws UnexpectedStatusCodeException if the response status from the Kubernetes API is not 200
+     */
+    private HttpResponse<InputStream> checkStatus(HttpResponse<InputStream> response) {
+        if (response.statusCode() != 200) {
+            var defaultRetryAfter = response.statusCode() == HTTP_TOO_MANY_REQUESTS
+                    ? ApiRequestBudget.DEFAULT_RETRY_AFTER : null;
+            var retryAfter = response.headers().firstValue("Retry-After")
+                    .map(value -> ApiRequestBudget.parseRetryAfter(value, Instant.now()))
+                    .orElse(defaultRetryAfter);
+            if (retryAfter != null) {
+                LOGGER.log(Level.FINE, "Kube-apiserver responded with HTTP {0} status code, pausing requests for {1}",
+                        new Object[]{response.statusCode(), retryAfter});
+                budget.pause(retryAfter);
+            }
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, "Cannot close response body", e);
+            }
+            throw new UnexpectedStatusCodeException(
+                    String.format("Got HTTP %s status code in response from kube-apiserver",
+                            response.statusCode()),
+                    response.statusCode());
+        }
+        return response;
+    }
+
+    static String contentEncoding(HttpResponse<?> response) {
+        return response.headers().firstValue("Content-Encoding").orElse(null);
+    }
+
+    /**
+     * Wraps the response body in a decompressing stream if the response content is encoded.
+     *
+     * @param body            the response body
+     * @param contentEncoding the value of the {@code Content-Encoding} header, or {@code null} if absent
+     * @return the stream of decoded content
+     * @throws Exception if the content encoding is not supported or the stream cannot be read
+     */
+    static InputStream decodeContent(InputStream body, String contentEncoding) throws Exception {
+        if (contentEncoding == null || contentEncoding.isBlank() || contentEncoding.equalsIgnoreCase("identity")) {
+            return body;
+        }
+        if (contentEncoding.equalsIgnoreCase("gzip")) {
+            try {
+                return new GZIPInputStream(body, GZIP_BUFFER_SIZE);
+            } catch (Exception e) {
+                body.close();
+                throw e;
+            }
+        }
+        body.close();
+        throw new UnsupportedEncodingException(
+                String.format("Unsupported %s content encoding in response from kube-apiserver", contentEncoding));
+    }
+
+    /**
+     * Reads newline-delimited watch events from the stream and passes them to the subscriber,
+     * along with the times at which each event was received and decoded, until the stream ends.
+     * Events are read into a reusable buffer of bounded size and decoded from their raw bytes.
+     *
+     * @param stream        the stream of watch events
+     * @param decoder       the decoder of watch events
+     * @param subscriber    the subscriber that receives events
+     * @param maxEventBytes the maximum size of a single event in bytes
+     * @throws EventTooLargeException if an event is larger than the maximum size
+     * @throws Exception              if an event cannot be read or decoded
+     */
+    static void readEvents(InputStream stream, EventDecoder decoder, Subscriber subscriber, int maxEventBytes)
+            throws Exception {
+        readEvents(stream, decoder, subscriber, maxEventBytes, null);
+    }
+
+    /**
+     * Reads newline-delimited watch events from the stream like
+     * {@link #readEvents(InputStream, EventDecoder, Subscriber, int)}, and records each of them to the running
+     * {@link WatchRecorder}, if any.
+     *
+     * @param stream        the stream of watch events
+     * @param decoder       the decoder of watch events
+     * @param subscriber    the subscriber that receives events
+     * @param maxEventBytes the maximum size of a single event in bytes
+     * @param target        the {@code namespace/service} of the watch, or {@code null} to not record events
+     * @throws EventTooLargeException if an event is larger than the maximum size
+     * @throws Exception              if an event cannot be read or decoded
+     */
+    static void readEvents(InputStream stream, EventDecoder decoder, Subscriber subscriber, int maxEventBytes,
+                           String target) throws Exception {
+        try (stream) {
+            var reader = new EventLineReader(stream, maxEventBytes);
+            while (reader.nextLine()) {
+                var recorder = target == null ? null : WatchRecorder.active();
+                if (recorder != null) {
+                    recorder.recordEvent(target, reader.buffer(), reader.lineStart(), reader.lineLength());
+                }
+                var receivedAt = Instant.now();
+                var receivedNanos = System.nanoTime();
+                var decodedEvent = new WatchEventDecodedEvent();
+                decodedEvent.begin();
+                Event event;
+                try (var parser = JSON_FACTORY.createParser(reader.buffer(), reader.lineStart(), reader.lineLength())) {
+                    event = decoder.decode(parser);
+                }
+                decodedEvent.report(event, reader.lineLength());
+                if (event != null) {
+                    subscriber.onEvent(event, new EventTiming(receivedAt, receivedNanos, System.nanoTime()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a single page of an EndpointSlice list and passes each listed slice to the
+     * subscriber as an {@code ADDED} event as soon as it is parsed. The page is parsed as a stream,
+     * so only its string values are buffered whole, and they are bounded by the maximum event size.
+     *
+     * @param stream        the response body of the list request
+     * @param decoder       the decoder of listed EndpointSlices
+     * @param subscriber    the subscriber that receives listed EndpointSlices
+     * @param maxEventBytes the maximum size of a single string value of the page in bytes
+     * @return the metadata of the page
+     * @throws EventTooLargeException if a string value is larger than the maximum size
+     * @throws IOException            if the page cannot be parsed
+     */
+    static ListPage readListPage(InputStream stream, EventDecoder decoder, Subscriber subscriber, int maxEventBytes)
+            throws IOException {
+        var factory = JsonFactory.builder()
+                .streamReadConstraints(StreamReadConstraints.builder().maxStringLength(maxEventBytes).build())
+                .build();
+        try (var parser = factory.createParser(stream)) {
+            return readListPage(parser, decoder, subscriber);
+        } catch (StreamConstraintsException e) {
+            throw new EventTooLargeException(String.format(
+                    "EndpointSlice list from kube-apiserver exceeds the limit of %d bytes per value", maxEventBytes),
+                    maxEventBytes, e);
+        }
+    }
+
+    private static ListPage readListPage(JsonParser parser, EventDecoder decoder, Subscriber subscriber)
+            throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected EndpointSlice list object in response from kube-apiserver");
+        }
+
+        String resourceVersion = null;
+        String continueToken = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            if (field.equals("metadata") && parser.currentToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    var metadataField = parser.currentName();
+                    parser.nextToken();
+                    switch (metadataField) {
+                        case "resourceVersion" -> resourceVersion = parser.getValueAsString();
+                        case "continue" -> continueToken = parser.getValueAsString();
+                        default -> parser.skipChildren();
+                    }
+                }
+            } else if (field.equals("items") && parser.currentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    var endpointSlice = decoder.decodeEndpointSlice(parser);
+                    if (endpointSlice != null) {
+                        subscriber.onEvent(new Event(EventType.ADDED, endpointSlice));
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new ListPage(resourceVersion, continueToken);
+    }
+
+    /**
+     * Constructs an HTTP GET request to the Kubernetes API for the given URI.
+     *
+     * @param uri the requested URI
      * @return the constructed {@link HttpRequest}
      * @throws Exception if an error occurs while constructing the request
      */
-    protected abstract HttpRequest getRequest(String serviceName) throws Exception;
+    protected abstract HttpRequest getRequest(URI uri) throws Exception;
 
     /**
      * Returns the HTTP client used to make requests to the Kubernetes API.
@@ -93,17 +478,94 @@ public abstract sealed class EndpointSliceWatcher permits InsecureEndpointSliceW
      */
     protected abstract HttpClient getClient() throws Exception;
 
+    /**
+     * Creates a builder of a GET request to the given URI, with the headers and the timeout common
+     * to all watchers set according to the options.
+     *
+     * @param uri the requested URI
+     * @return the request builder
+     */
+    protected HttpRequest.Builder newRequestBuilder(URI uri) {
+        var builder = HttpRequest.newBuilder(uri)
+                .GET()
+                .setHeader("Accept", "application/json");
+        if (options.idleTimeout() != null) {
+            // bounds the wait for response headers, the body of a watch is guarded by the idle watchdog
+            builder.timeout(options.idleTimeout());
+        }
+        if (options.gzip()) {
+            builder.setHeader("Accept-Encoding", "gzip");
+        }
+        return builder;
+    }
+
     /**
      * Constructs the full URI for watching EndpointSlices of the specified service.
      *
      * @param serviceName the name of the Kubernetes service
+     * @param resourceVersion the resource version to start the watch from, or {@code null} to replay the current
+     *                        state
+     * @return the constructed {@link URI}
+     * @throws URISyntaxException if the URI is invalid
+     * @throws MalformedURLException if the URL is invalid
+     */
+    protected URI getWatchURI(String serviceName, String resourceVersion)
+            throws URISyntaxException, MalformedURLException {
+        var url = String.format(KUBERNETES_WATCH_ENDPOINT_SLICES_URL_PATTERN, host, namespace, serviceName);
+        if (resourceVersion != null && !resourceVersion.isEmpty()) {
+            url += "&resourceVersion=" + URLEncoder.encode(resourceVersion, StandardCharsets.UTF_8);
+        }
+        url += "&allowWatchBookmarks=true";
+        if (options.timeout() != null) {
+            url += "&timeoutSeconds=" + options.timeout().toSeconds();
+        }
+        return new URL(url).toURI();
+    }
+
+    /**
+     * Constructs the full URI for listing a page of EndpointSlices of the specified service.
+     *
+     * @param serviceName the name of the Kubernetes service
+     * @param continueToken the continue token of the previous page, or {@code null} for the first page
      * @return the constructed {@link URI}
      * @throws URISyntaxException if the URI is invalid
      * @throws MalformedURLException if the URL is invalid
      */
-    protected URI getURI(String serviceName) throws URISyntaxException, MalformedURLException {
-        var url = new URL(String.format(KUBERNETES_WATCH_ENDPOINT_SLICES_URL_PATTERN, host, namespace, serviceName));
-        return url.toURI();
+    protected URI getListURI(String serviceName, String continueToken)
+            throws URISyntaxException, MalformedURLException {
+        var url = String.format(KUBERNETES_LIST_ENDPOINT_SLICES_URL_PATTERN, host, namespace, serviceName,
+                options.listPageSize());
+        if (continueToken != null && !continueToken.isEmpty()) {
+            url += "&continue=" + URLEncoder.encode(continueToken, StandardCharsets.UTF_8);
+        }
+        return new URL(url).toURI();
+    }
+
+    /**
+     * Returns the base URL of the Kubernetes API server.
+     *
+     * @return the Kubernetes API server URL
+     */
+    String host() {
+        return host;
+    }
+
+    /**
+     * Returns the namespace watched by this watcher.
+     *
+     * @return the Kubernetes namespace
+     */
+    String namespace() {
+        return namespace;
+    }
+
+    /**
+     * Returns the options of requests sent to the Kubernetes API.
+     *
+     * @return the watch options
+     */
+    WatchOptions options() {
+        return options;
     }
 
     /**
@@ -117,6 +579,18 @@ public abstract sealed class EndpointSliceWatcher permits InsecureEndpointSliceW
          */
         void onEvent(Event event);
 
+        /**
+         * Called when a new EndpointSlice event is received from the watch stream, with the
+         * times at which it was received and decoded. Delegates to {@link #onEvent(Event)}
+         * by default.
+         *
+         * @param event  the event data
+         * @param timing the times at which the event was received and decoded
+         */
+        default void onEvent(Event event, EventTiming timing) {
+            onEvent(event);
+        }
+
         /**
          * Called when an error occurs during watch processing.
          *
@@ -128,19 +602,193 @@ public abstract sealed class EndpointSliceWatcher permits InsecureEndpointSliceW
          * Called when the watch stream completes successfully.
          */
         void onCompleted();
+
+        /**
+         * Called when listing of the current state starts. All EndpointSlices which exist are
+         * received as events before {@link #onSyncCompleted()} is called; slices received
+         * before this call and not received again until then no longer exist. This method may
+         * be called again before the list completes if the list has to be restarted.
+         */
+        default void onSyncStarted() {
+        }
+
+        /**
+         * Called when the current state has been listed completely. Events received after
+         * this call are changes of that state.
+         */
+        default void onSyncCompleted() {
+        }
+
+        /**
+         * Called when a stream of events is opened, with the stream. Closing the stream aborts the watch,
+         * which fails with an {@link IOException}.
+         *
+         * @param stream the stream of events
+         */
+        default void onStreamOpened(Closeable stream) {
+        }
+
+        /**
+         * Returns whether the subscriber has no state of the service yet, i.e., no addresses to use until
+         * the watch is established. Requests of such watches take precedence in the {@link ApiRequestBudget}.
+         *
+         * @return {@code true} if the service is not resolved yet, {@code false} by default
+         */
+        default boolean isUnresolved() {
+            return false;
+        }
+    }
+
+    /**
+     * Reports the end of a replayed state, marked by the first {@code BOOKMARK} event,
+     * as the completed sync.
+     */
+    static final class BookmarkSyncSubscriber implements Subscriber {
+
+        private final Subscriber delegate;
+        private boolean synced = false;
+
+        BookmarkSyncSubscriber(Subscriber delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            onEvent(event, null);
+        }
+
+        @Override
+        public void onEvent(Event event, EventTiming timing) {
+            if (!synced && event.type() == EventType.BOOKMARK) {
+                synced = true;
+                delegate.onSyncCompleted();
+                return;
+            }
+            if (timing == null) {
+                delegate.onEvent(event);
+            } else {
+                delegate.onEvent(event, timing);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            delegate.onCompleted();
+        }
+
+        @Override
+        public void onStreamOpened(Closeable stream) {
+            delegate.onStreamOpened(stream);
+        }
+
+        @Override
+        public boolean isUnresolved() {
+            return delegate.isUnresolved();
+        }
+    }
+
+    /**
+     * Holder of the object mapper used by {@link EventDecoder#FULL}. The mapper is created on first use,
+     * so watches decoded by a streaming decoder never pay for its reflective setup.
+     */
+    static final class ObjectMapperHolder {
+
+        static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .configure(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_USING_DEFAULT_VALUE, true);
+
+        private ObjectMapperHolder() {
+        }
+    }
+
+    /**
+     * Metadata of a single page of an EndpointSlice list.
+     *
+     * @param resourceVersion the resource version of the list
+     * @param continueToken   the token of the next page, or {@code null} if this is the last page
+     */
+    record ListPage(String resourceVersion, String continueToken) {
+    }
+
+    /**
+     * Exception thrown when a watch event, or a value of a list, received from the Kubernetes API is larger
+     * than {@link WatchOptions#maxEventBytes()}. The event is not buffered beyond the limit.
+     */
+    public static class EventTooLargeException extends IOException {
+
+        private final int limitBytes;
+
+        /**
+         * Constructs the exception with a message describing the exceeded limit.
+         *
+         * @param message    the error message
+         * @param limitBytes the exceeded limit in bytes
+         */
+        public EventTooLargeException(String message, int limitBytes) {
+            this(message, limitBytes, null);
+        }
+
+        /**
+         * Constructs the exception with a message describing the exceeded limit and its cause.
+         *
+         * @param message    the error message
+         * @param limitBytes the exceeded limit in bytes
+         * @param cause      the cause, or {@code null} if none
+         */
+        public EventTooLargeException(String message, int limitBytes, Throwable cause) {
+            super(message, cause);
+            this.limitBytes = limitBytes;
+        }
+
+        /**
+         * Returns the exceeded limit.
+         *
+         * @return the limit in bytes
+         */
+        public int getLimitBytes() {
+            return limitBytes;
+        }
     }
 
     /**
      * Exception thrown when a non-200 HTTP response is received from the Kubernetes API.
      */
     public static class UnexpectedStatusCodeException extends RuntimeException {
+
+        private final int statusCode;
+
         /**
          * Constructs the exception with a message describing the unexpected status code.
          *
          * @param message the error message
          */
         public UnexpectedStatusCodeException(String message) {
+            this(message, -1);
+        }
+
+        /**
+         * Constructs the exception with a message describing the unexpected status code.
+         *
+         * @param message    the error message
+         * @param statusCode the unexpected HTTP status code
+         */
+        public UnexpectedStatusCodeException(String message, int statusCode) {
             super(message);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * Returns the unexpected HTTP status code.
+         *
+         * @return the status code, or {@code -1} if unknown
+         */
+        public int getStatusCode() {
+            return statusCode;
         }
     }
 }
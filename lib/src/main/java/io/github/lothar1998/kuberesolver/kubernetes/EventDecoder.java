@@ -0,0 +1,54 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+
+/**
+ * Decodes Kubernetes watch events and listed EndpointSlices from JSON.
+ * <p>
+ * The {@link #FULL} decoder binds the whole object to the model records. Decoders aware of
+ * the resolved target, such as {@link FilteringEventDecoder}, may skip the parts of the object
+ * which would be discarded anyway.
+ * <p>
+ * Only the {@link #FULL} decoder relies on reflection, which native images support through the
+ * reachability metadata shipped with the library. Streaming decoders need no metadata at all.
+ */
+public interface EventDecoder {
+
+    /**
+     * Decoder binding the whole object to the model records.
+     */
+    EventDecoder FULL = new EventDecoder() {
+        @Override
+        public Event decode(JsonParser parser) throws IOException {
+            return EndpointSliceWatcher.ObjectMapperHolder.OBJECT_MAPPER.readValue(parser, Event.class);
+        }
+
+        @Override
+        public EndpointSlice decodeEndpointSlice(JsonParser parser) throws IOException {
+            return EndpointSliceWatcher.ObjectMapperHolder.OBJECT_MAPPER.readValue(parser, EndpointSlice.class);
+        }
+    };
+
+    /**
+     * Decodes an event from the parser positioned before or at the start of the event's JSON object.
+     *
+     * @param parser the JSON parser
+     * @return the decoded event
+     * @throws IOException if the event cannot be parsed
+     */
+    Event decode(JsonParser parser) throws IOException;
+
+    /**
+     * Decodes an EndpointSlice from the parser positioned at the start of the slice's JSON object,
+     * e.g., an item of an EndpointSlice list.
+     *
+     * @param parser the JSON parser
+     * @return the decoded EndpointSlice
+     * @throws IOException if the EndpointSlice cannot be parsed
+     */
+    EndpointSlice decodeEndpointSlice(JsonParser parser) throws IOException;
+}
@@ -0,0 +1,157 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the newline-delimited events of a watch stream into a reusable buffer of bounded size.
+ * <p>
+ * Lines are returned as ranges of the buffer, so they are decoded from the raw bytes without being
+ * copied into strings. The buffer grows with the longest line read so far, up to the maximum event
+ * size; a longer line fails the read with {@link EndpointSliceWatcher.EventTooLargeException} as soon
+ * as the limit is exceeded, before the rest of it is buffered. After a line longer than
+ * {@link #RETAINED_CAPACITY} the buffer is shrunk again, so a single large event does not pin its
+ * memory for the lifetime of the watch.
+ */
+final class EventLineReader {
+
+    static final int INITIAL_CAPACITY = 8 * 1024;
+    static final int RETAINED_CAPACITY = 64 * 1024;
+
+    private final InputStream stream;
+    private final int maxLineBytes;
+
+    private byte[] buffer;
+    // unread bytes are buffer[start, end)
+    private int start = 0;
+    private int end = 0;
+    private int lineStart = 0;
+    private int lineLength = 0;
+    private boolean eof = false;
+
+    /**
+     * Creates a reader of the given stream.
+     *
+     * @param stream       the stream of newline-delimited events
+     * @param maxLineBytes the maximum size of a line in bytes, excluding the line terminator
+     */
+    EventLineReader(InputStream stream, int maxLineBytes) {
+        this.stream = stream;
+        this.maxLineBytes = maxLineBytes;
+        this.buffer = new byte[Math.min(INITIAL_CAPACITY, capacityLimit())];
+    }
+
+    /**
+     * Reads the next line, terminated by {@code \n} or {@code \r\n}, or the last line of the stream, which may
+     * be unterminated. The line is available by {@link #buffer()}, {@link #lineStart()} and
+     * {@link #lineLength()} until the next call.
+     *
+     * @return {@code true} if a line was read, {@code false} if the stream ended
+     * @throws EndpointSliceWatcher.EventTooLargeException if the line is longer than the maximum size
+     * @throws IOException                                 if the stream cannot be read
+     */
+    boolean nextLine() throws IOException {
+        if (buffer.length > RETAINED_CAPACITY && end - start <= INITIAL_CAPACITY) {
+            var unread = end - start;
+            var shrunk = new byte[INITIAL_CAPACITY];
+            System.arraycopy(buffer, start, shrunk, 0, unread);
+            buffer = shrunk;
+            start = 0;
+            end = unread;
+        }
+
+        var scanned = start;
+        while (true) {
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    var length = i > start && buffer[i - 1] == '\r' ? i - 1 - start : i - start;
+                    return line(length, i + 1);
+                }
+            }
+            scanned = end;
+
+            if (eof) {
+                return start < end && line(end - start, end);
+            }
+            if (end - start > (long) maxLineBytes + 1) {
+                throw tooLarge();
+            }
+            if (end == buffer.length) {
+                makeRoom();
+                scanned = end;
+            }
+            var read = stream.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                eof = true;
+            } else {
+                end += read;
+            }
+        }
+    }
+
+    /**
+     * Returns the buffer holding the current line.
+     *
+     * @return the buffer
+     */
+    byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the offset of the current line in the buffer.
+     *
+     * @return the offset of the first byte of the line
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Returns the length of the current line, excluding the line terminator.
+     *
+     * @return the number of bytes of the line
+     */
+    int lineLength() {
+        return lineLength;
+    }
+
+    private boolean line(int length, int next) throws EndpointSliceWatcher.EventTooLargeException {
+        if (length > maxLineBytes) {
+            throw tooLarge();
+        }
+        lineStart = start;
+        lineLength = length;
+        start = next;
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the beginning of the buffer, or grows the buffer if they fill it.
+     */
+    private void makeRoom() throws EndpointSliceWatcher.EventTooLargeException {
+        var unread = end - start;
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, unread);
+        } else {
+            var capacity = (int) Math.min((long) buffer.length * 2, capacityLimit());
+            if (capacity <= buffer.length) {
+                throw tooLarge();
+            }
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+        start = 0;
+        end = unread;
+    }
+
+    private int capacityLimit() {
+        // the line, its carriage return and its line feed
+        return (int) Math.min((long) maxLineBytes + 2, Integer.MAX_VALUE - 8);
+    }
+
+    private EndpointSliceWatcher.EventTooLargeException tooLarge() {
+        return new EndpointSliceWatcher.EventTooLargeException(String.format(
+                "Watch event from kube-apiserver exceeds the limit of %d bytes", maxLineBytes), maxLineBytes);
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.time.Instant;
+
+/**
+ * Times at which a watch event was received from the stream and decoded.
+ *
+ * @param receivedAt    the wall-clock time at which the event was received
+ * @param receivedNanos the {@link System#nanoTime()} at which the event was received
+ * @param decodedNanos  the {@link System#nanoTime()} at which the event was decoded
+ */
+public record EventTiming(Instant receivedAt, long receivedNanos, long decodedNanos) {
+
+    /**
+     * Returns the time spent decoding the event.
+     *
+     * @return the decode time in nanoseconds
+     */
+    public long decodeNanos() {
+        return decodedNanos - receivedNanos;
+    }
+}
@@ -0,0 +1,339 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.github.lothar1998.kuberesolver.kubernetes.model.AddressType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+import io.github.lothar1998.kuberesolver.kubernetes.model.TargetRef;
+
+/**
+ * A streaming {@link EventDecoder} which knows the port and the readiness policy of the
+ * resolved target up front and builds only the parts of the event the resolver uses.
+ * <p>
+ * Endpoints rejected by the readiness policy and ports not matching the target are skipped
+ * while parsing, as are all fields not present in the model (e.g., {@code hostname},
+ * {@code nodeName} or {@code deprecatedTopology}) and all annotations except
+ * {@value Metadata#LAST_CHANGE_TRIGGER_TIME_ANNOTATION}. The port of the target is interpreted the
+ * same way as by the resolver:
+ * <ul>
+ *   <li>no port - only the first port of the slice is kept</li>
+ *   <li>numerical port - no ports are kept as the port is known already</li>
+ *   <li>port name - only ports with that name are kept</li>
+ * </ul>
+ */
+public final class FilteringEventDecoder implements EventDecoder {
+
+    private static final Conditions READY = new Conditions(true);
+    private static final Conditions NOT_READY = new Conditions(false);
+    private static final Conditions UNKNOWN_READINESS = new Conditions(null);
+
+    private final String portName;
+    private final boolean firstPortOnly;
+    private final boolean readyOnly;
+
+    /**
+     * Constructs a decoder for the given target port.
+     *
+     * @param port      the port of the target (number or name), or {@code null} if not provided
+     * @param readyOnly whether endpoints which are not ready should be skipped; endpoints of unknown readiness
+     *                  are kept
+     */
+    public FilteringEventDecoder(String port, boolean readyOnly) {
+        this.readyOnly = readyOnly;
+        if (port == null) {
+            this.portName = null;
+            this.firstPortOnly = true;
+        } else if (isNumber(port)) {
+            this.portName = null;
+            this.firstPortOnly = false;
+        } else {
+            this.portName = port;
+            this.firstPortOnly = false;
+        }
+    }
+
+    @Override
+    public Event decode(JsonParser parser) throws IOException {
+        if (startObject(parser)) {
+            return null;
+        }
+
+        EventType type = null;
+        EndpointSlice endpointSlice = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "type" -> type = parseEventType(parser.getValueAsString());
+                case "object" -> endpointSlice = decodeEndpointSlice(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new Event(type, endpointSlice);
+    }
+
+    @Override
+    public EndpointSlice decodeEndpointSlice(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        Metadata metadata = null;
+        List<Endpoint> endpoints = List.of();
+        List<EndpointPort> ports = List.of();
+        AddressType addressType = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "metadata" -> metadata = readMetadata(parser);
+                case "endpoints" -> endpoints = readEndpoints(parser);
+                case "ports" -> ports = readPorts(parser);
+                case "addressType" -> addressType = parseAddressType(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return new EndpointSlice(metadata, endpoints, ports, addressType);
+    }
+
+    private Metadata readMetadata(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String name = null;
+        String resourceVersion = null;
+        Map<String, String> annotations = Map.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString();
+                case "resourceVersion" -> resourceVersion = parser.getValueAsString();
+                case "annotations" -> annotations = readAnnotations(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return new Metadata(name, resourceVersion, annotations);
+    }
+
+    private Map<String, String> readAnnotations(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return Map.of();
+        }
+
+        Map<String, String> annotations = Map.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            if (field.equals(Metadata.LAST_CHANGE_TRIGGER_TIME_ANNOTATION)
+                    && parser.currentToken() == JsonToken.VALUE_STRING) {
+                annotations = Map.of(field, parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return annotations;
+    }
+
+    private List<Endpoint> readEndpoints(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+
+        var endpoints = new ArrayList<Endpoint>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            var endpoint = readEndpoint(parser);
+            if (endpoint != null) {
+                endpoints.add(endpoint);
+            }
+        }
+        return endpoints;
+    }
+
+    private Endpoint readEndpoint(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        List<String> addresses = List.of();
+        Boolean ready = null;
+        TargetRef targetRef = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "addresses" -> addresses = readAddresses(parser);
+                case "conditions" -> ready = readReady(parser);
+                case "targetRef" -> targetRef = readTargetRef(parser);
+                default -> parser.skipChildren();
+            }
+        }
+
+        // unknown readiness is interpreted as ready, as the API requires
+        if (readyOnly && Boolean.FALSE.equals(ready)) {
+            return null;
+        }
+        return new Endpoint(addresses, ready == null ? UNKNOWN_READINESS : ready ? READY : NOT_READY, targetRef);
+    }
+
+    private TargetRef readTargetRef(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String kind = null;
+        String name = null;
+        String uid = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "kind" -> kind = parser.getValueAsString();
+                case "name" -> name = parser.getValueAsString();
+                case "uid" -> uid = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return new TargetRef(kind, name, uid);
+    }
+
+    private List<String> readAddresses(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+
+        var addresses = new ArrayList<String>(1);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                addresses.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return addresses;
+    }
+
+    private Boolean readReady(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        Boolean ready = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var token = parser.nextToken();
+            if (field.equals("ready") && token.isBoolean()) {
+                ready = token == JsonToken.VALUE_TRUE;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return ready;
+    }
+
+    private List<EndpointPort> readPorts(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return List.of();
+        }
+
+        var ports = new ArrayList<EndpointPort>(1);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (!firstPortOnly && portName == null || firstPortOnly && !ports.isEmpty()) {
+                parser.skipChildren();
+                continue;
+            }
+            var port = readPort(parser);
+            if (port != null && (portName == null || portName.equals(port.name()))) {
+                ports.add(port);
+            }
+        }
+        return ports;
+    }
+
+    private EndpointPort readPort(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        String name = null;
+        int port = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "name" -> name = parser.getValueAsString();
+                case "port" -> port = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        return new EndpointPort(name, port);
+    }
+
+    private static boolean startObject(JsonParser parser) throws IOException {
+        var token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            return false;
+        }
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return true;
+        }
+        throw new IOException(String.format("Expected watch event object but got %s", token));
+    }
+
+    private static EventType parseEventType(String type) {
+        if (type == null) {
+            return null;
+        }
+        return switch (type) {
+            case "ADDED" -> EventType.ADDED;
+            case "MODIFIED" -> EventType.MODIFIED;
+            case "DELETED" -> EventType.DELETED;
+            case "ERROR" -> EventType.ERROR;
+            case "BOOKMARK" -> EventType.BOOKMARK;
+            default -> EventType.UNKNOWN;
+        };
+    }
+
+    private static AddressType parseAddressType(String type) {
+        if (type == null) {
+            return null;
+        }
+        return switch (type) {
+            case "IPv4" -> AddressType.IPV4;
+            case "IPv6" -> AddressType.IPV6;
+            case "FQDN" -> AddressType.FQDN;
+            default -> AddressType.UNKNOWN;
+        };
+    }
+
+    private static boolean isNumber(String port) {
+        try {
+            Integer.parseInt(port);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aborts a watch stream which has not received anything for longer than the idle timeout.
+ * <p>
+ * Every line of the stream, including {@code BOOKMARK} events sent periodically by the Kubernetes API,
+ * counts as a heartbeat. A half-open connection, e.g., after a load balancer failover, delivers no
+ * heartbeats and would otherwise block the reader forever; the watchdog closes the stream instead,
+ * which ends the blocked read.
+ */
+final class IdleWatchdog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(IdleWatchdog.class.getName());
+
+    private final long timeoutNanos;
+    private final Closeable stream;
+
+    private volatile long lastHeartbeatNanos;
+    private volatile boolean expired = false;
+    private ScheduledFuture<?> check;
+    private boolean closed = false;
+
+    private IdleWatchdog(Duration timeout, Closeable stream) {
+        this.timeoutNanos = timeout == null ? 0 : timeout.toNanos();
+        this.stream = stream;
+        this.lastHeartbeatNanos = System.nanoTime();
+    }
+
+    /**
+     * Starts a watchdog of the given stream.
+     *
+     * @param timeout the maximum time without a heartbeat, or {@code null} to never abort the stream
+     * @param stream  the stream closed when the timeout elapses
+     * @return the started watchdog
+     */
+    static IdleWatchdog start(Duration timeout, Closeable stream) {
+        var watchdog = new IdleWatchdog(timeout, stream);
+        if (watchdog.timeoutNanos > 0) {
+            watchdog.schedule(watchdog.timeoutNanos);
+        }
+        return watchdog;
+    }
+
+    /**
+     * Records a heartbeat of the stream.
+     */
+    void heartbeat() {
+        lastHeartbeatNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns whether the stream was aborted because no heartbeat was received within the timeout.
+     *
+     * @return {@code true} if the stream was aborted by the watchdog
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * Stops the watchdog. The stream is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (check != null) {
+            check.cancel(false);
+        }
+    }
+
+    private synchronized void schedule(long delayNanos) {
+        if (!closed) {
+            check = WatchScheduler.schedule(this::check, delayNanos);
+        }
+    }
+
+    private void check() {
+        var idleNanos = System.nanoTime() - lastHeartbeatNanos;
+        if (idleNanos < timeoutNanos) {
+            schedule(timeoutNanos - idleNanos);
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            expired = true;
+        }
+        LOGGER.log(Level.FINE, "No heartbeat received within {0} ms, aborting watch stream",
+                new Object[]{TimeUnit.NANOSECONDS.toMillis(timeoutNanos)});
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINER, "Cannot close idle watch stream", e);
+        }
+    }
+}
@@ -37,13 +37,33 @@ public final class InClusterEndpointSliceWatcher extends SecureEndpointSliceWatc
         this(getNamespace());
     }
 
+    /**
+     * Constructs the watcher with custom options by inferring the namespace from the in-cluster namespace file.
+     *
+     * @param options the options of requests sent to the Kubernetes API
+     * @throws IOException if reading the namespace file fails
+     */
+    public InClusterEndpointSliceWatcher(WatchOptions options) throws IOException {
+        this(getNamespace(), options);
+    }
+
     /**
      * Constructs the watcher using the provided namespace and other in-cluster configuration.
      *
      * @param namespace the Kubernetes namespace to watch
      */
     public InClusterEndpointSliceWatcher(String namespace) {
-        super(getHost(), namespace, getAuthConfigProvider());
+        this(namespace, WatchOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs the watcher using the provided namespace, options and other in-cluster configuration.
+     *
+     * @param namespace the Kubernetes namespace to watch
+     * @param options   the options of requests sent to the Kubernetes API
+     */
+    public InClusterEndpointSliceWatcher(String namespace, WatchOptions options) {
+        super(getHost(), namespace, getAuthConfigProvider(), options);
     }
 
     /**
@@ -1,5 +1,6 @@
 package io.github.lothar1998.kuberesolver.kubernetes;
 
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpClient.Version;
@@ -24,6 +25,17 @@ public final class InsecureEndpointSliceWatcher extends EndpointSliceWatcher {
         super(host, namespace);
     }
 
+    /**
+     * Constructs an insecure EndpointSliceWatcher with the specified Kubernetes API host, namespace and options.
+     *
+     * @param host      the hostname or IP of the Kubernetes API server
+     * @param namespace the Kubernetes namespace to watch for EndpointSlices
+     * @param options   the options of requests sent to the Kubernetes API
+     */
+    public InsecureEndpointSliceWatcher(String host, String namespace, WatchOptions options) {
+        super(host, namespace, options);
+    }
+
     /**
      * Creates an {@link HttpClient} configured to use HTTP/1.1 without TLS.
      *
@@ -37,17 +49,14 @@ public final class InsecureEndpointSliceWatcher extends EndpointSliceWatcher {
     }
 
     /**
-     * Builds an HTTP GET request to fetch EndpointSlice information for the given service name.
+     * Builds an HTTP GET request to fetch EndpointSlice information from the given URI.
      *
-     * @param serviceName the name of the Kubernetes service
+     * @param uri the requested URI
      * @return an {@link HttpRequest} configured for the service's EndpointSlice
-     * @throws Exception if URI creation fails
      */
     @Override
-    protected HttpRequest getRequest(String serviceName) throws Exception {
-        return HttpRequest.newBuilder(getURI(serviceName))
-                .setHeader("Accept", "application/json")
-                .build();
+    protected HttpRequest getRequest(URI uri) {
+        return newRequestBuilder(uri).build();
     }
 
 }
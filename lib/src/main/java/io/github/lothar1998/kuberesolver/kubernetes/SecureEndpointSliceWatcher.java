@@ -1,6 +1,7 @@
 package io.github.lothar1998.kuberesolver.kubernetes;
 
 import java.io.InputStream;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpClient.Version;
 import java.nio.charset.StandardCharsets;
@@ -30,7 +31,21 @@ public sealed class SecureEndpointSliceWatcher extends EndpointSliceWatcher perm
      * @param authConfig the provider for CA certificate and token used for authentication
      */
     public SecureEndpointSliceWatcher(String host, String namespace, AuthConfigProvider authConfig) {
-        super(host, namespace);
+        this(host, namespace, authConfig, WatchOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a SecureEndpointSliceWatcher with the specified Kubernetes API host, namespace, authentication
+     * configuration and options.
+     *
+     * @param host the Kubernetes API host
+     * @param namespace the namespace to watch for EndpointSlices
+     * @param authConfig the provider for CA certificate and token used for authentication
+     * @param options the options of requests sent to the Kubernetes API
+     */
+    public SecureEndpointSliceWatcher(String host, String namespace, AuthConfigProvider authConfig,
+                                      WatchOptions options) {
+        super(host, namespace, options);
         this.authConfig = authConfig;
     }
 
@@ -68,18 +83,16 @@ public sealed class SecureEndpointSliceWatcher extends EndpointSliceWatcher perm
 
     /**
      * Builds a secure HTTP GET request with authorization and content-type headers to retrieve
-     * EndpointSlice information for a given service.
+     * EndpointSlice information from the given URI.
      *
-     * @param serviceName the name of the Kubernetes service
+     * @param uri the requested URI
      * @return a configured {@link HttpRequest} instance
      * @throws Exception if the request setup fails
      */
     @Override
-    protected HttpRequest getRequest(String serviceName) throws Exception {
-        return HttpRequest.newBuilder(getURI(serviceName))
-                .GET()
+    protected HttpRequest getRequest(URI uri) throws Exception {
+        return newRequestBuilder(uri)
                 .setHeader("Authorization", String.format("Bearer %s", getToken()))
-                .setHeader("Accept", "application/json")
                 .build();
     }
 
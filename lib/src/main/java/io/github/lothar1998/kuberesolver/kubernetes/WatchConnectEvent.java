@@ -0,0 +1,48 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.net.URI;
+import java.net.http.HttpResponse;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event of a list or watch request sent to the Kubernetes API, lasting until the response headers are
+ * received or the request fails. The time spent waiting for the {@link ApiRequestBudget} is not included.
+ */
+@Name("io.github.lothar1998.kuberesolver.WatchConnect")
+@Label("Watch Connect")
+@Category({"Kubernetes Resolver", "Watch"})
+@Description("List or watch request sent to the Kubernetes API")
+final class WatchConnectEvent extends jdk.jfr.Event {
+
+    @Label("URI")
+    @Description("Requested URI, including the resource version or the continue token")
+    String uri;
+
+    @Label("Status Code")
+    @Description("HTTP status code of the response, or -1 if no response was received")
+    int statusCode;
+
+    @Label("Error")
+    String error;
+
+    /**
+     * Commits the event, if it is enabled, with the outcome of the request.
+     *
+     * @param requestUri the requested URI
+     * @param response   the response, or {@code null} if the request failed
+     * @param failure    the error the request failed with, or {@code null} if a response was received
+     */
+    void report(URI requestUri, HttpResponse<?> response, Throwable failure) {
+        end();
+        if (shouldCommit()) {
+            uri = requestUri.toString();
+            statusCode = response != null ? response.statusCode() : -1;
+            error = failure != null ? failure.toString() : null;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event of a watch of the EndpointSlices of a service, lasting from the initial list until the watch
+ * was finished by the Kubernetes API or failed.
+ */
+@Name("io.github.lothar1998.kuberesolver.WatchEnded")
+@Label("Watch Ended")
+@Category({"Kubernetes Resolver", "Watch"})
+@Description("Watch of the EndpointSlices of a service, finished by the Kubernetes API or failed")
+final class WatchEndedEvent extends jdk.jfr.Event {
+
+    @Label("Namespace")
+    String namespace;
+
+    @Label("Service")
+    String service;
+
+    @Label("Failed")
+    boolean failed;
+
+    @Label("Error")
+    String error;
+
+    /**
+     * Commits the event, if it is enabled, with the outcome of the watch.
+     *
+     * @param watchedNamespace the namespace of the service
+     * @param watchedService   the name of the service
+     * @param failure          the error the watch failed with, or {@code null} if it was finished
+     */
+    void report(String watchedNamespace, String watchedService, Throwable failure) {
+        end();
+        if (shouldCommit()) {
+            namespace = watchedNamespace;
+            service = watchedService;
+            failed = failure != null;
+            error = failure != null ? failure.toString() : null;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event of a watch event read and decoded from a watch stream, lasting for the decoding. The event is
+ * emitted for every received event, so it is disabled unless enabled in the recording settings.
+ */
+@Name("io.github.lothar1998.kuberesolver.WatchEventDecoded")
+@Label("Watch Event Decoded")
+@Category({"Kubernetes Resolver", "Watch"})
+@Description("Watch event decoded from a watch stream of the Kubernetes API, lasting for the decoding")
+@Enabled(false)
+final class WatchEventDecodedEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    String type;
+
+    @Label("EndpointSlice")
+    String endpointSlice;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Endpoints")
+    @Description("Number of endpoints of the EndpointSlice kept by the decoder")
+    int endpoints;
+
+    /**
+     * Commits the event, if it is enabled, with the decoded watch event.
+     *
+     * @param event the decoded event, or {@code null} if the decoder skipped it
+     * @param bytes the size of the encoded event
+     */
+    void report(Event event, int bytes) {
+        end();
+        if (shouldCommit()) {
+            this.bytes = bytes;
+            if (event != null) {
+                var slice = event.endpointSlice();
+                type = event.type() != null ? event.type().name() : null;
+                endpointSlice = slice != null && slice.metadata() != null ? slice.metadata().name() : null;
+                endpoints = slice != null && slice.endpoints() != null ? slice.endpoints().size() : 0;
+            }
+            commit();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.time.Duration;
+
+/**
+ * Options of requests sent by {@link EndpointSliceWatcher} to the Kubernetes API.
+ * <p>
+ * Use {@link #DEFAULT} and the {@code with*} methods to derive the options, e.g.,
+ * {@code WatchOptions.DEFAULT.withGzip(true)}.
+ *
+ * @param gzip          whether gzip-compressed responses should be requested from the Kubernetes API
+ * @param listPageSize  the maximum number of EndpointSlices per page of the initial list,
+ *                      or {@code 0} to skip the list and let the watch replay the current state
+ * @param timeout       the server-side timeout of a single watch request ({@code timeoutSeconds}),
+ *                      or {@code null} to let the Kubernetes API choose it
+ * @param idleTimeout   the maximum time a watch may go without receiving an event or a bookmark before
+ *                      it is aborted and resumed, or {@code null} to wait for events without bound
+ * @param maxEventBytes the maximum size of a single watch event, and of a single string value of a list,
+ *                      in bytes; a larger event fails the watch with
+ *                      {@link EndpointSliceWatcher.EventTooLargeException}, so the state is listed again
+ */
+public record WatchOptions(boolean gzip, int listPageSize, Duration timeout, Duration idleTimeout,
+                           int maxEventBytes) {
+
+    /**
+     * Default options: uncompressed responses, initial list in pages of 500 EndpointSlices and watches
+     * timed out by the server after 5 minutes and aborted after 2 minutes without a heartbeat.
+     * The Kubernetes API sends a bookmark about every minute, so a healthy watch is never aborted.
+     * Events are limited to 4 MiB, well above the largest EndpointSlice the Kubernetes API stores.
+     */
+    public static final WatchOptions DEFAULT = new WatchOptions(false, 500, Duration.ofMinutes(5),
+            Duration.ofMinutes(2), 4 * 1024 * 1024);
+
+    /**
+     * Validates the options.
+     *
+     * @throws IllegalArgumentException if any of the options is out of range
+     */
+    public WatchOptions {
+        if (listPageSize < 0) {
+            throw new IllegalArgumentException("listPageSize must not be negative");
+        }
+        if (timeout != null && timeout.toSeconds() <= 0) {
+            throw new IllegalArgumentException("timeout must be at least one second");
+        }
+        if (idleTimeout != null && (idleTimeout.isNegative() || idleTimeout.isZero())) {
+            throw new IllegalArgumentException("idleTimeout must be positive");
+        }
+        if (maxEventBytes <= 0) {
+            throw new IllegalArgumentException("maxEventBytes must be positive");
+        }
+    }
+
+    /**
+     * Returns a copy of these options with gzip-compressed responses enabled or disabled.
+     *
+     * @param gzip whether gzip-compressed responses should be requested
+     * @return the new options
+     */
+    public WatchOptions withGzip(boolean gzip) {
+        return new WatchOptions(gzip, listPageSize, timeout, idleTimeout, maxEventBytes);
+    }
+
+    /**
+     * Returns a copy of these options with the given page size of the initial list.
+     *
+     * @param listPageSize the maximum number of EndpointSlices per page, or {@code 0} to skip the list
+     * @return the new options
+     */
+    public WatchOptions withListPageSize(int listPageSize) {
+        return new WatchOptions(gzip, listPageSize, timeout, idleTimeout, maxEventBytes);
+    }
+
+    /**
+     * Returns a copy of these options with the given server-side timeout of a single watch request.
+     *
+     * @param timeout the timeout, or {@code null} to let the Kubernetes API choose it
+     * @return the new options
+     */
+    public WatchOptions withTimeout(Duration timeout) {
+        return new WatchOptions(gzip, listPageSize, timeout, idleTimeout, maxEventBytes);
+    }
+
+    /**
+     * Returns a copy of these options with the given maximum time without a heartbeat of the watch.
+     *
+     * @param idleTimeout the idle timeout, or {@code null} to wait for events without bound
+     * @return the new options
+     */
+    public WatchOptions withIdleTimeout(Duration idleTimeout) {
+        return new WatchOptions(gzip, listPageSize, timeout, idleTimeout, maxEventBytes);
+    }
+
+    /**
+     * Returns a copy of these options with the given maximum size of a single watch event.
+     *
+     * @param maxEventBytes the maximum event size in bytes
+     * @return the new options
+     */
+    public WatchOptions withMaxEventBytes(int maxEventBytes) {
+        return new WatchOptions(gzip, listPageSize, timeout, idleTimeout, maxEventBytes);
+    }
+}
@@ -0,0 +1,289 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records the raw responses of the Kubernetes API received by all watchers of the process, i.e., the pages of
+ * EndpointSlice lists and the frames of watch streams, with the times they were received, to a compact file
+ * which can be replayed by {@link WatchReplayer}.
+ * <p>
+ * A recording is started with {@link #start(Path)} and stopped by {@link #close()}; at most one recording runs
+ * at a time. While a recording runs, every list page is copied as it is parsed and recorded once parsed whole.
+ * The copy is bounded by the maximum page size of the recording, and a larger page fails the list with
+ * {@link EndpointSliceWatcher.EventTooLargeException}.
+ * <p>
+ * The file is gzip-compressed. It starts with the magic bytes {@code KRWR}, the format version and the start
+ * time in epoch milliseconds, followed by records, each starting with its kind:
+ * <ul>
+ *   <li>{@code TARGET}: the {@code namespace/service} of the next target id, as a length-prefixed UTF-8 string</li>
+ *   <li>{@code LIST_PAGE} and {@code EVENT}: the microseconds since the previous timed record, the target id
+ *   and the length-prefixed raw bytes of the list page or the watch frame</li>
+ * </ul>
+ * Numbers are unsigned LEB128 varints. The file is flushed at most once per second and when closed, so a
+ * recording cut short by a crash loses at most the last second.
+ */
+public final class WatchRecorder implements Closeable {
+
+    static final byte[] MAGIC = {'K', 'R', 'W', 'R'};
+    static final int VERSION = 1;
+    static final int TARGET = 1;
+    static final int LIST_PAGE = 2;
+    static final int EVENT = 3;
+
+    private static final Logger LOGGER = Logger.getLogger(WatchRecorder.class.getName());
+
+    private static final long FLUSH_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * The default maximum size of a recorded list page, well above a page of the default size of 500 slices.
+     */
+    static final int DEFAULT_MAX_PAGE_BYTES = 64 * 1024 * 1024;
+
+    private static final AtomicReference<WatchRecorder> ACTIVE = new AtomicReference<>();
+
+    private final Path file;
+    private final int maxPageBytes;
+    private final DataOutputStream output;
+    private final Map<String, Integer> targets = new HashMap<>();
+    private long recordedAtNanos;
+    private long flushedAtNanos;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    private WatchRecorder(Path file, int maxPageBytes, OutputStream output) throws IOException {
+        this.file = file;
+        this.maxPageBytes = maxPageBytes;
+        this.output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(output, true)));
+        this.output.write(MAGIC);
+        this.output.writeByte(VERSION);
+        this.output.writeLong(System.currentTimeMillis());
+        this.recordedAtNanos = System.nanoTime();
+        this.flushedAtNanos = recordedAtNanos;
+    }
+
+    /**
+     * Starts recording the responses received by all watchers of the process to the given file,
+     * replacing it if it exists.
+     *
+     * @param file the file of the recording
+     * @return the started recording, which is stopped by {@link #close()}
+     * @throws IOException           if the file cannot be created
+     * @throws IllegalStateException if a recording is already running
+     */
+    public static WatchRecorder start(Path file) throws IOException {
+        return start(file, DEFAULT_MAX_PAGE_BYTES);
+    }
+
+    /**
+     * Starts recording the responses received by all watchers of the process to the given file,
+     * replacing it if it exists, with list pages limited to the given size.
+     *
+     * @param file         the file of the recording
+     * @param maxPageBytes the maximum size of a list page in bytes; larger pages fail their lists
+     * @return the started recording, which is stopped by {@link #close()}
+     * @throws IOException              if the file cannot be created
+     * @throws IllegalArgumentException if the maximum page size is not positive
+     * @throws IllegalStateException    if a recording is already running
+     */
+    public static WatchRecorder start(Path file, int maxPageBytes) throws IOException {
+        if (maxPageBytes <= 0) {
+            throw new IllegalArgumentException("maxPageBytes must be positive");
+        }
+        if (ACTIVE.get() != null) {
+            throw new IllegalStateException("A recording of watches is already running");
+        }
+        var recorder = new WatchRecorder(file, maxPageBytes, Files.newOutputStream(file));
+        if (!ACTIVE.compareAndSet(null, recorder)) {
+            recorder.closeOutput();
+            throw new IllegalStateException("A recording of watches is already running");
+        }
+        return recorder;
+    }
+
+    /**
+     * Returns the running recording.
+     *
+     * @return the running recording, or {@code null} if none is running
+     */
+    static WatchRecorder active() {
+        return ACTIVE.get();
+    }
+
+    /**
+     * Returns the file of the recording.
+     *
+     * @return the file
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Returns a stream reading a page of an EndpointSlice list of the given target, which copies the bytes
+     * as they are read. The page is recorded by {@link ListPageTee#record()} once it is parsed.
+     *
+     * @param target the {@code namespace/service} of the target
+     * @param page   the response body of the list request
+     * @return the stream to parse the page from
+     */
+    ListPageTee teeListPage(String target, InputStream page) {
+        return new ListPageTee(target, page);
+    }
+
+    /**
+     * Records a frame of a watch stream of the given target.
+     *
+     * @param target the {@code namespace/service} of the target
+     * @param buffer the buffer holding the frame
+     * @param offset the offset of the frame in the buffer
+     * @param length the length of the frame, excluding the line terminator
+     */
+    void recordEvent(String target, byte[] buffer, int offset, int length) {
+        record(EVENT, target, buffer, offset, length);
+    }
+
+    /**
+     * Stops the recording and closes the file.
+     */
+    @Override
+    public void close() {
+        ACTIVE.compareAndSet(this, null);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        closeOutput();
+    }
+
+    private synchronized void record(int kind, String target, byte[] buffer, int offset, int length) {
+        if (closed || failed) {
+            return;
+        }
+        try {
+            var targetId = targets.get(target);
+            if (targetId == null) {
+                targetId = targets.size();
+                targets.put(target, targetId);
+                var name = target.getBytes(StandardCharsets.UTF_8);
+                output.writeByte(TARGET);
+                writeVarint(name.length);
+                output.write(name);
+            }
+
+            var now = System.nanoTime();
+            output.writeByte(kind);
+            writeVarint(TimeUnit.NANOSECONDS.toMicros(now - recordedAtNanos));
+            // the remainder of the microsecond is carried over to the next record
+            recordedAtNanos = now - (now - recordedAtNanos) % 1000;
+            writeVarint(targetId);
+            writeVarint(length);
+            output.write(buffer, offset, length);
+
+            if (now - flushedAtNanos >= FLUSH_PERIOD_NANOS) {
+                output.flush();
+                flushedAtNanos = now;
+            }
+        } catch (IOException e) {
+            // a failed recording must not fail the watches
+            failed = true;
+            LOGGER.log(Level.WARNING, "Cannot write recording of watches to " + file + ", recording stopped", e);
+        }
+    }
+
+    /**
+     * Copies a list page as it is read, up to the maximum page size of the recording.
+     */
+    final class ListPageTee extends FilterInputStream {
+
+        private final String target;
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private ListPageTee(String target, InputStream page) {
+            super(page);
+            this.target = target;
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if (b >= 0) {
+                ensureCapacity(1);
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            var read = super.read(buffer, offset, length);
+            if (read > 0) {
+                ensureCapacity(read);
+                copy.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are read, so they are recorded too
+            var buffer = new byte[(int) Math.min(n, 8192)];
+            var read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Records the bytes of the page read so far.
+         */
+        void record() {
+            WatchRecorder.this.record(LIST_PAGE, target, copy.toByteArray(), 0, copy.size());
+        }
+
+        private void ensureCapacity(int length) throws EndpointSliceWatcher.EventTooLargeException {
+            if (copy.size() + (long) length > maxPageBytes) {
+                throw new EndpointSliceWatcher.EventTooLargeException(String.format(
+                        "EndpointSlice list page exceeds the recording limit of %d bytes", maxPageBytes),
+                        maxPageBytes);
+            }
+        }
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private synchronized void closeOutput() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot close recording of watches " + file, e);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+
+/**
+ * Replays a recording of {@link WatchRecorder} deterministically, at the original or an accelerated speed.
+ * <p>
+ * A recorded target can be replayed directly to a {@link EndpointSliceWatcher.Subscriber} with
+ * {@link #replay(String, EventDecoder, EndpointSliceWatcher.Subscriber, double)}, in place of
+ * {@link EndpointSliceWatcher#watch(String, EventDecoder, EndpointSliceWatcher.Subscriber)}, or served by a fake
+ * Kubernetes API with {@link #serve(double)}, which is watched by an {@link InsecureEndpointSliceWatcher} like
+ * the real one, e.g., to benchmark the whole watch against captured rollout traffic:
+ * <pre>{@code
+ * var replayer = WatchReplayer.load(Path.of("rollout.krwr"));
+ * try (var server = replayer.serve(10)) {
+ *     new InsecureEndpointSliceWatcher(server.host(), "my-namespace").watch("my-service", subscriber);
+ * }
+ * }</pre>
+ */
+public final class WatchReplayer {
+
+    private static final Logger LOGGER = Logger.getLogger(WatchReplayer.class.getName());
+
+    private static final String LIST_PATH = "/apis/discovery.k8s.io/v1/namespaces/";
+    private static final String WATCH_PATH = "/apis/discovery.k8s.io/v1/watch/namespaces/";
+    private static final String SERVICE_NAME_SELECTOR = "kubernetes.io/service-name=";
+    private static final byte[] EMPTY_LIST =
+            "{\"kind\":\"EndpointSliceList\",\"metadata\":{\"resourceVersion\":\"0\"},\"items\":[]}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private final Instant startedAt;
+    private final Map<String, List<Frame>> targets;
+
+    private WatchReplayer(Instant startedAt, Map<String, List<Frame>> targets) {
+        this.startedAt = startedAt;
+        this.targets = targets;
+    }
+
+    /**
+     * Loads a recording into memory.
+     *
+     * @param file the file of the recording
+     * @return the replayer of the recording
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public static WatchReplayer load(Path file) throws IOException {
+        try (var input = Files.newInputStream(file)) {
+            return read(input);
+        }
+    }
+
+    /**
+     * Reads a recording from the given stream. A recording cut short, e.g., by a crash of the recording process,
+     * is read up to its last complete record.
+     *
+     * @param stream the stream of the recording
+     * @return the replayer of the recording
+     * @throws IOException if the stream cannot be read or is not a recording
+     */
+    public static WatchReplayer read(InputStream stream) throws IOException {
+        var input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)));
+        var magic = new byte[WatchRecorder.MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(magic, WatchRecorder.MAGIC)) {
+            throw new IOException("Not a recording of watches");
+        }
+        var version = input.readUnsignedByte();
+        if (version != WatchRecorder.VERSION) {
+            throw new IOException("Unsupported version " + version + " of recording of watches");
+        }
+        var startedAt = Instant.ofEpochMilli(input.readLong());
+
+        var names = new ArrayList<String>();
+        var targets = new LinkedHashMap<String, List<Frame>>();
+        var micros = 0L;
+        try {
+            int kind;
+            while ((kind = input.read()) != -1) {
+                switch (kind) {
+                    case WatchRecorder.TARGET -> {
+                        var name = new String(readBytes(input), StandardCharsets.UTF_8);
+                        names.add(name);
+                        targets.put(name, new ArrayList<>());
+                    }
+                    case WatchRecorder.LIST_PAGE, WatchRecorder.EVENT -> {
+                        micros += readVarint(input);
+                        var targetId = (int) readVarint(input);
+                        var bytes = readBytes(input);
+                        if (targetId >= names.size()) {
+                            throw new IOException("Unknown target " + targetId + " in recording of watches");
+                        }
+                        targets.get(names.get(targetId))
+                                .add(new Frame(micros, kind == WatchRecorder.LIST_PAGE, bytes));
+                    }
+                    default -> throw new IOException("Unknown record " + kind + " in recording of watches");
+                }
+            }
+        } catch (EOFException e) {
+            LOGGER.log(Level.FINE, "Recording of watches is truncated, replaying its complete records", e);
+        }
+        return new WatchReplayer(startedAt, targets);
+    }
+
+    /**
+     * Returns the time the recording was started.
+     *
+     * @return the start time of the recording
+     */
+    public Instant startedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Returns the recorded targets.
+     *
+     * @return the {@code namespace/service} of every recorded target, in the order of their first records
+     */
+    public Set<String> targets() {
+        return targets.keySet();
+    }
+
+    /**
+     * Replays the recorded responses of the given target to the subscriber, at their recorded times relative to
+     * the first one scaled by the given speed, like
+     * {@link EndpointSliceWatcher#watch(String, EventDecoder, EndpointSliceWatcher.Subscriber)} would receive them.
+     * Consecutive list pages are reported as one sync. This method blocks until the last response is replayed,
+     * then completes the subscriber.
+     *
+     * @param target     the {@code namespace/service} of the recorded target
+     * @param decoder    the decoder of the recorded responses
+     * @param subscriber the subscriber that receives events, errors, and completion signals
+     * @param speed      the speed of the replay, e.g., {@code 1} for the original timing, {@code 10} for
+     *                   a ten times faster replay or {@link Double#POSITIVE_INFINITY} to replay without delays
+     * @throws IllegalArgumentException if the target was not recorded or the speed is not positive
+     */
+    public void replay(String target, EventDecoder decoder, EndpointSliceWatcher.Subscriber subscriber,
+                       double speed) {
+        var frames = frames(target);
+        validateSpeed(speed);
+        try {
+            var clock = new ReplayClock(frames.isEmpty() ? 0 : frames.get(0).micros(), speed);
+            var listing = false;
+            for (var frame : frames) {
+                clock.awaitFrame(frame);
+                if (frame.listPage()) {
+                    if (!listing) {
+                        subscriber.onSyncStarted();
+                        listing = true;
+                    }
+                    var page = EndpointSliceWatcher.readListPage(new ByteArrayInputStream(frame.bytes()), decoder,
+                            subscriber, Integer.MAX_VALUE);
+                    if (page.continueToken() == null || page.continueToken().isEmpty()) {
+                        subscriber.onSyncCompleted();
+                        listing = false;
+                    }
+                } else {
+                    EndpointSliceWatcher.readEvents(new ByteArrayInputStream(frame.bytes()), decoder, subscriber,
+                            Integer.MAX_VALUE);
+                }
+            }
+            subscriber.onCompleted();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            subscriber.onError(e);
+        } catch (Exception e) {
+            subscriber.onError(e);
+        }
+    }
+
+    /**
+     * Starts a fake Kubernetes API on a loopback port serving the recording, at the recorded times scaled by
+     * the given speed.
+     * <p>
+     * A list request of a recorded target is served the first list recorded for it, page by page, and a list
+     * request of any other service an empty list. The watch events recorded after the first list are streamed
+     * on a shared clock started by the first watch request of the target: a resumed watch continues after the
+     * event of the requested resource version, as the Kubernetes API would. Once the events are replayed,
+     * watches are kept open without events until the server is closed.
+     *
+     * @param speed the speed of the replay, e.g., {@code 1} for the original timing, {@code 10} for
+     *              a ten times faster replay or {@link Double#POSITIVE_INFINITY} to replay without delays
+     * @return the running server, which is stopped by {@link ReplayServer#close()}
+     * @throws IOException              if the server cannot be started
+     * @throws IllegalArgumentException if the speed is not positive
+     */
+    public ReplayServer serve(double speed) throws IOException {
+        validateSpeed(speed);
+        return new ReplayServer(speed);
+    }
+
+    private List<Frame> frames(String target) {
+        var frames = targets.get(target);
+        if (frames == null) {
+            throw new IllegalArgumentException("Target " + target + " was not recorded");
+        }
+        return frames;
+    }
+
+    private static void validateSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+    }
+
+    private static long readVarint(DataInputStream input) throws IOException {
+        var value = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            var b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in recording of watches");
+    }
+
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        var length = readVarint(input);
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Malformed length " + length + " in recording of watches");
+        }
+        var bytes = new byte[(int) length];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * A recorded response.
+     *
+     * @param micros   the time of the response since the start of the recording in microseconds
+     * @param listPage whether the response is a list page, or a watch frame otherwise
+     * @param bytes    the raw response
+     */
+    private record Frame(long micros, boolean listPage, byte[] bytes) {
+    }
+
+    /**
+     * Maps the recorded times of frames to the times of the replay.
+     */
+    private static final class ReplayClock {
+
+        private final long baseMicros;
+        private final double speed;
+        private final long startedAtNanos = System.nanoTime();
+
+        ReplayClock(long baseMicros, double speed) {
+            this.baseMicros = baseMicros;
+            this.speed = speed;
+        }
+
+        void awaitFrame(Frame frame) throws InterruptedException {
+            if (Double.isInfinite(speed)) {
+                return;
+            }
+            var dueNanos = (long) (TimeUnit.MICROSECONDS.toNanos(frame.micros() - baseMicros) / speed);
+            var remaining = startedAtNanos + dueNanos - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            }
+        }
+    }
+
+    /**
+     * A fake Kubernetes API serving a recording, started by {@link #serve(double)}.
+     */
+    public final class ReplayServer implements Closeable {
+
+        private final double speed;
+        private final HttpServer server;
+        private final ExecutorService executor;
+        private final Map<String, ReplayClock> clocks = new LinkedHashMap<>();
+        private volatile boolean closed = false;
+
+        private ReplayServer(double speed) throws IOException {
+            this.speed = speed;
+            this.executor = Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "kuberesolver-replay-server");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(executor);
+            server.createContext(LIST_PATH, this::list);
+            server.createContext(WATCH_PATH, this::watch);
+            server.start();
+        }
+
+        /**
+         * Returns the base URL of the fake Kubernetes API, to be passed to {@link InsecureEndpointSliceWatcher}.
+         *
+         * @return the base URL
+         */
+        public String host() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        /**
+         * Stops the server and ends all open watches.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        private void list(HttpExchange exchange) throws IOException {
+            var target = target(exchange, LIST_PATH);
+            var frames = target != null && targets.containsKey(target) ? targets.get(target) : List.<Frame>of();
+            var pages = firstList(frames);
+            if (pages.isEmpty()) {
+                respond(exchange, 200, EMPTY_LIST);
+                return;
+            }
+            var continueToken = parameter(exchange, "continue");
+            var index = 0;
+            if (continueToken != null) {
+                index = -1;
+                for (int i = 0; i < pages.size() && index < 0; i++) {
+                    if (continueToken.equals(continueToken(pages.get(i)))) {
+                        index = i + 1;
+                    }
+                }
+                if (index < 0 || index >= pages.size()) {
+                    respond(exchange, 410, new byte[0]);
+                    return;
+                }
+            }
+            respond(exchange, 200, pages.get(index).bytes());
+        }
+
+        private void watch(HttpExchange exchange) throws IOException {
+            var target = target(exchange, WATCH_PATH);
+            var frames = target != null && targets.containsKey(target) ? targets.get(target) : List.<Frame>of();
+            var list = firstList(frames);
+            var events = frames.subList(list.isEmpty() ? 0 : frames.indexOf(list.get(list.size() - 1)) + 1,
+                    frames.size()).stream().filter(frame -> !frame.listPage()).toList();
+            var clock = clock(target, list.isEmpty() ? (events.isEmpty() ? 0 : events.get(0).micros())
+                    : list.get(list.size() - 1).micros());
+
+            var resourceVersion = parameter(exchange, "resourceVersion");
+            var from = 0;
+            for (int i = 0; i < events.size(); i++) {
+                if (resourceVersion != null && resourceVersion.equals(resourceVersion(events.get(i)))) {
+                    from = i + 1;
+                }
+            }
+
+            exchange.sendResponseHeaders(200, 0);
+            try (var body = exchange.getResponseBody()) {
+                for (var event : events.subList(from, events.size())) {
+                    clock.awaitFrame(event);
+                    body.write(event.bytes());
+                    body.write('\n');
+                    body.flush();
+                }
+                while (!closed) {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, "Replayed watch of " + target + " was closed", e);
+            }
+        }
+
+        private synchronized ReplayClock clock(String target, long baseMicros) {
+            return clocks.computeIfAbsent(String.valueOf(target), ignored -> new ReplayClock(baseMicros, speed));
+        }
+
+        private static String target(HttpExchange exchange, String prefix) {
+            var path = exchange.getRequestURI().getPath();
+            var namespace = path.substring(prefix.length()).split("/", 2)[0];
+            var selector = parameter(exchange, "labelSelector");
+            if (selector == null || !selector.startsWith(SERVICE_NAME_SELECTOR)) {
+                return null;
+            }
+            return namespace + "/" + selector.substring(SERVICE_NAME_SELECTOR.length());
+        }
+
+        private static String parameter(HttpExchange exchange, String name) {
+            var query = exchange.getRequestURI().getRawQuery();
+            if (query == null) {
+                return null;
+            }
+            for (var parameter : query.split("&")) {
+                var equalsIndex = parameter.indexOf('=');
+                if (equalsIndex != -1 && parameter.substring(0, equalsIndex).equals(name)) {
+                    return URLDecoder.decode(parameter.substring(equalsIndex + 1), StandardCharsets.UTF_8);
+                }
+            }
+            return null;
+        }
+
+        private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (var output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    /**
+     * Returns the pages of the first list of the given frames.
+     */
+    private static List<Frame> firstList(List<Frame> frames) {
+        var pages = new ArrayList<Frame>();
+        for (var frame : frames) {
+            if (frame.listPage()) {
+                pages.add(frame);
+                var continueToken = continueToken(frame);
+                if (continueToken == null || continueToken.isEmpty()) {
+                    return pages;
+                }
+            } else if (!pages.isEmpty()) {
+                break;
+            }
+        }
+        return pages;
+    }
+
+    private static String continueToken(Frame page) {
+        try {
+            return EndpointSliceWatcher.readListPage(new ByteArrayInputStream(page.bytes()), EventDecoder.FULL,
+                    NoopSubscriber.INSTANCE, Integer.MAX_VALUE).continueToken();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String resourceVersion(Frame event) {
+        try (var parser = EndpointSliceWatcher.JSON_FACTORY.createParser(event.bytes())) {
+            var decoded = EventDecoder.FULL.decode(parser);
+            var slice = decoded == null ? null : decoded.endpointSlice();
+            return slice == null || slice.metadata() == null ? null : slice.metadata().resourceVersion();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Ignores the events of parsed list pages.
+     */
+    private enum NoopSubscriber implements EndpointSliceWatcher.Subscriber {
+        INSTANCE;
+
+        @Override
+        public void onEvent(Event event) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scheduler of timers of watches, i.e., the idle watchdogs and the rotations of watch requests.
+ * The timers only check state and open or close streams, so a single daemon thread shared by all
+ * watches is enough. The thread is started on first use.
+ */
+final class WatchScheduler {
+
+    private WatchScheduler() {
+    }
+
+    /**
+     * Schedules the task to run once after the given delay.
+     *
+     * @param task       the task
+     * @param delayNanos the delay in nanoseconds
+     * @return the future of the task, which can be used to cancel it
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        return Holder.INSTANCE.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static final class Holder {
+
+        private static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            var scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                var thread = new Thread(runnable, "kuberesolver-watch-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+
+/**
+ * A watch of the EndpointSlices of a single service made of consecutive watch requests.
+ * <p>
+ * Shortly before the server-side timeout of a watch request, a replacement request is opened from
+ * the resource version of the last received event (make-before-break). Once the replacement is
+ * established, the old stream is closed and events are read from the replacement. Events received
+ * on the old stream after the replacement was requested are received again on the replacement, so
+ * they are skipped by their resource version. Changes are thus delivered without the gap of
+ * re-establishing an expired watch.
+ * <p>
+ * A stream which receives no heartbeat within the idle timeout is aborted and resumed from the last
+ * received resource version as well. If the resumed stream stays silent too, the watch fails.
+ * If a stream ends before it is replaced, e.g., because no server-side timeout was requested or
+ * the server ended it early, the watch ends.
+ */
+final class WatchSession {
+
+    private static final Logger LOGGER = Logger.getLogger(WatchSession.class.getName());
+
+    private static final Duration MAX_ROTATION_MARGIN = Duration.ofSeconds(10);
+
+    private final EndpointSliceWatcher watcher;
+    private final HttpClient client;
+    private final String serviceName;
+    private final EventDecoder decoder;
+    private final EndpointSliceWatcher.Subscriber subscriber;
+    private final WatchOptions options;
+
+    private final Object lock = new Object();
+    private final Deque<String> overlap = new ArrayDeque<>();
+    private String resourceVersion;
+    private InputStream current;
+    private boolean rotating = false;
+    private CompletableFuture<HttpResponse<InputStream>> replacement;
+
+    /**
+     * Creates a watch session.
+     *
+     * @param watcher     the watcher opening the watch requests
+     * @param client      the HTTP client
+     * @param serviceName the name of the Kubernetes service
+     * @param decoder     the decoder of watch events
+     * @param subscriber  the subscriber that receives events
+     */
+    WatchSession(EndpointSliceWatcher watcher, HttpClient client, String serviceName, EventDecoder decoder,
+                 EndpointSliceWatcher.Subscriber subscriber) {
+        this.watcher = watcher;
+        this.client = client;
+        this.serviceName = serviceName;
+        this.decoder = decoder;
+        this.subscriber = subscriber;
+        this.options = watcher.options();
+    }
+
+    /**
+     * Watches from the given resource version until a stream ends before it is replaced. This method blocks.
+     *
+     * @param startResourceVersion the resource version to start the watch from, or {@code null} to replay
+     *                             the current state
+     * @throws Exception if a watch request fails or the watch stays idle after it was resumed
+     */
+    void run(String startResourceVersion) throws Exception {
+        resourceVersion = startResourceVersion;
+        var response = watcher.openWatch(client, serviceName, startResourceVersion, subscriber.isUnresolved());
+        var resumedAfterIdle = false;
+        while (true) {
+            Outcome outcome;
+            try {
+                outcome = read(response);
+            } catch (Exception e) {
+                discardReplacement();
+                throw e;
+            }
+            CompletableFuture<HttpResponse<InputStream>> next;
+            String from;
+            synchronized (lock) {
+                next = replacement;
+                replacement = null;
+                current = null;
+                rotating = false;
+                from = resourceVersion;
+            }
+
+            if (next != null) {
+                response = await(next);
+                resumedAfterIdle = false;
+            } else if (outcome.idle()) {
+                if (resumedAfterIdle && !outcome.received()) {
+                    throw new HttpTimeoutException(String.format(
+                            "No heartbeat received from kube-apiserver within %s", options.idleTimeout()));
+                }
+                LOGGER.log(Level.FINE, "Watch of service {0} went idle, resuming from resource version {1}",
+                        new Object[]{serviceName, from});
+                response = watcher.openWatch(client, serviceName, from, subscriber.isUnresolved());
+                resumedAfterIdle = true;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private Outcome read(HttpResponse<InputStream> response) throws Exception {
+        var body = response.body();
+        synchronized (lock) {
+            current = body;
+        }
+        subscriber.onStreamOpened(body);
+        var rotation = scheduleRotation(body);
+        try (var watchdog = IdleWatchdog.start(options.idleTimeout(), body)) {
+            var streamSubscriber = new Subscriber(watchdog);
+            var contentEncoding = EndpointSliceWatcher.contentEncoding(response);
+            try (var stream = EndpointSliceWatcher.decodeContent(body, contentEncoding)) {
+                EndpointSliceWatcher.readEvents(stream, decoder, streamSubscriber, options.maxEventBytes(),
+                        watcher.namespace() + "/" + serviceName);
+            } catch (IOException e) {
+                if (!watchdog.isExpired() && !isRotating()) {
+                    throw e;
+                }
+                // the stream was closed by this session, possibly in the middle of an event which is received again
+                LOGGER.log(Level.FINER, "Watch stream of service " + serviceName + " was aborted", e);
+            }
+            return new Outcome(watchdog.isExpired(), streamSubscriber.received);
+        } finally {
+            if (rotation != null) {
+                rotation.cancel(false);
+            }
+        }
+    }
+
+    private ScheduledFuture<?> scheduleRotation(InputStream body) {
+        if (options.timeout() == null) {
+            return null;
+        }
+        var timeout = options.timeout();
+        var margin = timeout.dividedBy(10);
+        if (margin.compareTo(MAX_ROTATION_MARGIN) > 0) {
+            margin = MAX_ROTATION_MARGIN;
+        }
+        return WatchScheduler.schedule(() -> rotate(body), timeout.minus(margin).toNanos());
+    }
+
+    private void rotate(InputStream body) {
+        CompletableFuture<HttpResponse<InputStream>> next;
+        synchronized (lock) {
+            if (rotating || current != body) {
+                return;
+            }
+            rotating = true;
+            overlap.clear();
+            LOGGER.log(Level.FINER, "Replacing watch of service {0} from resource version {1}",
+                    new Object[]{serviceName, resourceVersion});
+            next = watcher.openWatchAsync(client, serviceName, resourceVersion);
+            replacement = next;
+        }
+        next.thenRun(() -> {
+            try {
+                body.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINER, "Cannot close replaced watch stream", e);
+            }
+        });
+    }
+
+    private void discardReplacement() {
+        CompletableFuture<HttpResponse<InputStream>> next;
+        synchronized (lock) {
+            next = replacement;
+            replacement = null;
+            current = null;
+        }
+        if (next != null) {
+            next.thenAccept(response -> {
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINER, "Cannot close discarded watch stream", e);
+                }
+            });
+        }
+    }
+
+    private boolean isRotating() {
+        synchronized (lock) {
+            return rotating;
+        }
+    }
+
+    private static HttpResponse<InputStream> await(CompletableFuture<HttpResponse<InputStream>> response)
+            throws Exception {
+        try {
+            return response.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The way a stream ended.
+     *
+     * @param idle     whether the stream was aborted by the idle watchdog
+     * @param received whether any event was received on the stream
+     */
+    private record Outcome(boolean idle, boolean received) {
+    }
+
+    /**
+     * Reports every received event as a heartbeat, keeps the resource version of the last one and
+     * skips the events received again on a replacement stream.
+     */
+    private final class Subscriber implements EndpointSliceWatcher.Subscriber {
+
+        private final IdleWatchdog watchdog;
+        private boolean received = false;
+
+        Subscriber(IdleWatchdog watchdog) {
+            this.watchdog = watchdog;
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            onEvent(event, null);
+        }
+
+        @Override
+        public void onEvent(Event event, EventTiming timing) {
+            watchdog.heartbeat();
+            received = true;
+
+            var slice = event.endpointSlice();
+            var eventResourceVersion = slice == null || slice.metadata() == null
+                    ? null : slice.metadata().resourceVersion();
+            if (eventResourceVersion != null) {
+                synchronized (lock) {
+                    var change = event.type() != EventType.BOOKMARK;
+                    if (change && !rotating && !overlap.isEmpty()) {
+                        if (eventResourceVersion.equals(overlap.peekFirst())) {
+                            overlap.pollFirst();
+                            return;
+                        }
+                        overlap.clear();
+                    }
+                    resourceVersion = eventResourceVersion;
+                    if (change && rotating) {
+                        overlap.addLast(eventResourceVersion);
+                    }
+                }
+            }
+
+            if (timing == null) {
+                subscriber.onEvent(event);
+            } else {
+                subscriber.onEvent(event, timing);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onCompleted() {
+            subscriber.onCompleted();
+        }
+    }
+}
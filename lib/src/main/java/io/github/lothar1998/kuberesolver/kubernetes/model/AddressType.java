@@ -0,0 +1,34 @@
+package io.github.lothar1998.kuberesolver.kubernetes.model;
+
+import com.fasterxml.jackson.annotation.JsonEnumDefaultValue;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents the type of addresses of all endpoints in a Kubernetes EndpointSlice.
+ * Dual-stack services have separate EndpointSlices for each address family.
+ */
+public enum AddressType {
+    /**
+     * IPv4 addresses.
+     */
+    @JsonProperty("IPv4")
+    IPV4,
+
+    /**
+     * IPv6 addresses.
+     */
+    @JsonProperty("IPv6")
+    IPV6,
+
+    /**
+     * Fully qualified domain names.
+     */
+    @JsonProperty("FQDN")
+    FQDN,
+
+    /**
+     * Fallback type when the address type is unrecognized.
+     */
+    @JsonEnumDefaultValue
+    UNKNOWN
+}
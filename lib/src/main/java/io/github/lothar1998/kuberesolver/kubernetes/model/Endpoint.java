@@ -2,6 +2,7 @@ package io.github.lothar1998.kuberesolver.kubernetes.model;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
@@ -12,8 +13,19 @@ import com.fasterxml.jackson.annotation.Nulls;
  *
  * @param addresses  a list of IP addresses for this endpoint
  * @param conditions readiness and health conditions associated with the endpoint
+ * @param targetRef  the reference to the pod backing the endpoint, or {@code null} if unknown
  */
 public record Endpoint(@JsonProperty("addresses") @JsonSetter(nulls = Nulls.AS_EMPTY) List<String> addresses,
-                       @JsonProperty("conditions") Conditions conditions) {
+                       @JsonProperty("conditions") Conditions conditions,
+                       @JsonProperty("targetRef") @JsonInclude(JsonInclude.Include.NON_NULL) TargetRef targetRef) {
 
+    /**
+     * Creates an endpoint without a target reference.
+     *
+     * @param addresses  a list of IP addresses for this endpoint
+     * @param conditions readiness and health conditions associated with the endpoint
+     */
+    public Endpoint(List<String> addresses, Conditions conditions) {
+        this(addresses, conditions, null);
+    }
 }
@@ -2,6 +2,7 @@ package io.github.lothar1998.kuberesolver.kubernetes.model;
 
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
@@ -10,12 +11,25 @@ import com.fasterxml.jackson.annotation.Nulls;
  * Represents a Kubernetes EndpointSlice object, which provides a scalable and extensible mechanism
  * for tracking network endpoints in a Kubernetes cluster.
  *
- * @param metadata  metadata associated with the EndpointSlice, including its name
- * @param endpoints a list of endpoints representing network addresses and associated conditions
- * @param ports     a list of ports associated with the endpoints
+ * @param metadata    metadata associated with the EndpointSlice, including its name
+ * @param endpoints   a list of endpoints representing network addresses and associated conditions
+ * @param ports       a list of ports associated with the endpoints
+ * @param addressType the type of addresses of all endpoints, or {@code null} if unknown
  */
 public record EndpointSlice(
         @JsonProperty("metadata") Metadata metadata,
         @JsonProperty("endpoints") @JsonSetter(nulls = Nulls.AS_EMPTY) List<Endpoint> endpoints,
-        @JsonProperty("ports") @JsonSetter(nulls = Nulls.AS_EMPTY) List<EndpointPort> ports) {
+        @JsonProperty("ports") @JsonSetter(nulls = Nulls.AS_EMPTY) List<EndpointPort> ports,
+        @JsonProperty("addressType") @JsonInclude(JsonInclude.Include.NON_NULL) AddressType addressType) {
+
+    /**
+     * Creates an EndpointSlice of unknown address type.
+     *
+     * @param metadata  metadata associated with the EndpointSlice, including its name
+     * @param endpoints a list of endpoints representing network addresses and associated conditions
+     * @param ports     a list of ports associated with the endpoints
+     */
+    public EndpointSlice(Metadata metadata, List<Endpoint> endpoints, List<EndpointPort> ports) {
+        this(metadata, endpoints, ports, null);
+    }
 }
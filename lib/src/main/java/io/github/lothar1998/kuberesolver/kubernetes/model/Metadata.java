@@ -1,11 +1,73 @@
 package io.github.lothar1998.kuberesolver.kubernetes.model;
 
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
  * Represents metadata for a Kubernetes resource, typically including the resource name.
  *
- * @param name the name of the Kubernetes resource
+ * @param name            the name of the Kubernetes resource
+ * @param resourceVersion the resource version of the Kubernetes resource, or {@code null} if unknown
+ * @param annotations     the annotations of the Kubernetes resource, empty if none
  */
-public record Metadata(@JsonProperty("name") String name) {
+public record Metadata(@JsonProperty("name") String name,
+                       @JsonProperty("resourceVersion") @JsonInclude(JsonInclude.Include.NON_NULL)
+                       String resourceVersion,
+                       @JsonProperty("annotations") @JsonInclude(JsonInclude.Include.NON_EMPTY)
+                       Map<String, String> annotations) {
+
+    /**
+     * Annotation set by the EndpointSlice controller to the time of the change (e.g., a pod
+     * becoming ready) which triggered the last update of the EndpointSlice.
+     */
+    public static final String LAST_CHANGE_TRIGGER_TIME_ANNOTATION = "endpoints.kubernetes.io/last-change-trigger-time";
+
+    /**
+     * Creates metadata, replacing missing annotations with an empty map.
+     */
+    public Metadata {
+        annotations = annotations == null ? Map.of() : annotations;
+    }
+
+    /**
+     * Creates metadata of a resource without annotations.
+     *
+     * @param name the name of the Kubernetes resource
+     */
+    public Metadata(String name) {
+        this(name, null, Map.of());
+    }
+
+    /**
+     * Creates metadata of a resource of unknown resource version.
+     *
+     * @param name        the name of the Kubernetes resource
+     * @param annotations the annotations of the Kubernetes resource
+     */
+    public Metadata(String name, Map<String, String> annotations) {
+        this(name, null, annotations);
+    }
+
+    /**
+     * Returns the time of the change which triggered the last update of the EndpointSlice,
+     * taken from the {@value #LAST_CHANGE_TRIGGER_TIME_ANNOTATION} annotation.
+     *
+     * @return the trigger time, or {@code null} if the annotation is absent or invalid
+     */
+    public Instant lastChangeTriggerTime() {
+        var value = annotations.get(LAST_CHANGE_TRIGGER_TIME_ANNOTATION);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(value).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 }
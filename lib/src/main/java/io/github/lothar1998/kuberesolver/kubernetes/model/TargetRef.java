@@ -0,0 +1,17 @@
+package io.github.lothar1998.kuberesolver.kubernetes.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Represents a reference to the object (usually a pod) backing a Kubernetes endpoint.
+ * The addresses of all families of a dual-stack pod are listed in separate EndpointSlices,
+ * each endpoint referencing the same pod.
+ *
+ * @param kind the kind of the referenced object, e.g., {@code Pod}
+ * @param name the name of the referenced object
+ * @param uid  the unique identifier of the referenced object
+ */
+public record TargetRef(@JsonProperty("kind") String kind,
+                        @JsonProperty("name") String name,
+                        @JsonProperty("uid") String uid) {
+}
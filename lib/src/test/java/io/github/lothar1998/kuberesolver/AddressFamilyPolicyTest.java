@@ -0,0 +1,90 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.AddressType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+
+class AddressFamilyPolicyTest {
+
+    private static final SocketAddress IPV4_1 = new InetSocketAddress("10.0.0.1", 8080);
+    private static final SocketAddress IPV4_2 = new InetSocketAddress("10.0.0.2", 8080);
+    private static final SocketAddress IPV6_1 = new InetSocketAddress("fd00::1", 8080);
+    private static final SocketAddress IPV6_2 = new InetSocketAddress("fd00::2", 8080);
+    private static final SocketAddress HOSTNAME = InetSocketAddress.createUnresolved("my-service.local", 8080);
+
+    private static final List<SocketAddress> ADDRESSES = List.of(IPV4_1, HOSTNAME, IPV4_2, IPV6_1, IPV6_2);
+
+    @DisplayName("should interleave address families starting with IPv6")
+    @Test
+    void interleaveTest() {
+        assertEquals(List.of(IPV6_1, IPV4_1, IPV6_2, IPV4_2, HOSTNAME),
+                AddressFamilyPolicy.INTERLEAVE.order(ADDRESSES));
+        assertEquals(List.of(IPV6_1, IPV4_1, IPV4_2),
+                AddressFamilyPolicy.INTERLEAVE.order(List.of(IPV4_1, IPV4_2, IPV6_1)));
+    }
+
+    @DisplayName("should order the preferred address family first")
+    @Test
+    void preferTest() {
+        assertEquals(List.of(IPV4_1, IPV4_2, IPV6_1, IPV6_2, HOSTNAME),
+                AddressFamilyPolicy.PREFER_IPV4.order(ADDRESSES));
+        assertEquals(List.of(IPV6_1, IPV6_2, IPV4_1, IPV4_2, HOSTNAME),
+                AddressFamilyPolicy.PREFER_IPV6.order(ADDRESSES));
+    }
+
+    @DisplayName("should drop the other address family")
+    @Test
+    void singleFamilyTest() {
+        assertEquals(List.of(IPV4_1, IPV4_2, HOSTNAME), AddressFamilyPolicy.IPV4_ONLY.order(ADDRESSES));
+        assertEquals(List.of(IPV6_1, IPV6_2, HOSTNAME), AddressFamilyPolicy.IPV6_ONLY.order(ADDRESSES));
+        assertEquals(List.of(), AddressFamilyPolicy.IPV6_ONLY.order(List.of(IPV4_1)));
+
+        assertTrue(AddressFamilyPolicy.IPV4_ONLY.accepts(AddressType.IPV4));
+        assertTrue(AddressFamilyPolicy.IPV4_ONLY.accepts(AddressType.FQDN));
+        assertTrue(AddressFamilyPolicy.IPV4_ONLY.accepts(null));
+        assertFalse(AddressFamilyPolicy.IPV4_ONLY.accepts(AddressType.IPV6));
+        assertFalse(AddressFamilyPolicy.IPV6_ONLY.accepts(AddressType.IPV4));
+        assertTrue(AddressFamilyPolicy.INTERLEAVE.accepts(AddressType.IPV6));
+    }
+
+    @DisplayName("should keep the unresolved addresses of an FQDN slice under every policy")
+    @Test
+    void fqdnSliceTest() {
+        var slice = CompactEndpointSlice.of(List.of(
+                new Endpoint(List.of("my-pod-a.my-service.ns.svc"), new Conditions(true)),
+                new Endpoint(List.of("my-pod-b.my-service.ns.svc"), new Conditions(true))), 8080);
+
+        for (var policy : AddressFamilyPolicy.values()) {
+            assertTrue(policy.accepts(AddressType.FQDN));
+            for (var group : slice.addressGroups()) {
+                assertTrue(group.stream().allMatch(address -> ((InetSocketAddress) address).isUnresolved()));
+                assertEquals(group, policy.order(group), policy.value());
+            }
+            // mixed with IP literals, the unresolved addresses are kept last
+            var ordered = policy.order(List.of(HOSTNAME, IPV4_1, IPV6_1));
+            assertEquals(HOSTNAME, ordered.get(ordered.size() - 1), policy.value());
+        }
+    }
+
+    @DisplayName("should parse the query parameter value of a policy")
+    @Test
+    void parseTest() {
+        for (var policy : AddressFamilyPolicy.values()) {
+            assertEquals(policy, AddressFamilyPolicy.parse(policy.value()));
+        }
+        assertEquals(AddressFamilyPolicy.PREFER_IPV6, AddressFamilyPolicy.parse("Prefer-IPv6"));
+        assertThrows(IllegalArgumentException.class, () -> AddressFamilyPolicy.parse("ipv6"));
+    }
+}
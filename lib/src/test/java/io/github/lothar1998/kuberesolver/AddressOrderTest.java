@@ -0,0 +1,74 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AddressOrderTest {
+
+    private static final List<SocketAddress> IPV4_1 = List.of(new InetSocketAddress("10.0.0.1", 8080));
+    private static final List<SocketAddress> IPV4_2 = List.of(new InetSocketAddress("10.0.0.2", 8080));
+    private static final List<SocketAddress> IPV4_10 = List.of(new InetSocketAddress("10.0.0.10", 8080));
+    private static final List<SocketAddress> IPV4_200 = List.of(new InetSocketAddress("10.0.0.200", 8080));
+    private static final List<SocketAddress> IPV6_1 = List.of(new InetSocketAddress("fd00::1", 8080));
+    private static final List<SocketAddress> HOSTNAME =
+            List.of(InetSocketAddress.createUnresolved("my-service.local", 8080));
+
+    @DisplayName("should sort address groups canonically")
+    @Test
+    void canonicalTest() {
+        var groups = new ArrayList<>(List.of(HOSTNAME, IPV6_1, IPV4_200, IPV4_10, IPV4_2, IPV4_1));
+        groups.sort(AddressOrder.CANONICAL_GROUPS);
+
+        assertEquals(List.of(IPV4_1, IPV4_2, IPV4_10, IPV4_200, IPV6_1, HOSTNAME), groups);
+        assertSame(groups, AddressOrder.CANONICAL.order(groups));
+    }
+
+    @DisplayName("should shuffle address groups consistently across updates")
+    @Test
+    void shuffledTest() {
+        var groups = groups(50);
+        var order = AddressOrder.shuffled(42);
+        var shuffled = order.order(groups);
+
+        assertNotEquals(groups, shuffled);
+        assertEquals(shuffled, AddressOrder.shuffled(42).order(groups));
+        assertNotEquals(shuffled, AddressOrder.shuffled(43).order(groups));
+
+        // removing and adding groups keeps the relative order of the others
+        var updated = new ArrayList<>(groups.subList(5, groups.size()));
+        updated.add(List.of(new InetSocketAddress("10.0.1.1", 8080)));
+        var expected = new ArrayList<>(shuffled);
+        expected.removeAll(groups.subList(0, 5));
+        var reshuffled = new ArrayList<>(order.order(updated));
+        reshuffled.retainAll(expected);
+        assertEquals(expected, reshuffled);
+    }
+
+    @DisplayName("should draw a seed for every resolver unless seeded")
+    @Test
+    void forResolverTest() {
+        assertSame(AddressOrder.CANONICAL, AddressOrder.CANONICAL.forResolver());
+        var seeded = AddressOrder.shuffled(42);
+        assertSame(seeded, seeded.forResolver());
+
+        var unseeded = AddressOrder.shuffled();
+        assertNotEquals(unseeded, unseeded.forResolver());
+        assertNotEquals(unseeded.forResolver(), unseeded.forResolver());
+    }
+
+    private static List<List<SocketAddress>> groups(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> List.<SocketAddress>of(new InetSocketAddress("10.0.0." + i, 8080)))
+                .toList();
+    }
+}
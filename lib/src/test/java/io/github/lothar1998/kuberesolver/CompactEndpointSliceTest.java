@@ -0,0 +1,184 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.Reference;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.TargetRef;
+
+public class CompactEndpointSliceTest {
+
+    // the maximum number of endpoints of an EndpointSlice
+    private static final int SLICE_ENDPOINTS = 1000;
+
+    @DisplayName("should materialize addresses of ready endpoints only")
+    @Test
+    void materializeReadyEndpointsTest() {
+        var slice = CompactEndpointSlice.of(List.of(
+                new Endpoint(List.of("10.0.0.1"), new Conditions(true)),
+                new Endpoint(List.of("10.0.0.2"), new Conditions(false)),
+                new Endpoint(List.of("fd00::1", "10.0.0.3"), new Conditions(true)),
+                new Endpoint(List.of(), new Conditions(true)),
+                new Endpoint(List.of("10.0.0.4"), new Conditions(false))), 8080);
+
+        assertEquals(5, slice.endpointCount());
+        assertTrue(slice.isReady(0));
+        assertFalse(slice.isReady(1));
+        assertFalse(slice.isReady(4));
+        assertEquals(List.of(
+                        List.of(new InetSocketAddress("10.0.0.1", 8080)),
+                        List.of(new InetSocketAddress("10.0.0.3", 8080), new InetSocketAddress("fd00::1", 8080))),
+                slice.addressGroups());
+    }
+
+    @DisplayName("should treat endpoints of unknown readiness as ready")
+    @Test
+    void unknownReadinessTest() {
+        var slice = CompactEndpointSlice.of(List.of(
+                new Endpoint(List.of("10.0.0.1"), new Conditions(null)),
+                new Endpoint(List.of("10.0.0.2"), null)), 8080);
+
+        assertTrue(slice.isReady(0));
+        assertTrue(slice.isReady(1));
+        assertEquals(List.of(
+                        List.of(new InetSocketAddress("10.0.0.1", 8080)),
+                        List.of(new InetSocketAddress("10.0.0.2", 8080))),
+                slice.addressGroups());
+    }
+
+    @DisplayName("should keep addresses which are not IP literals as unresolved hostnames")
+    @Test
+    void keepHostnamesTest() {
+        var slice = CompactEndpointSlice.of(List.of(
+                new Endpoint(List.of("my-pod.my-service.ns.svc"), new Conditions(true)),
+                new Endpoint(List.of("10.0.0.1"), new Conditions(true))), 8080);
+
+        var groups = slice.addressGroups();
+
+        assertEquals(2, groups.size());
+        var hostname = (InetSocketAddress) groups.get(0).get(0);
+        assertTrue(hostname.isUnresolved());
+        assertEquals(InetSocketAddress.createUnresolved("my-pod.my-service.ns.svc", 8080), hostname);
+        assertEquals(List.of(new InetSocketAddress("10.0.0.1", 8080)), groups.get(1));
+    }
+
+    @DisplayName("should keep the pods backing the endpoints only when requested")
+    @Test
+    void keepTargetsTest() {
+        var pod1 = new TargetRef("Pod", "pod-1", "uid-1");
+        var pod2 = new TargetRef("Pod", "pod-2", null);
+        var endpoints = List.of(
+                new Endpoint(List.of("10.0.0.1"), new Conditions(true), pod1),
+                new Endpoint(List.of("10.0.0.2"), new Conditions(true)),
+                new Endpoint(List.of("10.0.0.3"), new Conditions(true), pod2));
+
+        var slice = CompactEndpointSlice.of(endpoints, 8080, true);
+
+        assertEquals(CompactEndpointSlice.targetKey(pod1), slice.targetKey(0));
+        assertEquals(0L, slice.targetKey(1));
+        assertEquals(CompactEndpointSlice.targetKey(pod2), slice.targetKey(2));
+        assertEquals(CompactEndpointSlice.targetKey(new TargetRef("Pod", "other-name", "uid-1")), slice.targetKey(0));
+        assertNotEquals(slice.targetKey(0), slice.targetKey(2));
+        assertEquals(0L, CompactEndpointSlice.of(endpoints, 8080).targetKey(0));
+    }
+
+    @DisplayName("should parse only valid dotted-quad IPv4 literals")
+    @Test
+    void parseIpv4Test() {
+        assertEquals(0x0A000001L, CompactEndpointSlice.parseIpv4("10.0.0.1"));
+        assertEquals(0xFFFFFFFFL, CompactEndpointSlice.parseIpv4("255.255.255.255"));
+        assertEquals(-1L, CompactEndpointSlice.parseIpv4("10.0.0"));
+        assertEquals(-1L, CompactEndpointSlice.parseIpv4("10.0.0.1.1"));
+        assertEquals(-1L, CompactEndpointSlice.parseIpv4("10..0.1"));
+        assertEquals(-1L, CompactEndpointSlice.parseIpv4("10.0.0.256"));
+        assertEquals(-1L, CompactEndpointSlice.parseIpv4("my-service.local"));
+    }
+
+    @DisplayName("should retain at most 4.5 bytes per single-stack IPv4 endpoint on the heap")
+    @Test
+    void ipv4BytesPerEndpointTest() {
+        var endpoints = new ArrayList<Endpoint>(SLICE_ENDPOINTS);
+        for (int i = 0; i < SLICE_ENDPOINTS; i++) {
+            endpoints.add(new Endpoint(List.of(String.format("10.0.%d.%d", i >> 8, i & 0xFF)), new Conditions(true)));
+        }
+
+        var compactBytes = measureBytesPerEndpoint(() -> CompactEndpointSlice.of(endpoints, 8080), 1000);
+        var socketAddressBytes = measureBytesPerEndpoint(() -> socketAddressSets(endpoints, 8080), 20);
+
+        assertTrue(compactBytes <= 4.5, "retained " + compactBytes + " bytes per endpoint");
+        // the estimate of retainedBytes() bounds the measured footprint
+        assertTrue(compactBytes <= CompactEndpointSlice.of(endpoints, 8080).retainedBytes()
+                / (double) SLICE_ENDPOINTS + 0.5);
+        assertTrue(socketAddressBytes > 20 * compactBytes,
+                "socket address sets retained " + socketAddressBytes + " bytes per endpoint");
+    }
+
+    @DisplayName("should retain at most 16.5 bytes per single-stack IPv6 endpoint on the heap")
+    @Test
+    void ipv6BytesPerEndpointTest() {
+        var endpoints = new ArrayList<Endpoint>(SLICE_ENDPOINTS);
+        for (int i = 0; i < SLICE_ENDPOINTS; i++) {
+            endpoints.add(new Endpoint(List.of(String.format("fd00::%x", i)), new Conditions(true)));
+        }
+
+        var compactBytes = measureBytesPerEndpoint(() -> CompactEndpointSlice.of(endpoints, 8080), 1000);
+        var socketAddressBytes = measureBytesPerEndpoint(() -> socketAddressSets(endpoints, 8080), 20);
+
+        assertTrue(compactBytes <= 16.5, "retained " + compactBytes + " bytes per endpoint");
+        // the estimate of retainedBytes() bounds the measured footprint
+        assertTrue(compactBytes <= CompactEndpointSlice.of(endpoints, 8080).retainedBytes()
+                / (double) SLICE_ENDPOINTS + 0.5);
+        assertTrue(socketAddressBytes > 5 * compactBytes,
+                "socket address sets retained " + socketAddressBytes + " bytes per endpoint");
+    }
+
+    /**
+     * Builds the representation replaced by {@link CompactEndpointSlice}: a set of resolved socket addresses
+     * per endpoint.
+     */
+    private static List<Set<SocketAddress>> socketAddressSets(List<Endpoint> endpoints, int port) {
+        return endpoints.stream()
+                .map(endpoint -> endpoint.addresses().stream()
+                        .map(address -> (SocketAddress) new InetSocketAddress(address, port))
+                        .collect(Collectors.toSet()))
+                .toList();
+    }
+
+    /**
+     * Measures the heap retained by the slices created by the factory, per endpoint, as the growth of the used heap
+     * after full collections. Many slices are measured at once, so the noise of the collector is negligible.
+     */
+    private static double measureBytesPerEndpoint(Supplier<Object> factory, int slices) {
+        var retained = new Object[slices];
+        var before = usedHeapBytes();
+        for (int i = 0; i < slices; i++) {
+            retained[i] = factory.get();
+        }
+        var after = usedHeapBytes();
+        Reference.reachabilityFence(retained);
+        return (double) (after - before) / ((long) slices * SLICE_ENDPOINTS);
+    }
+
+    private static long usedHeapBytes() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class EndpointProberTest {
+
+    private static final SocketAddress ADDRESS_1 = new InetSocketAddress("10.0.0.1", 8080);
+    private static final SocketAddress ADDRESS_2 = new InetSocketAddress("10.0.0.2", 8080);
+    private static final SocketAddress ADDRESS_3 = new InetSocketAddress("10.0.0.3", 8080);
+
+    private final Set<InetSocketAddress> accepting = ConcurrentHashMap.newKeySet();
+    private final Semaphore admissions = new Semaphore(0);
+    private EndpointProber prober;
+
+    @AfterEach
+    void teardown() {
+        if (prober != null) {
+            prober.close();
+        }
+    }
+
+    @DisplayName("should admit the addresses of the first snapshot without probing")
+    @Test
+    void admitInitialAddressesTest() {
+        prober = prober(EndpointProbeOptions.DEFAULT);
+
+        var groups = List.of(List.of(ADDRESS_1), List.of(ADDRESS_2));
+
+        assertEquals(groups, prober.admit(groups));
+        assertEquals(0, admissions.availablePermits());
+    }
+
+    @DisplayName("should hold back an added address until it accepts a connection")
+    @Test
+    void holdBackUntilConnectedTest() throws Exception {
+        prober = prober(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMinutes(1)));
+        prober.admit(List.of(List.of(ADDRESS_1)));
+
+        var groups = List.of(List.of(ADDRESS_1), List.of(ADDRESS_2));
+        assertEquals(List.of(List.of(ADDRESS_1)), prober.admit(groups));
+
+        accepting.add((InetSocketAddress) ADDRESS_2);
+
+        assertTrue(admissions.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(groups, prober.admit(groups));
+    }
+
+    @DisplayName("should admit an added address after the maximum delay")
+    @Test
+    void admitAfterMaxDelayTest() throws Exception {
+        prober = prober(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMillis(100)));
+        prober.admit(List.of(List.of(ADDRESS_1)));
+
+        var groups = List.of(List.of(ADDRESS_1), List.of(ADDRESS_2));
+        assertEquals(List.of(List.of(ADDRESS_1)), prober.admit(groups));
+
+        assertTrue(admissions.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(groups, prober.admit(groups));
+    }
+
+    @DisplayName("should remove addresses without delay and probe them again when added back")
+    @Test
+    void removeAddressTest() {
+        prober = prober(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMinutes(1)));
+        prober.admit(List.of(List.of(ADDRESS_1), List.of(ADDRESS_2)));
+
+        assertEquals(List.of(List.of(ADDRESS_1)), prober.admit(List.of(List.of(ADDRESS_1))));
+        assertEquals(List.of(List.of(ADDRESS_1)), prober.admit(List.of(List.of(ADDRESS_1), List.of(ADDRESS_2))));
+    }
+
+    @DisplayName("should keep the admitted addresses of a group with a held back address")
+    @Test
+    void partialGroupTest() {
+        prober = prober(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMinutes(1)));
+        prober.admit(List.of(List.of(ADDRESS_1)));
+
+        assertEquals(List.of(List.of(ADDRESS_1)), prober.admit(List.of(List.of(ADDRESS_1, ADDRESS_2))));
+    }
+
+    @DisplayName("should admit all addresses when none of them is admitted")
+    @Test
+    void admitAllWhenNoneAdmittedTest() {
+        prober = prober(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMinutes(1)));
+        prober.admit(List.of(List.of(ADDRESS_1)));
+
+        var groups = List.of(List.of(ADDRESS_2), List.of(ADDRESS_3));
+
+        assertEquals(groups, prober.admit(groups));
+        assertEquals(groups, prober.admit(groups));
+    }
+
+    @DisplayName("should admit unresolved addresses without probing")
+    @Test
+    void unresolvedAddressTest() {
+        prober = prober(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMinutes(1)));
+        prober.admit(List.of(List.of(ADDRESS_1)));
+
+        var unresolved = InetSocketAddress.createUnresolved("my-pod.my-service", 8080);
+        var groups = List.of(List.of(ADDRESS_1), List.<SocketAddress>of(unresolved));
+
+        assertEquals(groups, prober.admit(groups));
+    }
+
+    private EndpointProber prober(EndpointProbeOptions options) {
+        return new EndpointProber(options, admissions::release, this::connect);
+    }
+
+    private void connect(InetSocketAddress address, int timeoutMillis) throws IOException {
+        if (!accepting.contains(address)) {
+            throw new ConnectException("Connection refused");
+        }
+    }
+}
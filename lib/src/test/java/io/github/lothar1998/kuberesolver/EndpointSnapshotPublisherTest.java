@@ -0,0 +1,472 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.EventTiming;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+
+class EndpointSnapshotPublisherTest {
+
+    private static final ResolverTarget TARGET = new ResolverTarget("my-namespace", "my-service", "grpc");
+
+    private EndpointSliceWatcher.Subscriber watch;
+    private int watches;
+    private EndpointSnapshotPublisher publisher;
+
+    @BeforeEach
+    void setup() {
+        watches = 0;
+        publisher = new EndpointSnapshotPublisher(Runnable::run, TARGET,
+                ResolverOptions.DEFAULT.withInitialSyncTimeout(null), new PropagationLatency(),
+                (serviceName, decoder, subscriber) -> {
+                    watches++;
+                    watch = subscriber;
+                });
+    }
+
+    @DisplayName("should publish the initial state once synced and start a single watch for all subscribers")
+    @Test
+    void publishInitialStateTest() {
+        var subscriber1 = new CollectingSubscriber(Long.MAX_VALUE);
+        var subscriber2 = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber1, Runnable::run);
+        publisher.subscribe(subscriber2, Runnable::run);
+
+        watch.onSyncStarted();
+        watch.onEvent(added("slice-a", "10.0.0.1"));
+        watch.onEvent(added("slice-b", "10.0.0.2"));
+        assertEquals(List.of(), subscriber1.snapshots);
+        watch.onSyncCompleted();
+
+        assertEquals(1, watches);
+        assertTrue(publisher.initialSync().isDone());
+        for (var subscriber : List.of(subscriber1, subscriber2)) {
+            assertEquals(1, subscriber.snapshots.size());
+            assertEquals(TARGET, subscriber.snapshots.get(0).target());
+            assertEquals(2, addresses(subscriber.snapshots.get(0)).size());
+        }
+    }
+
+    @DisplayName("should pass only the latest snapshot to a subscriber without demand")
+    @Test
+    void conflateSnapshotsTest() {
+        var subscriber = new CollectingSubscriber(1);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"));
+
+        watch.onEvent(added("slice-b", "10.0.0.2"));
+        watch.onEvent(added("slice-c", "10.0.0.3"));
+        assertEquals(1, subscriber.snapshots.size());
+
+        subscriber.subscription.request(5);
+        watch.onEvent(added("slice-d", "10.0.0.4"));
+
+        assertEquals(3, subscriber.snapshots.size());
+        assertEquals(List.of(
+                        new InetSocketAddress("10.0.0.1", 8080),
+                        new InetSocketAddress("10.0.0.2", 8080),
+                        new InetSocketAddress("10.0.0.3", 8080)),
+                addresses(subscriber.snapshots.get(1)).stream().sorted(CollectingSubscriber::compare).toList());
+        assertEquals(4, addresses(subscriber.snapshots.get(2)).size());
+    }
+
+    @DisplayName("should pass the latest snapshot to a late subscriber")
+    @Test
+    void lateSubscriberTest() {
+        publisher.start();
+        sync(added("slice-a", "10.0.0.1"));
+
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+
+        assertEquals(1, watches);
+        assertEquals(1, subscriber.snapshots.size());
+        assertEquals(List.of(new InetSocketAddress("10.0.0.1", 8080)), addresses(subscriber.snapshots.get(0)));
+    }
+
+    @DisplayName("should stop publishing to a cancelled subscriber")
+    @Test
+    void cancelTest() {
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"));
+
+        subscriber.subscription.cancel();
+        watch.onEvent(added("slice-b", "10.0.0.2"));
+
+        assertEquals(1, subscriber.snapshots.size());
+    }
+
+    @DisplayName("should reject non-positive requests")
+    @Test
+    void invalidRequestTest() {
+        var subscriber = new CollectingSubscriber(0);
+        publisher.subscribe(subscriber, Runnable::run);
+
+        assertInstanceOf(IllegalArgumentException.class, subscriber.error);
+    }
+
+    @DisplayName("should complete subscribers when closed")
+    @Test
+    void closeTest() {
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"));
+
+        publisher.close();
+        watch.onEvent(added("slice-b", "10.0.0.2"));
+        var lateSubscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(lateSubscriber, Runnable::run);
+
+        assertTrue(subscriber.completed);
+        assertEquals(1, subscriber.snapshots.size());
+        assertTrue(lateSubscriber.completed);
+        assertEquals(List.of(), lateSubscriber.snapshots);
+    }
+
+    @DisplayName("should read the latest snapshot with the resource versions of its EndpointSlices")
+    @Test
+    void currentTest() {
+        publisher.start();
+        assertNull(publisher.current());
+
+        sync(added("slice-a", "10.0.0.1", "100"), added("slice-b", "10.0.0.2", "101"));
+        var synced = publisher.current();
+        watch.onEvent(added("slice-b", "10.0.0.3", "102"));
+        var current = publisher.current();
+
+        assertEquals(Map.of("slice-a", "100", "slice-b", "101"), synced.resourceVersions());
+        assertEquals(Map.of("slice-a", "100", "slice-b", "102"), current.resourceVersions());
+        assertTrue(current.generation() > synced.generation());
+        assertSame(current, publisher.current());
+    }
+
+    @DisplayName("should return a snapshot newer than the given generation once published")
+    @Test
+    void awaitNewerThanTest() throws Exception {
+        publisher.start();
+        sync(added("slice-a", "10.0.0.1", "100"));
+        var synced = publisher.current();
+
+        var newer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return publisher.awaitNewerThan(synced.generation(), Duration.ofSeconds(10));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        watch.onEvent(added("slice-b", "10.0.0.2", "101"));
+
+        assertSame(publisher.current(), publisher.awaitNewerThan(-1, Duration.ZERO));
+        assertEquals(2, addresses(newer.get(10, TimeUnit.SECONDS)).size());
+        assertNull(publisher.awaitNewerThan(publisher.current().generation(), Duration.ofMillis(10)));
+    }
+
+    @DisplayName("should stop awaiting a newer snapshot when closed")
+    @Test
+    void awaitNewerThanCloseTest() throws Exception {
+        publisher.start();
+        sync(added("slice-a", "10.0.0.1", "100"));
+
+        var newer = CompletableFuture.supplyAsync(() -> {
+            try {
+                return publisher.awaitNewerThan(publisher.current().generation(), Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        publisher.close();
+
+        assertNull(newer.get(10, TimeUnit.SECONDS));
+    }
+
+    @DisplayName("should publish added addresses held back by the endpoint probe as a new generation")
+    @Test
+    void endpointProbeTest() throws Exception {
+        publisher = new EndpointSnapshotPublisher(Runnable::run, TARGET,
+                ResolverOptions.DEFAULT.withInitialSyncTimeout(null)
+                        .withEndpointProbe(EndpointProbeOptions.DEFAULT.withMaxDelay(Duration.ofMillis(100))),
+                new PropagationLatency(), (serviceName, decoder, subscriber) -> watch = subscriber);
+        publisher.start();
+        sync(added("slice-a", "127.0.0.1"));
+
+        watch.onEvent(added("slice-b", "127.0.0.2"));
+        var held = publisher.current();
+        var admitted = publisher.awaitNewerThan(held.generation(), Duration.ofSeconds(10));
+        publisher.close();
+
+        assertEquals(List.of(new InetSocketAddress("127.0.0.1", 8080)), addresses(held));
+        assertEquals(2, addresses(admitted).size());
+    }
+
+    @DisplayName("should abort the running watch and list again on relist without reporting a failure")
+    @Test
+    void relistTest() {
+        var ended = new ArrayList<Throwable>();
+        publisher.addListener(new EndpointSnapshotPublisher.Listener() {
+            @Override
+            public void onSnapshot(EndpointSnapshot snapshot) {
+            }
+
+            @Override
+            public void onWatchEnded(Throwable cause) {
+                ended.add(cause);
+            }
+        });
+        publisher.start();
+        sync(added("slice-a", "10.0.0.1"));
+        var stream = new CompletableFuture<Void>();
+        watch.onStreamOpened(() -> stream.complete(null));
+
+        publisher.relist();
+        assertTrue(stream.isDone());
+        watch.onError(new IOException("Stream closed"));
+
+        assertEquals(2, watches);
+        assertEquals(List.of(), ended);
+        assertEquals(1, publisher.reconnects());
+    }
+
+    @DisplayName("should expose the live state as an MBean while started")
+    @Test
+    void mbeanTest() throws Exception {
+        var server = ManagementFactory.getPlatformMBeanServer();
+        publisher.start();
+        sync(added("slice-a", "10.0.0.1", "100"));
+        var name = ResolverDiagnostics.objectName(publisher);
+
+        assertEquals("WATCHING", server.getAttribute(name, "State"));
+        assertEquals("my-namespace/my-service:grpc", server.getAttribute(name, "Target"));
+        assertEquals("100", server.getAttribute(name, "LastResourceVersion"));
+        assertArrayEquals(new String[]{"/10.0.0.1:8080"}, (String[]) server.getAttribute(name, "PublishedAddresses"));
+        var registry = new ObjectName(ResolverDiagnostics.DOMAIN + ":type=ResolverRegistry");
+        assertTrue(Arrays.asList((String[]) server.getAttribute(registry, "Publishers"))
+                .contains(name.getCanonicalName()));
+
+        server.invoke(name, "forceRelist", new Object[0], new String[0]);
+        watch.onCompleted();
+        assertEquals(2, watches);
+
+        publisher.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @DisplayName("should publish deleted EndpointSlices and slices without usable endpoints at once")
+    @Test
+    void removeSliceTest() {
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"), added("slice-b", "10.0.0.2"));
+
+        watch.onEvent(new Event(EventType.DELETED, new EndpointSlice(new Metadata("slice-b"), List.of(), List.of())));
+        assertEquals(2, subscriber.snapshots.size());
+        assertEquals(List.of(new InetSocketAddress("10.0.0.1", 8080)), addresses(subscriber.snapshots.get(1)));
+
+        // the last endpoint of a slice is removed along with its ports
+        watch.onEvent(new Event(EventType.MODIFIED, new EndpointSlice(new Metadata("slice-a"), List.of(), List.of())));
+        assertEquals(3, subscriber.snapshots.size());
+        assertEquals(List.of(), addresses(subscriber.snapshots.get(2)));
+        assertEquals(Map.of(), subscriber.snapshots.get(2).resourceVersions());
+    }
+
+    @DisplayName("should publish a target without EndpointSlices as empty once listed")
+    @Test
+    void publishEmptyTargetTest() {
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync();
+
+        assertEquals(1, subscriber.snapshots.size());
+        assertEquals(List.of(), subscriber.snapshots.get(0).addressGroups());
+    }
+
+    @DisplayName("should keep the last addresses for the grace period of an empty target")
+    @Test
+    void emptyGracePeriodTest() throws InterruptedException {
+        publisher = new EndpointSnapshotPublisher(Runnable::run, TARGET,
+                ResolverOptions.DEFAULT.withInitialSyncTimeout(null).withEmptyGracePeriod(Duration.ofMillis(200)),
+                new PropagationLatency(), (serviceName, decoder, subscriber) -> watch = subscriber);
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"));
+
+        // a transient empty state is not published
+        watch.onEvent(new Event(EventType.DELETED, new EndpointSlice(new Metadata("slice-a"), List.of(), List.of())));
+        watch.onEvent(added("slice-a", "10.0.0.2"));
+        assertEquals(2, subscriber.snapshots.size());
+        assertEquals(List.of(new InetSocketAddress("10.0.0.2", 8080)), addresses(subscriber.snapshots.get(1)));
+
+        watch.onEvent(new Event(EventType.DELETED, new EndpointSlice(new Metadata("slice-a"), List.of(), List.of())));
+        assertEquals(2, subscriber.snapshots.size());
+        var empty = publisher.awaitNewerThan(subscriber.snapshots.get(1).generation(), Duration.ofSeconds(5));
+        assertEquals(List.of(), empty.addressGroups());
+        // awaiting threads are woken up before the subscribers are called
+        for (int i = 0; i < 50 && subscriber.snapshots.size() < 3; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(3, subscriber.snapshots.size());
+        publisher.close();
+    }
+
+    @DisplayName("should publish an empty target at once if its grace period elapsed during a relist")
+    @Test
+    void emptyGracePeriodElapsedDuringRelistTest() throws InterruptedException {
+        publisher = new EndpointSnapshotPublisher(Runnable::run, TARGET,
+                ResolverOptions.DEFAULT.withInitialSyncTimeout(null).withEmptyGracePeriod(Duration.ofMillis(200)),
+                new PropagationLatency(), (serviceName, decoder, subscriber) -> watch = subscriber);
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"));
+        watch.onEvent(new Event(EventType.DELETED, new EndpointSlice(new Metadata("slice-a"), List.of(), List.of())));
+
+        watch.onSyncStarted();
+        Thread.sleep(500);
+        assertEquals(1, subscriber.snapshots.size());
+        watch.onSyncCompleted();
+
+        assertEquals(2, subscriber.snapshots.size());
+        assertEquals(List.of(), subscriber.snapshots.get(1).addressGroups());
+        publisher.close();
+    }
+
+    @DisplayName("should record the propagation latency of published changes only")
+    @Test
+    void propagationLatencyTest() {
+        var latency = new PropagationLatency();
+        publisher = new EndpointSnapshotPublisher(Runnable::run, TARGET,
+                ResolverOptions.DEFAULT.withInitialSyncTimeout(null).withEmptyGracePeriod(Duration.ofMinutes(1)),
+                latency, (serviceName, decoder, subscriber) -> watch = subscriber);
+        var subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Runnable::run);
+        sync(added("slice-a", "10.0.0.1"));
+
+        watch.onEvent(triggered(added("slice-b", "10.0.0.2")), timing());
+        assertEquals(1, latency.total().count());
+
+        // the addresses are unchanged
+        watch.onEvent(triggered(added("slice-b", "10.0.0.2")), timing());
+        assertEquals(1, latency.total().count());
+
+        watch.onEvent(triggered(new Event(EventType.MODIFIED,
+                new EndpointSlice(new Metadata("slice-a"), List.of(), List.of()))), timing());
+        assertEquals(2, latency.total().count());
+
+        // the empty state is held back for the grace period
+        var snapshots = subscriber.snapshots.size();
+        watch.onEvent(triggered(new Event(EventType.MODIFIED,
+                new EndpointSlice(new Metadata("slice-b"), List.of(), List.of()))), timing());
+        assertEquals(snapshots, subscriber.snapshots.size());
+        assertEquals(2, latency.total().count());
+        publisher.close();
+    }
+
+    private void sync(Event... events) {
+        watch.onSyncStarted();
+        for (var event : events) {
+            watch.onEvent(event);
+        }
+        watch.onSyncCompleted();
+    }
+
+    private static List<SocketAddress> addresses(EndpointSnapshot snapshot) {
+        return snapshot.addressGroups().stream().flatMap(List::stream).toList();
+    }
+
+    private static Event added(String name, String address) {
+        return added(name, address, null);
+    }
+
+    private static Event added(String name, String address, String resourceVersion) {
+        return new Event(EventType.ADDED, new EndpointSlice(
+                new Metadata(name, resourceVersion, Map.of()),
+                List.of(new Endpoint(List.of(address), new Conditions(true))),
+                List.of(new EndpointPort("grpc", 8080))));
+    }
+
+    private static Event triggered(Event event) {
+        var metadata = event.endpointSlice().metadata();
+        return new Event(event.type(), new EndpointSlice(
+                new Metadata(metadata.name(), metadata.resourceVersion(),
+                        Map.of(Metadata.LAST_CHANGE_TRIGGER_TIME_ANNOTATION, Instant.now().toString())),
+                event.endpointSlice().endpoints(), event.endpointSlice().ports()));
+    }
+
+    private static EventTiming timing() {
+        var now = System.nanoTime();
+        return new EventTiming(Instant.now(), now, now);
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<EndpointSnapshot> {
+
+        private final long initialRequest;
+        // written by the thread publishing after the grace period
+        private final List<EndpointSnapshot> snapshots = new CopyOnWriteArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(EndpointSnapshot item) {
+            snapshots.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        static int compare(SocketAddress a, SocketAddress b) {
+            return a.toString().compareTo(b.toString());
+        }
+    }
+}
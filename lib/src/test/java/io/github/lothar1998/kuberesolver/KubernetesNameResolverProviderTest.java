@@ -0,0 +1,268 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+import io.grpc.NameResolver;
+import io.grpc.Status;
+import io.grpc.SynchronizationContext;
+
+class KubernetesNameResolverProviderTest {
+
+    private static final URI TARGET = URI.create("kubernetes://my-namespace/my-service:8080");
+
+    private final AtomicInteger watches = new AtomicInteger();
+    private final AtomicInteger endedWatches = new AtomicInteger();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final CountDownLatch watchEnded = new CountDownLatch(1);
+    private final SynchronizationContext syncContext = new SynchronizationContext((thread, throwable) -> {
+        throw new AssertionError(throwable);
+    });
+    private volatile EndpointSliceWatcher.Subscriber watch;
+    private KubernetesNameResolverProvider provider;
+
+    @BeforeEach
+    void setup() {
+        provider = new KubernetesNameResolverProvider(ResolverOptions.DEFAULT, target -> (service, decoder, sub) -> {
+            watches.incrementAndGet();
+            watch = sub;
+            sub.onSyncStarted();
+            sub.onEvent(added("my-service-a", "10.0.0.1"));
+            sub.onSyncCompleted();
+            awaitClosed();
+            endedWatches.incrementAndGet();
+            watchEnded.countDown();
+        });
+    }
+
+    @AfterEach
+    void teardown() {
+        provider.close();
+        closed.countDown();
+    }
+
+    @DisplayName("should share the watch of a pre-warmed target with its resolvers")
+    @Test
+    void prewarmTest() throws Exception {
+        provider.prewarm(List.of(TARGET)).get(10, TimeUnit.SECONDS);
+
+        var first = new CollectingListener();
+        var second = new CollectingListener();
+        provider.newNameResolver(TARGET, args()).start(first);
+        provider.newNameResolver(TARGET, args()).start(second);
+
+        assertInstanceOf(SharedNameResolver.class, provider.newNameResolver(TARGET, args()));
+        assertEquals(1, watches.get());
+        assertEquals(List.of(List.of(new InetSocketAddress("10.0.0.1", 8080))), first.addresses);
+        assertEquals(first.addresses, second.addresses);
+    }
+
+    @DisplayName("should pass the populated snapshot before start() returns")
+    @Test
+    void snapshotBeforeStartReturnsTest() throws Exception {
+        provider.prewarm(List.of(TARGET)).get(10, TimeUnit.SECONDS);
+        var listener = new CollectingListener();
+
+        provider.newNameResolver(TARGET, args()).start(listener);
+
+        assertEquals(1, listener.addresses.size());
+        assertTrue(listener.inSyncContext);
+    }
+
+    @DisplayName("should call the listener on the channel's synchronization context")
+    @Test
+    void syncContextTest() throws Exception {
+        provider.prewarm(List.of(TARGET)).get(10, TimeUnit.SECONDS);
+        var listener = new CollectingListener();
+        var resolver = provider.newNameResolver(TARGET, args());
+
+        syncContext.execute(() -> {
+            resolver.start(listener);
+            // the snapshot is passed once the running task of the context completes
+            assertEquals(0, listener.addresses.size());
+        });
+        assertEquals(1, listener.addresses.size());
+
+        watch.onEvent(added("my-service-b", "10.0.0.2"));
+        listener.await(2);
+        assertEquals(2, listener.addresses.get(1).size());
+        assertTrue(listener.inSyncContext);
+
+        var other = new CollectingListener();
+        provider.newNameResolver(TARGET, args()).start(other);
+        resolver.shutdown();
+        watch.onEvent(added("my-service-c", "10.0.0.3"));
+        other.await(2);
+        assertEquals(2, listener.addresses.size());
+    }
+
+    @DisplayName("should shut down the watches of pre-warmed targets when closed")
+    @Test
+    void closeTest() throws Exception {
+        var completed = new CountDownLatch(1);
+        provider.publisher(TARGET).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(EndpointSnapshot item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+        var listener = new CollectingListener();
+        provider.newNameResolver(TARGET, args()).start(listener);
+
+        provider.close();
+        provider.close();
+
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        assertTrue(watchEnded.await(10, TimeUnit.SECONDS));
+        assertEquals(1, listener.addresses.size());
+        assertThrows(IllegalStateException.class, () -> provider.prewarm(List.of(TARGET)));
+        assertThrows(IllegalStateException.class, () -> provider.publisher(TARGET));
+        assertInstanceOf(KubernetesNameResolver.class, provider.newNameResolver(TARGET, args()));
+    }
+
+    @DisplayName("should shut down the watches of targets pre-warmed while the provider is closed")
+    @Test
+    void closeWhilePrewarmingTest() throws Exception {
+        var executor = Executors.newFixedThreadPool(4);
+        var publishers = new AtomicInteger();
+        try {
+            var prewarming = new ArrayList<Future<?>>();
+            for (int i = 0; i < 4; i++) {
+                var thread = i;
+                prewarming.add(executor.submit(() -> {
+                    for (int j = 0; ; j++) {
+                        var target = URI.create("kubernetes://my-namespace/my-service-" + thread + "-" + j + ":8080");
+                        try {
+                            assertNotNull(provider.publisher(target));
+                        } catch (IllegalStateException e) {
+                            return;
+                        }
+                        publishers.incrementAndGet();
+                    }
+                }));
+            }
+            while (publishers.get() < 100) {
+                Thread.sleep(1);
+            }
+
+            provider.close();
+
+            // neither a publisher nor a watch is left behind by a concurrent pre-warm
+            for (var future : prewarming) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+            for (int i = 0; i < 100 && endedWatches.get() < watches.get(); i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(watches.get(), endedWatches.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private NameResolver.Args args() {
+        return NameResolver.Args.newBuilder()
+                .setDefaultPort(443)
+                .setProxyDetector(address -> null)
+                .setSynchronizationContext(syncContext)
+                .setServiceConfigParser(new NameResolver.ServiceConfigParser() {
+                    @Override
+                    public NameResolver.ConfigOrError parseServiceConfig(Map<String, ?> rawServiceConfig) {
+                        return NameResolver.ConfigOrError.fromConfig(rawServiceConfig);
+                    }
+                })
+                .build();
+    }
+
+    private void awaitClosed() {
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Event added(String name, String address) {
+        return new Event(EventType.ADDED, new EndpointSlice(
+                new Metadata(name, null, Map.of()),
+                List.of(new Endpoint(List.of(address), new Conditions(true))),
+                List.of(new EndpointPort("grpc", 8080))));
+    }
+
+    private final class CollectingListener extends NameResolver.Listener2 {
+
+        private final List<List<SocketAddress>> addresses = new CopyOnWriteArrayList<>();
+        private volatile boolean inSyncContext = true;
+
+        @Override
+        public void onResult(NameResolver.ResolutionResult resolutionResult) {
+            checkSyncContext();
+            addresses.add(resolutionResult.getAddresses().stream()
+                    .flatMap(group -> group.getAddresses().stream())
+                    .toList());
+        }
+
+        @Override
+        public void onError(Status error) {
+            checkSyncContext();
+        }
+
+        void await(int count) throws InterruptedException {
+            for (int i = 0; i < 100 && addresses.size() < count; i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(count, addresses.size());
+        }
+
+        private void checkSyncContext() {
+            try {
+                syncContext.throwIfNotInThisSynchronizationContext();
+            } catch (IllegalStateException e) {
+                inSyncContext = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @DisplayName("should report percentiles with the precision of a factor of two")
+    @Test
+    void percentileTest() {
+        var histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(Duration.ofMillis(3).toNanos());
+        }
+        histogram.record(Duration.ofMillis(100).toNanos());
+
+        assertEquals(100, histogram.count());
+        assertEquals(Duration.ofNanos(4_096_000), histogram.percentile(50));
+        assertEquals(Duration.ofNanos(4_096_000), histogram.percentile(99));
+        assertEquals(Duration.ofMillis(100), histogram.percentile(100));
+        assertEquals(Duration.ofMillis(100), histogram.max());
+        assertEquals(Duration.ofNanos(3_970_000), histogram.mean());
+    }
+
+    @DisplayName("should count negative latencies caused by clock skew as zero")
+    @Test
+    void negativeLatencyTest() {
+        var histogram = new LatencyHistogram();
+        histogram.record(-Duration.ofSeconds(1).toNanos());
+
+        assertEquals(1, histogram.count());
+        assertEquals(Duration.ZERO, histogram.percentile(50));
+        assertEquals(Duration.ZERO, histogram.mean());
+    }
+
+    @DisplayName("should report zero latencies when nothing was recorded")
+    @Test
+    void emptyHistogramTest() {
+        var histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.count());
+        assertEquals(Duration.ZERO, histogram.percentile(99));
+        assertEquals(Duration.ZERO, histogram.mean());
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101));
+    }
+}
@@ -31,6 +31,13 @@ public class ResolverTargetTest {
                 assertThrows(IllegalArgumentException.class, () -> ResolverTarget.parse(uri));
         }
 
+        @Test
+        void parseUnknownAddressFamilyTest() throws URISyntaxException {
+                var uri = new URI("kubernetes:///service-name:8080?addressFamily=ipv5");
+
+                assertThrows(IllegalArgumentException.class, () -> ResolverTarget.parse(uri));
+        }
+
         private static Stream<Arguments> testCases() {
                 return Stream.of(
                                 Arguments.of("kubernetes:///service-name:8080",
@@ -56,6 +63,14 @@ public class ResolverTargetTest {
                                 Arguments.of("kubernetes://service-name.namespace.svc.cluster_name",
                                                 new ResolverTarget("namespace", "service-name", null)),
                                 Arguments.of("kubernetes://service-name.namespace.svc.cluster_name:8080",
+                                                new ResolverTarget("namespace", "service-name", "8080")),
+                                Arguments.of("kubernetes:///service-name:grpc?addressFamily=prefer-ipv6",
+                                                new ResolverTarget(null, "service-name", "grpc",
+                                                                AddressFamilyPolicy.PREFER_IPV6)),
+                                Arguments.of("kubernetes://namespace/service-name?addressFamily=IPv4-only",
+                                                new ResolverTarget("namespace", "service-name", null,
+                                                                AddressFamilyPolicy.IPV4_ONLY)),
+                                Arguments.of("kubernetes://service-name.namespace:8080/?foo=bar",
                                                 new ResolverTarget("namespace", "service-name", "8080")));
         }
 }
@@ -0,0 +1,227 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Attributes;
+import io.grpc.ConnectivityState;
+import io.grpc.ConnectivityStateInfo;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer;
+import io.grpc.SynchronizationContext;
+
+class SlowStartLoadBalancerTest {
+
+    private static final int PICKS = 200_000;
+
+    private static final SocketAddress ADDRESS_1 = new InetSocketAddress("10.0.0.1", 8080);
+    private static final SocketAddress ADDRESS_2 = new InetSocketAddress("10.0.0.2", 8080);
+    private static final SocketAddress ADDRESS_3 = new InetSocketAddress("10.0.0.3", 8080);
+
+    private final FakeHelper helper = new FakeHelper();
+    private final SlowStartLoadBalancer loadBalancer = new SlowStartLoadBalancer(helper);
+
+    @AfterEach
+    void teardown() {
+        helper.syncContext.execute(loadBalancer::shutdown);
+        helper.timer.shutdownNow();
+    }
+
+    @DisplayName("should shut down the subchannels of removed address groups")
+    @Test
+    void removeSubchannelTest() {
+        accept(group(ADDRESS_1), group(ADDRESS_2));
+        helper.subchannels.forEach(subchannel -> subchannel.setState(ConnectivityState.READY));
+
+        accept(group(ADDRESS_2));
+
+        var removed = helper.subchannel(ADDRESS_1);
+        assertTrue(removed.shutdown);
+        assertFalse(helper.subchannel(ADDRESS_2).shutdown);
+        assertEquals(Map.of(ADDRESS_2, PICKS), picks(helper.picker()));
+
+        // the state of a removed subchannel is ignored
+        var updates = helper.pickers.size();
+        removed.setState(ConnectivityState.TRANSIENT_FAILURE);
+        assertEquals(updates, helper.pickers.size());
+    }
+
+    @DisplayName("should pick endpoints in proportion to their weights")
+    @Test
+    void weightedPicksTest() {
+        var now = Instant.now();
+        var window = Duration.ofHours(1);
+        accept(group(ADDRESS_1),
+                group(ADDRESS_2, new SlowStartRamp(now, window)),
+                group(ADDRESS_3, new SlowStartRamp(now.minus(window.dividedBy(2)), window)));
+        helper.subchannels.forEach(subchannel -> subchannel.setState(ConnectivityState.READY));
+
+        // weights 1, 0.1 and 0.55 are located by the binary search of their cumulative weights
+        var picks = picks(helper.picker());
+        assertEquals(1 / 1.65, (double) picks.get(ADDRESS_1) / PICKS, 0.01);
+        assertEquals(0.1 / 1.65, (double) picks.get(ADDRESS_2) / PICKS, 0.01);
+        assertEquals(0.55 / 1.65, (double) picks.get(ADDRESS_3) / PICKS, 0.01);
+    }
+
+    @DisplayName("should give an endpoint starting its ramp a tenth of the share of a warm one")
+    @Test
+    void minimumWeightPicksTest() {
+        accept(group(ADDRESS_1), group(ADDRESS_2, new SlowStartRamp(Instant.now(), Duration.ofHours(1))));
+        helper.subchannels.forEach(subchannel -> subchannel.setState(ConnectivityState.READY));
+
+        var picks = picks(helper.picker());
+        assertEquals(1 / 1.1, (double) picks.get(ADDRESS_1) / PICKS, 0.01);
+        assertEquals(0.1 / 1.1, (double) picks.get(ADDRESS_2) / PICKS, 0.01);
+    }
+
+    @DisplayName("should rebuild the picker while endpoints are ramping")
+    @Test
+    void rebuildPickerTest() throws InterruptedException {
+        accept(group(ADDRESS_1), group(ADDRESS_2, new SlowStartRamp(Instant.now(), Duration.ofSeconds(2))));
+        helper.subchannels.forEach(subchannel -> subchannel.setState(ConnectivityState.READY));
+        var picker = helper.picker();
+
+        for (int i = 0; i < 50 && helper.picker() == picker; i++) {
+            Thread.sleep(100);
+        }
+        assertNotSame(picker, helper.picker());
+        assertEquals(ConnectivityState.READY, helper.states.get(helper.states.size() - 1));
+
+        // once the ramp completes the picker is not rebuilt anymore
+        Thread.sleep(3000);
+        var updates = helper.pickers.size();
+        Thread.sleep(1500);
+        assertEquals(updates, helper.pickers.size());
+    }
+
+    private void accept(EquivalentAddressGroup... groups) {
+        helper.syncContext.execute(() -> loadBalancer.acceptResolvedAddresses(
+                LoadBalancer.ResolvedAddresses.newBuilder().setAddresses(List.of(groups)).build()));
+    }
+
+    private static EquivalentAddressGroup group(SocketAddress address) {
+        return new EquivalentAddressGroup(List.of(address));
+    }
+
+    private static EquivalentAddressGroup group(SocketAddress address, SlowStartRamp ramp) {
+        return new EquivalentAddressGroup(List.of(address),
+                Attributes.newBuilder().set(KubernetesNameResolver.ATTR_SLOW_START_RAMP, ramp).build());
+    }
+
+    private static Map<SocketAddress, Integer> picks(LoadBalancer.SubchannelPicker picker) {
+        var picks = new HashMap<SocketAddress, Integer>();
+        for (int i = 0; i < PICKS; i++) {
+            var subchannel = picker.pickSubchannel(null).getSubchannel();
+            picks.merge(subchannel.getAddresses().getAddresses().get(0), 1, Integer::sum);
+        }
+        return picks;
+    }
+
+    private static final class FakeHelper extends LoadBalancer.Helper {
+
+        private final SynchronizationContext syncContext = new SynchronizationContext((thread, throwable) -> {
+            throw new AssertionError(throwable);
+        });
+        private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        private final List<FakeSubchannel> subchannels = new CopyOnWriteArrayList<>();
+        private final List<ConnectivityState> states = new CopyOnWriteArrayList<>();
+        private final List<LoadBalancer.SubchannelPicker> pickers = new CopyOnWriteArrayList<>();
+
+        @Override
+        public LoadBalancer.Subchannel createSubchannel(LoadBalancer.CreateSubchannelArgs args) {
+            var subchannel = new FakeSubchannel(syncContext, args.getAddresses());
+            subchannels.add(subchannel);
+            return subchannel;
+        }
+
+        @Override
+        public void updateBalancingState(ConnectivityState newState, LoadBalancer.SubchannelPicker newPicker) {
+            states.add(newState);
+            pickers.add(newPicker);
+        }
+
+        @Override
+        public SynchronizationContext getSynchronizationContext() {
+            return syncContext;
+        }
+
+        @Override
+        public ScheduledExecutorService getScheduledExecutorService() {
+            return timer;
+        }
+
+        @Override
+        public String getAuthority() {
+            return "my-service";
+        }
+
+        LoadBalancer.SubchannelPicker picker() {
+            return pickers.get(pickers.size() - 1);
+        }
+
+        FakeSubchannel subchannel(SocketAddress address) {
+            return subchannels.stream()
+                    .filter(subchannel -> subchannel.getAddresses().getAddresses().contains(address))
+                    .findFirst()
+                    .orElseThrow();
+        }
+    }
+
+    private static final class FakeSubchannel extends LoadBalancer.Subchannel {
+
+        private final SynchronizationContext syncContext;
+        private final List<EquivalentAddressGroup> addresses;
+        private LoadBalancer.SubchannelStateListener listener;
+        private volatile boolean shutdown;
+
+        FakeSubchannel(SynchronizationContext syncContext, List<EquivalentAddressGroup> addresses) {
+            this.syncContext = syncContext;
+            this.addresses = addresses;
+        }
+
+        void setState(ConnectivityState state) {
+            syncContext.execute(() -> listener.onSubchannelState(ConnectivityStateInfo.forNonError(state)));
+        }
+
+        @Override
+        public void start(LoadBalancer.SubchannelStateListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public void requestConnection() {
+        }
+
+        @Override
+        public List<EquivalentAddressGroup> getAllAddresses() {
+            return addresses;
+        }
+
+        @Override
+        public Attributes getAttributes() {
+            return Attributes.EMPTY;
+        }
+    }
+}
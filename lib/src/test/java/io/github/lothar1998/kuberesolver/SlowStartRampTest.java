@@ -0,0 +1,47 @@
+package io.github.lothar1998.kuberesolver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class SlowStartRampTest {
+
+    private static final Instant ADDED_AT = Instant.parse("2025-01-01T00:00:00Z");
+    private static final SlowStartRamp RAMP = new SlowStartRamp(ADDED_AT, Duration.ofSeconds(60));
+
+    @DisplayName("should ramp the weight linearly from the minimum weight over the window")
+    @Test
+    void weightTest() {
+        assertEquals(SlowStartRamp.MIN_WEIGHT, RAMP.weight(ADDED_AT), 1e-9);
+        assertEquals(0.55, RAMP.weight(ADDED_AT.plusSeconds(30)), 1e-9);
+        assertEquals(1, RAMP.weight(ADDED_AT.plusSeconds(60)), 1e-9);
+        assertEquals(1, RAMP.weight(ADDED_AT.plusSeconds(3600)), 1e-9);
+    }
+
+    @DisplayName("should use the minimum weight before the endpoint was added")
+    @Test
+    void weightBeforeAddedTest() {
+        assertEquals(SlowStartRamp.MIN_WEIGHT, RAMP.weight(ADDED_AT.minusSeconds(1)), 1e-9);
+    }
+
+    @DisplayName("should complete the ramp once the window elapses")
+    @Test
+    void isCompleteTest() {
+        assertFalse(RAMP.isComplete(ADDED_AT.plusSeconds(59)));
+        assertTrue(RAMP.isComplete(ADDED_AT.plusSeconds(60)));
+    }
+
+    @DisplayName("should reject a non-positive window")
+    @Test
+    void invalidWindowTest() {
+        assertThrows(IllegalArgumentException.class, () -> new SlowStartRamp(ADDED_AT, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> new SlowStartRamp(ADDED_AT, Duration.ofSeconds(-1)));
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.lothar1998.kuberesolver.agent;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathTemplate;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.sun.net.httpserver.HttpServer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.lothar1998.kuberesolver.kubernetes.AgentEndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.EndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.InsecureEndpointSliceWatcher;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+
+@WireMockTest
+class ResolverAgentTest {
+
+    private static final String PATH_TEMPLATE = "/apis/discovery.k8s.io/v1/watch/namespaces/{namespace}/endpointslices";
+    private static final String LIST_PATH_TEMPLATE = "/apis/discovery.k8s.io/v1/namespaces/{namespace}/endpointslices";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @DisplayName("should relay watch events from the agent to the local client")
+    @Test
+    void relayEventsThroughAgentTest(WireMockRuntimeInfo wmRuntimeInfo) throws IOException {
+        var event1 = new Event(
+                EventType.ADDED,
+                new EndpointSlice(
+                        new Metadata("my-service-endpoint-slice"),
+                        List.of(new Endpoint(List.of("10.0.0.1"), new Conditions(true))),
+                        List.of(new EndpointPort("grpc", 8080))));
+
+        var event2 = new Event(
+                EventType.MODIFIED,
+                new EndpointSlice(
+                        new Metadata("my-service-endpoint-slice"),
+                        List.of(
+                                new Endpoint(List.of("10.0.0.1"), new Conditions(true)),
+                                new Endpoint(List.of("10.0.0.2"), new Conditions(false))),
+                        List.of(new EndpointPort("grpc", 8080))));
+
+        stubWatch(event1, event2);
+
+        var socketPath = socketPath();
+        try (var agent = new ResolverAgent(socketPath,
+                namespace -> new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), namespace))) {
+            agent.start();
+
+            var watcher = new AgentEndpointSliceWatcher(socketPath,
+                    new InsecureEndpointSliceWatcher("http://unused", "my-namespace"));
+            var subscriber = mock(EndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+            watcher.watch("my-service", subscriber);
+
+            var inOrder = inOrder(subscriber);
+            inOrder.verify(subscriber).onSyncStarted();
+            inOrder.verify(subscriber).onSyncCompleted();
+            inOrder.verify(subscriber).onEvent(event1);
+            inOrder.verify(subscriber).onEvent(event2);
+            inOrder.verify(subscriber).onCompleted();
+        }
+    }
+
+    @DisplayName("should fall back to direct watch when the agent is unavailable")
+    @Test
+    void fallbackToDirectWatchTest(WireMockRuntimeInfo wmRuntimeInfo) throws IOException {
+        var event = new Event(
+                EventType.ADDED,
+                new EndpointSlice(
+                        new Metadata("my-service-endpoint-slice"),
+                        List.of(new Endpoint(List.of("10.0.0.1"), new Conditions(true))),
+                        List.of(new EndpointPort("grpc", 8080))));
+
+        stubWatch(event);
+
+        var watcher = new AgentEndpointSliceWatcher(socketPath(),
+                new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace"));
+        var subscriber = mock(EndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+        watcher.watch("my-service", subscriber);
+
+        var inOrder = inOrder(subscriber);
+        inOrder.verify(subscriber).onEvent(event);
+        inOrder.verify(subscriber).onCompleted();
+        verify(1, getRequestedFor(urlPathTemplate(PATH_TEMPLATE)));
+    }
+
+    @DisplayName("should send the snapshot of a service with more slices than the pending frame limit")
+    @Test
+    void largeSnapshotTest() throws Exception {
+        var sliceCount = 2000;
+        // slices large enough for the snapshot not to fit into the socket buffer of a client which does not read
+        var items = IntStream.range(0, sliceCount)
+                .mapToObj(i -> String.format("{\"metadata\":{\"name\":\"slice-%d\"},\"endpoints\":[%s],"
+                        + "\"ports\":[{\"name\":\"grpc\",\"port\":8080}]}", i, IntStream.range(0, 10)
+                        .mapToObj(j -> String.format("{\"addresses\":[\"10.%d.%d.%d\"],"
+                                + "\"conditions\":{\"ready\":true}}", j, i / 256, i % 256))
+                        .collect(Collectors.joining(","))))
+                .collect(Collectors.joining(","));
+        var list = "{\"metadata\":{\"resourceVersion\":\"1\"},\"items\":[" + items + "]}";
+
+        var watchEnded = new CountDownLatch(1);
+        var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext(LIST_PATH_TEMPLATE.replace("{namespace}", "my-namespace"), exchange -> {
+            var body = list.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (var responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        });
+        server.createContext(PATH_TEMPLATE.replace("{namespace}", "my-namespace"), exchange -> {
+            // the watch stays open without events until the test ends it
+            exchange.sendResponseHeaders(200, 0);
+            try (var ignored = exchange.getResponseBody()) {
+                watchEnded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+
+        var socketPath = socketPath();
+        var host = "http://localhost:" + server.getAddress().getPort();
+        try (var agent = new ResolverAgent(socketPath, namespace -> new InsecureEndpointSliceWatcher(host, namespace));
+             var slowClient = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            agent.start();
+
+            // subscribed before the list completes
+            var listingClient = new SnapshotSubscriber();
+            var watcher = new AgentEndpointSliceWatcher(socketPath,
+                    new InsecureEndpointSliceWatcher("http://unused", "my-namespace"));
+            var listingThread = new Thread(() -> watcher.watch("my-service", listingClient));
+            listingThread.setDaemon(true);
+            listingThread.start();
+            assertTrue(listingClient.synced.await(30, TimeUnit.SECONDS));
+
+            // subscribed after the list completed, reading only once the whole snapshot is queued
+            slowClient.connect(UnixDomainSocketAddress.of(socketPath));
+            slowClient.write(ByteBuffer.wrap("my-namespace/my-service\n".getBytes(StandardCharsets.UTF_8)));
+            Thread.sleep(1000);
+            var reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(slowClient), StandardCharsets.UTF_8));
+            var added = 0;
+            String line;
+            while ((line = reader.readLine()) != null && !line.contains("\"BOOKMARK\"")) {
+                added++;
+            }
+
+            watchEnded.countDown();
+            listingThread.join(30_000);
+
+            assertEquals(sliceCount, listingClient.eventsAtSync);
+            assertTrue(listingClient.completed);
+            assertEquals(sliceCount, added);
+            assertNotNull(line);
+        } finally {
+            watchEnded.countDown();
+            server.stop(0);
+        }
+    }
+
+    private static void stubWatch(Event... events) {
+        var chunkedBody = Stream.of(events)
+                .map(event -> {
+                    try {
+                        return OBJECT_MAPPER.writeValueAsString(event);
+                    } catch (JsonProcessingException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .collect(Collectors.joining("\n"));
+
+        stubFor(
+                get(urlPathTemplate(LIST_PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"))
+                        .willReturn(ok("{\"metadata\":{\"resourceVersion\":\"1\"},\"items\":[]}")));
+        stubFor(
+                get(urlPathTemplate(PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"))
+                        .willReturn(ok(chunkedBody)
+                                .withHeader("Content-Type", "application/json")
+                                .withChunkedDribbleDelay(3, 1)));
+    }
+
+    private static Path socketPath() throws IOException {
+        return Files.createTempDirectory("kuberesolver").resolve("agent.sock");
+    }
+
+    private static final class SnapshotSubscriber implements EndpointSliceWatcher.Subscriber {
+
+        private final CountDownLatch synced = new CountDownLatch(1);
+        private final AtomicInteger events = new AtomicInteger();
+        private volatile int eventsAtSync = -1;
+        private volatile boolean completed;
+
+        @Override
+        public void onEvent(Event event) {
+            events.incrementAndGet();
+        }
+
+        @Override
+        public void onSyncCompleted() {
+            eventsAtSync = events.get();
+            synced.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+}
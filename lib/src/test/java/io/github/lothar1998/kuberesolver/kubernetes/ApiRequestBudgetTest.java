@@ -0,0 +1,160 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ApiRequestBudgetTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    // 2 requests per second in bursts of 3
+    private final ApiRequestBudget budget = new ApiRequestBudget(2, 3, scheduler::now, scheduler);
+
+    @DisplayName("should grant a burst at once and the following requests at the refill rate")
+    @Test
+    void rateTest() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(budget.acquireAsync(false).isDone());
+        }
+        var fourth = budget.acquireAsync(false);
+        var fifth = budget.acquireAsync(false);
+        assertFalse(fourth.isDone());
+
+        scheduler.advance(SECOND / 2);
+        assertTrue(fourth.isDone());
+        assertFalse(fifth.isDone());
+
+        scheduler.advance(SECOND / 2);
+        assertTrue(fifth.isDone());
+    }
+
+    @DisplayName("should grant waiting requests of unresolved targets first")
+    @Test
+    void priorityTest() {
+        for (int i = 0; i < 3; i++) {
+            budget.acquireAsync(false);
+        }
+        var queued = budget.acquireAsync(false);
+        var prioritized = budget.acquireAsync(true);
+
+        scheduler.advance(SECOND / 2);
+        assertTrue(prioritized.isDone());
+        assertFalse(queued.isDone());
+
+        scheduler.advance(SECOND / 2);
+        assertTrue(queued.isDone());
+    }
+
+    @DisplayName("should pause all requests and resume them at the refill rate rather than as a burst")
+    @Test
+    void pauseTest() {
+        budget.pause(Duration.ofSeconds(5));
+        var first = budget.acquireAsync(true);
+        var second = budget.acquireAsync(false);
+
+        scheduler.advance(5 * SECOND - 1);
+        assertFalse(first.isDone());
+
+        scheduler.advance(SECOND / 2 + 1);
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        scheduler.advance(SECOND / 2);
+        assertTrue(second.isDone());
+    }
+
+    @DisplayName("should not shorten a pause in effect and cap the pause")
+    @Test
+    void pauseBoundsTest() {
+        budget.pause(Duration.ofSeconds(10));
+        budget.pause(Duration.ofSeconds(1));
+        var request = budget.acquireAsync(false);
+
+        scheduler.advance(9 * SECOND);
+        assertFalse(request.isDone());
+
+        budget.pause(Duration.ofHours(1));
+        scheduler.advance(ApiRequestBudget.MAX_PAUSE.toNanos() + SECOND / 2);
+        assertTrue(request.isDone());
+    }
+
+    @DisplayName("should return the token of a cancelled request")
+    @Test
+    void cancelTest() {
+        for (int i = 0; i < 3; i++) {
+            budget.acquireAsync(false);
+        }
+        var cancelled = budget.acquireAsync(false);
+        var next = budget.acquireAsync(false);
+        cancelled.cancel(false);
+
+        scheduler.advance(SECOND / 2);
+        assertTrue(next.isDone());
+    }
+
+    @DisplayName("should parse Retry-After header in seconds or as an HTTP date")
+    @Test
+    void parseRetryAfterTest() {
+        var now = Instant.parse("2025-01-01T00:00:00Z");
+
+        assertEquals(Duration.ofSeconds(3), ApiRequestBudget.parseRetryAfter(" 3 ", now));
+        assertEquals(Duration.ofSeconds(30),
+                ApiRequestBudget.parseRetryAfter("Wed, 1 Jan 2025 00:00:30 GMT", now));
+        assertEquals(Duration.ZERO, ApiRequestBudget.parseRetryAfter("Tue, 31 Dec 2024 23:00:00 GMT", now));
+        assertNull(ApiRequestBudget.parseRetryAfter("soon", now));
+    }
+
+    @DisplayName("should reject invalid rates")
+    @Test
+    void invalidRateTest() {
+        assertThrows(IllegalArgumentException.class, () -> budget.setRate(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> budget.setRate(Double.NaN, 1));
+        assertThrows(IllegalArgumentException.class, () -> budget.setRate(1, 0));
+    }
+
+    /**
+     * A clock advanced by the test, running the tasks scheduled until the current time.
+     */
+    private static final class FakeScheduler implements ObjLongConsumer<Runnable> {
+
+        private final List<Task> tasks = new ArrayList<>();
+        private long now = 0;
+
+        long now() {
+            return now;
+        }
+
+        @Override
+        public void accept(Runnable task, long delayNanos) {
+            tasks.add(new Task(task, now + delayNanos));
+        }
+
+        void advance(long nanos) {
+            now += nanos;
+            while (true) {
+                var due = tasks.stream().filter(task -> task.at() <= now).findFirst();
+                if (due.isEmpty()) {
+                    return;
+                }
+                tasks.remove(due.get());
+                due.get().runnable().run();
+            }
+        }
+
+        private record Task(Runnable runnable, long at) {
+        }
+    }
+}
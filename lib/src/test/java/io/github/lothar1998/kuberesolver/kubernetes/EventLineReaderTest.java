@@ -0,0 +1,128 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class EventLineReaderTest {
+
+    @DisplayName("should read lines terminated by LF or CRLF and an unterminated last line")
+    @Test
+    void readLinesTest() throws IOException {
+        var reader = reader("first\nsecond\r\n\nlast", 100);
+
+        assertEquals(List.of("first", "second", "", "last"), readAll(reader));
+    }
+
+    @DisplayName("should read lines split across reads of the stream and longer than the initial buffer")
+    @Test
+    void readChunkedLinesTest() throws IOException {
+        var longLine = "x".repeat(EventLineReader.INITIAL_CAPACITY * 3);
+        var content = "short\n" + longLine + "\nend\n";
+        var reader = new EventLineReader(new ChunkedInputStream(content.getBytes(StandardCharsets.UTF_8), 7),
+                longLine.length());
+
+        assertEquals(List.of("short", longLine, "end"), readAll(reader));
+    }
+
+    @DisplayName("should reject a line longer than the limit")
+    @Test
+    void rejectLongLineTest() throws IOException {
+        var reader = reader("ok\n" + "x".repeat(11) + "\nnext\n", 10);
+
+        assertTrue(reader.nextLine());
+        var exception = assertThrows(EndpointSliceWatcher.EventTooLargeException.class, reader::nextLine);
+        assertEquals(10, exception.getLimitBytes());
+    }
+
+    @DisplayName("should reject a long line without buffering the rest of it")
+    @Test
+    void rejectLongLineEarlyTest() {
+        var stream = new ChunkedInputStream(new byte[1024 * 1024], 4096);
+        var reader = new EventLineReader(stream, 16 * 1024);
+
+        assertThrows(EndpointSliceWatcher.EventTooLargeException.class, reader::nextLine);
+        assertTrue(stream.position <= 16 * 1024 + 2 + 4096);
+    }
+
+    @DisplayName("should accept lines of exactly the limit with either line terminator")
+    @Test
+    void lineOfLimitTest() throws IOException {
+        var line = "x".repeat(10);
+        var reader = reader(line + "\n" + line + "\r\n" + line, 10);
+
+        assertEquals(List.of(line, line, line), readAll(reader));
+    }
+
+    @DisplayName("should shrink the buffer after a long line")
+    @Test
+    void shrinkBufferTest() throws IOException {
+        var longLine = "x".repeat(EventLineReader.RETAINED_CAPACITY * 2);
+        var reader = reader(longLine + "\nshort\n", longLine.length());
+
+        assertTrue(reader.nextLine());
+        assertTrue(reader.buffer().length > EventLineReader.RETAINED_CAPACITY);
+        assertTrue(reader.nextLine());
+        assertEquals(EventLineReader.INITIAL_CAPACITY, reader.buffer().length);
+        assertEquals("short", line(reader));
+        assertFalse(reader.nextLine());
+    }
+
+    private static EventLineReader reader(String content, int maxLineBytes) {
+        return new EventLineReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), maxLineBytes);
+    }
+
+    private static List<String> readAll(EventLineReader reader) throws IOException {
+        var lines = new ArrayList<String>();
+        while (reader.nextLine()) {
+            lines.add(line(reader));
+        }
+        return lines;
+    }
+
+    private static String line(EventLineReader reader) {
+        return new String(reader.buffer(), reader.lineStart(), reader.lineLength(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns at most a fixed number of bytes per read, like a network stream.
+     */
+    private static final class ChunkedInputStream extends InputStream {
+
+        private final byte[] content;
+        private final int chunkSize;
+        private int position = 0;
+
+        ChunkedInputStream(byte[] content, int chunkSize) {
+            this.content = content;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            return position < content.length ? content[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= content.length) {
+                return -1;
+            }
+            var read = Math.min(Math.min(length, chunkSize), content.length - position);
+            System.arraycopy(content, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.lothar1998.kuberesolver.kubernetes.model.AddressType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+import io.github.lothar1998.kuberesolver.kubernetes.model.TargetRef;
+
+class FilteringEventDecoderTest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TargetRef POD_1 = new TargetRef("Pod", "pod-1", "1");
+
+    private static final String EVENT = """
+            {"type":"MODIFIED","object":{"kind":"EndpointSlice","apiVersion":"discovery.k8s.io/v1",
+            "metadata":{"name":"my-service-abc","namespace":"default","labels":{"kubernetes.io/service-name":"my-service"},
+            "annotations":{"endpoints.kubernetes.io/last-change-trigger-time":"2025-01-02T03:04:05.678Z","owner":"team"}},
+            "addressType":"IPv4",
+            "endpoints":[
+              {"addresses":["10.0.0.1"],"conditions":{"ready":true,"serving":true,"terminating":false},
+               "hostname":"pod-1","targetRef":{"kind":"Pod","namespace":"default","name":"pod-1","uid":"1"},"nodeName":"node-1",
+               "zone":"a","deprecatedTopology":{"kubernetes.io/hostname":"node-1"}},
+              {"addresses":["10.0.0.2"],"conditions":{"ready":false,"serving":false,"terminating":true}},
+              {"addresses":["10.0.0.3"],"conditions":{}},
+              {"addresses":["10.0.0.4","10.0.1.4"],"conditions":{"ready":true}}
+            ],
+            "ports":[{"name":"http","port":8080,"protocol":"TCP"},{"name":"grpc","port":9090,"protocol":"TCP"}]}}
+            """;
+
+    @DisplayName("should skip endpoints which are not ready and keep the first port when no port is provided")
+    @Test
+    void decodeWithoutPortTest() throws IOException {
+        var event = decode(new FilteringEventDecoder(null, true), EVENT);
+
+        assertEquals(new Event(EventType.MODIFIED, new EndpointSlice(
+                new Metadata("my-service-abc",
+                        Map.of(Metadata.LAST_CHANGE_TRIGGER_TIME_ANNOTATION, "2025-01-02T03:04:05.678Z")),
+                List.of(
+                        new Endpoint(List.of("10.0.0.1"), new Conditions(true), POD_1),
+                        new Endpoint(List.of("10.0.0.3"), new Conditions(null)),
+                        new Endpoint(List.of("10.0.0.4", "10.0.1.4"), new Conditions(true))),
+                List.of(new EndpointPort("http", 8080)),
+                AddressType.IPV4)), event);
+    }
+
+    @DisplayName("should keep only the last change trigger time annotation")
+    @Test
+    void decodeLastChangeTriggerTimeTest() throws IOException {
+        var event = decode(new FilteringEventDecoder(null, true), EVENT);
+
+        assertEquals(Instant.parse("2025-01-02T03:04:05.678Z"),
+                event.endpointSlice().metadata().lastChangeTriggerTime());
+        assertEquals(Set.of(Metadata.LAST_CHANGE_TRIGGER_TIME_ANNOTATION),
+                event.endpointSlice().metadata().annotations().keySet());
+    }
+
+    @DisplayName("should keep only ports with the target port name")
+    @Test
+    void decodeWithPortNameTest() throws IOException {
+        var event = decode(new FilteringEventDecoder("grpc", true), EVENT);
+
+        assertEquals(List.of(new EndpointPort("grpc", 9090)), event.endpointSlice().ports());
+    }
+
+    @DisplayName("should skip all ports when numerical port is provided")
+    @Test
+    void decodeWithPortNumberTest() throws IOException {
+        var event = decode(new FilteringEventDecoder("8080", true), EVENT);
+
+        assertEquals(List.of(), event.endpointSlice().ports());
+    }
+
+    @DisplayName("should keep endpoints without conditions as their readiness is unknown")
+    @Test
+    void decodeEndpointWithoutConditionsTest() throws IOException {
+        var line = """
+                {"type":"ADDED","object":{"metadata":{"name":"my-service-abc"},
+                "endpoints":[{"addresses":["10.0.0.1"]},{"addresses":["10.0.0.2"],"conditions":{"ready":null}}],
+                "ports":[{"name":"grpc","port":9090}]}}
+                """;
+
+        var event = decode(new FilteringEventDecoder(null, true), line);
+
+        assertEquals(List.of(
+                        new Endpoint(List.of("10.0.0.1"), new Conditions(null)),
+                        new Endpoint(List.of("10.0.0.2"), new Conditions(null))),
+                event.endpointSlice().endpoints());
+    }
+
+    @DisplayName("should keep all endpoints when readiness is not required")
+    @Test
+    void decodeAllEndpointsTest() throws IOException {
+        var event = decode(new FilteringEventDecoder(null, false), EVENT);
+
+        assertEquals(List.of(
+                        new Endpoint(List.of("10.0.0.1"), new Conditions(true), POD_1),
+                        new Endpoint(List.of("10.0.0.2"), new Conditions(false)),
+                        new Endpoint(List.of("10.0.0.3"), new Conditions(null)),
+                        new Endpoint(List.of("10.0.0.4", "10.0.1.4"), new Conditions(true))),
+                event.endpointSlice().endpoints());
+    }
+
+    @DisplayName("should decode the same event as the full decoder when nothing is filtered")
+    @Test
+    void decodeSameAsFullDecoderTest() throws IOException {
+        var line = """
+                {"type":"DELETED","object":{"metadata":{"name":"my-service-abc"},"addressType":"IPv6",
+                "endpoints":[{"addresses":["fd00::1"],"conditions":{"ready":true},
+                "targetRef":{"kind":"Pod","name":"pod-1","uid":"1"}}],
+                "ports":[{"name":"grpc","port":9090}]}}
+                """;
+
+        assertEquals(decode(EventDecoder.FULL, line), decode(new FilteringEventDecoder("grpc", true), line));
+    }
+
+    @DisplayName("should decode unknown address types")
+    @Test
+    void decodeUnknownAddressTypeTest() throws IOException {
+        var line = "{\"type\":\"ADDED\",\"object\":{\"addressType\":\"IPv8\"}}";
+
+        assertEquals(AddressType.UNKNOWN,
+                decode(new FilteringEventDecoder(null, true), line).endpointSlice().addressType());
+        assertEquals(AddressType.UNKNOWN, decode(EventDecoder.FULL, line).endpointSlice().addressType());
+    }
+
+    @DisplayName("should decode unknown event types and missing objects")
+    @Test
+    void decodeUnknownEventTest() throws IOException {
+        var event = decode(new FilteringEventDecoder(null, true), "{\"type\":\"SOMETHING\",\"object\":null}");
+
+        assertEquals(new Event(EventType.UNKNOWN, null), event);
+    }
+
+    @DisplayName("should fail decoding event which is not a JSON object")
+    @Test
+    void decodeInvalidEventTest() {
+        assertThrows(IOException.class, () -> decode(new FilteringEventDecoder(null, true), "[]"));
+    }
+
+    private static Event decode(EventDecoder decoder, String line) throws IOException {
+        try (var parser = OBJECT_MAPPER.createParser(line)) {
+            return decoder.decode(parser);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+
+class FlightRecorderEventsTest {
+
+    private static final String DECODED_EVENT = "io.github.lothar1998.kuberesolver.WatchEventDecoded";
+
+    @DisplayName("should record decoded watch events once enabled")
+    @Test
+    void watchEventDecodedTest() throws Exception {
+        var line = "{\"type\":\"ADDED\",\"object\":{\"metadata\":{\"name\":\"slice-a\"},"
+                + "\"endpoints\":[{\"addresses\":[\"10.0.0.1\"]},{\"addresses\":[\"10.0.0.2\"]}],\"ports\":[]}}";
+        var stream = (line + "\n").getBytes(StandardCharsets.UTF_8);
+
+        List<RecordedEvent> events;
+        try (var recording = new Recording()) {
+            recording.enable(DECODED_EVENT);
+            recording.start();
+            EndpointSliceWatcher.readEvents(new ByteArrayInputStream(stream), EventDecoder.FULL, new Subscriber(),
+                    WatchOptions.DEFAULT.maxEventBytes());
+            recording.stop();
+
+            var file = Files.createTempFile("kuberesolver", ".jfr");
+            try {
+                recording.dump(file);
+                events = new ArrayList<>(RecordingFile.readAllEvents(file));
+            } finally {
+                Files.delete(file);
+            }
+        }
+        events.removeIf(event -> !event.getEventType().getName().equals(DECODED_EVENT));
+
+        assertEquals(1, events.size());
+        assertEquals("ADDED", events.get(0).getString("type"));
+        assertEquals("slice-a", events.get(0).getString("endpointSlice"));
+        assertEquals(line.length(), events.get(0).getLong("bytes"));
+        assertEquals(2, events.get(0).getInt("endpoints"));
+    }
+
+    private static final class Subscriber implements EndpointSliceWatcher.Subscriber {
+
+        @Override
+        public void onEvent(Event event) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
@@ -1,23 +1,35 @@
 package io.github.lothar1998.kuberesolver.kubernetes;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.ok;
 import static com.github.tomakehurst.wiremock.client.WireMock.status;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathTemplate;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -33,13 +45,17 @@ import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
 import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
 import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
 import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 
 @WireMockTest
 class InsecureEndpointSliceWatcherTest {
 
     private static final String PATH_TEMPLATE = "/apis/discovery.k8s.io/v1/watch/namespaces/{namespace}/endpointslices";
+    private static final String LIST_PATH_TEMPLATE = "/apis/discovery.k8s.io/v1/namespaces/{namespace}/endpointslices";
+    private static final String EMPTY_LIST = "{\"metadata\":{\"resourceVersion\":\"1\"},\"items\":[]}";
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
@@ -81,6 +97,7 @@ class InsecureEndpointSliceWatcherTest {
                 })
                 .collect(Collectors.joining("\n"));
 
+        stubList(null, ok(EMPTY_LIST));
         stubFor(
                 get(urlPathTemplate(PATH_TEMPLATE))
                         .withPathParam("namespace", equalTo("my-namespace"))
@@ -91,7 +108,7 @@ class InsecureEndpointSliceWatcherTest {
                                 .withChunkedDribbleDelay(3, 1)));
 
         var watcher = new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace");
-        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("my-service", subscriber);
 
         var inOrder = inOrder(subscriber);
@@ -101,11 +118,211 @@ class InsecureEndpointSliceWatcherTest {
         inOrder.verify(subscriber).onCompleted();
     }
 
+    @DisplayName("should watch on gzip-compressed events when compression is enabled")
+    @Test
+    void watchGzipCompressedEventsTest(WireMockRuntimeInfo wmRuntimeInfo) throws IOException {
+        var event1 = new Event(
+                EventType.ADDED,
+                new EndpointSlice(
+                        new Metadata("my-service-endpoint-slice"),
+                        List.of(new Endpoint(List.of("10.0.0.1", "10.0.1.1"), new Conditions(true))),
+                        List.of(new EndpointPort(null, 8080))));
+
+        var event2 = new Event(
+                EventType.DELETED,
+                new EndpointSlice(
+                        new Metadata("my-service-endpoint-slice"),
+                        List.of(new Endpoint(List.of("10.0.0.1", "10.0.1.1"), new Conditions(true))),
+                        List.of(new EndpointPort(null, 8080))));
+
+        var body = OBJECT_MAPPER.writeValueAsString(event1) + "\n" + OBJECT_MAPPER.writeValueAsString(event2);
+
+        stubList(null, ok(EMPTY_LIST));
+        stubFor(
+                get(urlPathTemplate(PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"))
+                        .withHeader("Accept-Encoding", equalTo("gzip"))
+                        .willReturn(ok()
+                                .withBody(gzip(body.getBytes()))
+                                .withHeader("Content-Type", "application/json")
+                                .withHeader("Content-Encoding", "gzip")));
+
+        var watcher = new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace",
+                WatchOptions.DEFAULT.withGzip(true));
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+        watcher.watch("my-service", subscriber);
+
+        var inOrder = inOrder(subscriber);
+        inOrder.verify(subscriber).onEvent(event1);
+        inOrder.verify(subscriber).onEvent(event2);
+        inOrder.verify(subscriber).onCompleted();
+    }
+
+    @DisplayName("should list current state page by page and watch from the resource version of the list")
+    @Test
+    void listInPagesAndWatchFromResourceVersionTest(WireMockRuntimeInfo wmRuntimeInfo) throws IOException {
+        var slice1 = endpointSlice("my-service-endpoint-slice-1", "10.0.0.1");
+        var slice2 = endpointSlice("my-service-endpoint-slice-2", "10.0.0.2");
+        var event = new Event(EventType.DELETED, slice1);
+
+        stubList(null, ok(listPage("5", "next-page", slice1)));
+        stubList("next-page", ok(listPage("7", null, slice2)));
+        stubFor(
+                get(urlPathTemplate(PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"))
+                        .withQueryParam("resourceVersion", equalTo("7"))
+                        .willReturn(ok(OBJECT_MAPPER.writeValueAsString(event))));
+
+        var watcher = new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace",
+                WatchOptions.DEFAULT.withListPageSize(1));
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+        watcher.watch("my-service", subscriber);
+
+        var inOrder = inOrder(subscriber);
+        inOrder.verify(subscriber).onSyncStarted();
+        inOrder.verify(subscriber).onEvent(new Event(EventType.ADDED, slice1));
+        inOrder.verify(subscriber).onEvent(new Event(EventType.ADDED, slice2));
+        inOrder.verify(subscriber).onSyncCompleted();
+        inOrder.verify(subscriber).onEvent(event);
+        inOrder.verify(subscriber).onCompleted();
+        verify(subscriber, never()).onError(any());
+    }
+
+    @DisplayName("should restart the list when its continue token expires")
+    @Test
+    void restartListWhenContinueTokenExpiresTest(WireMockRuntimeInfo wmRuntimeInfo) throws IOException {
+        var slice1 = endpointSlice("my-service-endpoint-slice-1", "10.0.0.1");
+        var slice2 = endpointSlice("my-service-endpoint-slice-2", "10.0.0.2");
+
+        stubList(null, ok(listPage("5", "next-page", slice1)));
+        stubFor(
+                get(urlPathTemplate(LIST_PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("continue", equalTo("next-page"))
+                        .inScenario("expired continue token")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willReturn(status(410))
+                        .willSetStateTo("restarted"));
+        stubFor(
+                get(urlPathTemplate(LIST_PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("continue", equalTo("next-page"))
+                        .inScenario("expired continue token")
+                        .whenScenarioStateIs("restarted")
+                        .willReturn(ok(listPage("7", null, slice2))));
+        stubFor(
+                get(urlPathTemplate(PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("resourceVersion", equalTo("7"))
+                        .willReturn(ok()));
+
+        var watcher = new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace",
+                WatchOptions.DEFAULT.withListPageSize(1));
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+        watcher.watch("my-service", subscriber);
+
+        var inOrder = inOrder(subscriber);
+        inOrder.verify(subscriber).onSyncStarted();
+        inOrder.verify(subscriber).onEvent(new Event(EventType.ADDED, slice1));
+        inOrder.verify(subscriber).onSyncStarted();
+        inOrder.verify(subscriber).onEvent(new Event(EventType.ADDED, slice1));
+        inOrder.verify(subscriber).onEvent(new Event(EventType.ADDED, slice2));
+        inOrder.verify(subscriber).onSyncCompleted();
+        inOrder.verify(subscriber).onCompleted();
+        verify(subscriber, never()).onError(any());
+    }
+
+    @DisplayName("should report the first bookmark of a replayed state as the completed sync when list is disabled")
+    @Test
+    void syncOnFirstBookmarkWhenListDisabledTest(WireMockRuntimeInfo wmRuntimeInfo) throws IOException {
+        var added = new Event(EventType.ADDED, endpointSlice("my-service-endpoint-slice", "10.0.0.1"));
+        var bookmark = new Event(EventType.BOOKMARK, new EndpointSlice(new Metadata(null), List.of(), List.of()));
+        var modified = new Event(EventType.MODIFIED, endpointSlice("my-service-endpoint-slice", "10.0.0.2"));
+
+        var body = Stream.of(added, bookmark, modified, bookmark)
+                .map(event -> {
+                    try {
+                        return OBJECT_MAPPER.writeValueAsString(event);
+                    } catch (JsonProcessingException e) {
+                        throw new RuntimeException(e);
+                    }
+                })
+                .collect(Collectors.joining("\n"));
+
+        stubFor(
+                get(urlPathTemplate(PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"))
+                        .withQueryParam("allowWatchBookmarks", equalTo("true"))
+                        .willReturn(ok(body)));
+
+        var watcher = new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace",
+                WatchOptions.DEFAULT.withListPageSize(0));
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+        watcher.watch("my-service", subscriber);
+
+        var inOrder = inOrder(subscriber);
+        inOrder.verify(subscriber).onSyncStarted();
+        inOrder.verify(subscriber).onEvent(added);
+        inOrder.verify(subscriber).onSyncCompleted();
+        inOrder.verify(subscriber).onEvent(modified);
+        inOrder.verify(subscriber).onEvent(bookmark);
+        inOrder.verify(subscriber).onCompleted();
+        verify(subscriber, never()).onError(any());
+    }
+
+    @DisplayName("should read EndpointSlices and metadata of a list page")
+    @Test
+    void readListPageTest() throws IOException {
+        var slice = endpointSlice("my-service-endpoint-slice", "10.0.0.1");
+        var page = "{\"kind\":\"EndpointSliceList\",\"metadata\":{\"resourceVersion\":\"42\",\"continue\":\"token\"},"
+                + "\"items\":[" + OBJECT_MAPPER.writeValueAsString(slice) + "]}";
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+
+        var listPage = EndpointSliceWatcher.readListPage(
+                new ByteArrayInputStream(page.getBytes()), EventDecoder.FULL, subscriber,
+                WatchOptions.DEFAULT.maxEventBytes());
+
+        assertEquals(new EndpointSliceWatcher.ListPage("42", "token"), listPage);
+        verify(subscriber).onEvent(new Event(EventType.ADDED, slice));
+    }
+
+    @DisplayName("should reject a list page with a value larger than the event limit")
+    @Test
+    void readListPageTooLargeTest() {
+        var page = "{\"kind\":\"EndpointSliceList\",\"metadata\":{\"resourceVersion\":\"" + "1".repeat(100) + "\"},"
+                + "\"items\":[]}";
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
+
+        var exception = assertThrows(EndpointSliceWatcher.EventTooLargeException.class,
+                () -> EndpointSliceWatcher.readListPage(new ByteArrayInputStream(page.getBytes()), EventDecoder.FULL,
+                        subscriber, 64));
+
+        assertEquals(64, exception.getLimitBytes());
+    }
+
+    @DisplayName("should decode response content according to its encoding")
+    @Test
+    void decodeContentTest() throws Exception {
+        var content = "content".getBytes();
+
+        assertArrayEquals(content,
+                EndpointSliceWatcher.decodeContent(new ByteArrayInputStream(content), null).readAllBytes());
+        assertArrayEquals(content,
+                EndpointSliceWatcher.decodeContent(new ByteArrayInputStream(content), "identity").readAllBytes());
+        assertArrayEquals(content,
+                EndpointSliceWatcher.decodeContent(new ByteArrayInputStream(gzip(content)), "GZIP").readAllBytes());
+        assertThrows(UnsupportedEncodingException.class,
+                () -> EndpointSliceWatcher.decodeContent(new ByteArrayInputStream(content), "br"));
+    }
+
     @DisplayName("should fail watching events due to invalid url")
     @Test
     void watchFailsDueToInvalidURL() {
         var watcher = new InsecureEndpointSliceWatcher("invalid_path", "default");
-        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("service", subscriber);
 
         var captor = ArgumentCaptor.forClass(Throwable.class);
@@ -120,7 +337,7 @@ class InsecureEndpointSliceWatcherTest {
     @Test
     void watchFailsDueToInvalidURI() {
         var watcher = new InsecureEndpointSliceWatcher("http://invalid path", "default");
-        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("service", subscriber);
 
         var captor = ArgumentCaptor.forClass(Throwable.class);
@@ -142,7 +359,7 @@ class InsecureEndpointSliceWatcherTest {
                         .willReturn(status(500)));
 
         var watcher = new InsecureEndpointSliceWatcher(wmRuntimeInfo.getHttpBaseUrl(), "my-namespace");
-        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("my-service", subscriber);
 
         var captor = ArgumentCaptor.forClass(Throwable.class);
@@ -152,4 +369,41 @@ class InsecureEndpointSliceWatcherTest {
 
         assertInstanceOf(UnexpectedStatusCodeException.class, captor.getValue());
     }
+
+    private static void stubList(String continueToken, ResponseDefinitionBuilder response) {
+        var request = get(urlPathTemplate(LIST_PATH_TEMPLATE))
+                .withPathParam("namespace", equalTo("my-namespace"))
+                .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"));
+        if (continueToken == null) {
+            request.withQueryParam("continue", absent());
+        } else {
+            request.withQueryParam("continue", equalTo(continueToken));
+        }
+        stubFor(request.willReturn(response));
+    }
+
+    private static String listPage(String resourceVersion, String continueToken, EndpointSlice... items)
+            throws JsonProcessingException {
+        var metadata = new LinkedHashMap<String, String>();
+        metadata.put("resourceVersion", resourceVersion);
+        if (continueToken != null) {
+            metadata.put("continue", continueToken);
+        }
+        return OBJECT_MAPPER.writeValueAsString(Map.of("metadata", metadata, "items", List.of(items)));
+    }
+
+    private static EndpointSlice endpointSlice(String name, String address) {
+        return new EndpointSlice(
+                new Metadata(name),
+                List.of(new Endpoint(List.of(address), new Conditions(true))),
+                List.of(new EndpointPort(null, 8080)));
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(content);
+        }
+        return bytes.toByteArray();
+    }
 }
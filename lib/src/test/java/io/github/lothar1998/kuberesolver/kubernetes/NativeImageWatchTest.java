@@ -0,0 +1,164 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.lothar1998.kuberesolver.kubernetes.model.AddressType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Conditions;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Endpoint;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointPort;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EndpointSlice;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Metadata;
+import io.github.lothar1998.kuberesolver.kubernetes.model.TargetRef;
+
+/**
+ * Watches a fake kube-apiserver built on the JDK HTTP server only, so the tests also run as
+ * a native image ({@code ./gradlew :lib:nativeFakeApiServerTest}) and verify the shipped
+ * reachability metadata.
+ */
+@Tag("native-image")
+class NativeImageWatchTest {
+
+    private static final String LIST_PATH = "/apis/discovery.k8s.io/v1/namespaces/my-namespace/endpointslices";
+    private static final String WATCH_PATH = "/apis/discovery.k8s.io/v1/watch/namespaces/my-namespace/endpointslices";
+
+    private static final String LIST = """
+            {"kind":"EndpointSliceList","metadata":{"resourceVersion":"100"},"items":[
+            {"metadata":{"name":"my-service-a","annotations":{"owner":"team"}},"addressType":"IPv4",
+            "endpoints":[{"addresses":["10.0.0.1"],"conditions":{"ready":true},"nodeName":"node-1",
+            "targetRef":{"kind":"Pod","name":"pod-1","uid":"1"}},
+            {"addresses":["10.0.0.2"],"conditions":{"ready":false}}],
+            "ports":[{"name":"grpc","port":50051,"protocol":"TCP"},{"name":"metrics","port":9090}]}]}""";
+
+    private static final String EVENTS = """
+            {"type":"MODIFIED","object":{"metadata":{"name":"my-service-a"},\
+            "endpoints":[{"addresses":["10.0.0.3"],"conditions":{"ready":true}}],\
+            "ports":[{"name":"grpc","port":50051}]}}
+            {"type":"DELETED","object":{"metadata":{"name":"my-service-a"},"endpoints":[],"ports":[]}}
+            """;
+
+    private HttpServer server;
+    private String host;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(LIST_PATH, exchange -> respond(exchange, LIST));
+        server.createContext(WATCH_PATH, exchange -> {
+            var query = exchange.getRequestURI().getQuery();
+            respond(exchange, query != null && query.contains("resourceVersion=100") ? EVENTS : "");
+        });
+        server.start();
+        host = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void teardown() {
+        server.stop(0);
+    }
+
+    @DisplayName("should list and watch EndpointSlices with the streaming decoder")
+    @Test
+    void watchWithFilteringDecoderTest() {
+        var watcher = new InsecureEndpointSliceWatcher(host, "my-namespace");
+        var subscriber = new CollectingSubscriber();
+        watcher.watch("my-service", new FilteringEventDecoder("grpc", true), subscriber);
+
+        assertNull(subscriber.error);
+        assertTrue(subscriber.completed);
+        assertTrue(subscriber.synced);
+        assertEquals(List.of(
+                new Event(EventType.ADDED, new EndpointSlice(
+                        new Metadata("my-service-a"),
+                        List.of(new Endpoint(List.of("10.0.0.1"), new Conditions(true),
+                                new TargetRef("Pod", "pod-1", "1"))),
+                        List.of(new EndpointPort("grpc", 50051)),
+                        AddressType.IPV4)),
+                new Event(EventType.MODIFIED, new EndpointSlice(
+                        new Metadata("my-service-a"),
+                        List.of(new Endpoint(List.of("10.0.0.3"), new Conditions(true))),
+                        List.of(new EndpointPort("grpc", 50051)))),
+                new Event(EventType.DELETED, new EndpointSlice(new Metadata("my-service-a"), List.of(), List.of()))
+        ), subscriber.events);
+    }
+
+    @DisplayName("should list and watch EndpointSlices with the reflective decoder")
+    @Test
+    void watchWithFullDecoderTest() {
+        var watcher = new InsecureEndpointSliceWatcher(host, "my-namespace");
+        var subscriber = new CollectingSubscriber();
+        watcher.watch("my-service", subscriber);
+
+        assertNull(subscriber.error);
+        assertTrue(subscriber.completed);
+        assertEquals(3, subscriber.events.size());
+        assertEquals(
+                new EndpointSlice(
+                        new Metadata("my-service-a", Map.of("owner", "team")),
+                        List.of(
+                                new Endpoint(List.of("10.0.0.1"), new Conditions(true),
+                                        new TargetRef("Pod", "pod-1", "1")),
+                                new Endpoint(List.of("10.0.0.2"), new Conditions(false))),
+                        List.of(new EndpointPort("grpc", 50051), new EndpointPort("metrics", 9090)),
+                        AddressType.IPV4),
+                subscriber.events.get(0).endpointSlice());
+        assertEquals(EventType.MODIFIED, subscriber.events.get(1).type());
+        assertEquals(EventType.DELETED, subscriber.events.get(2).type());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    private static final class CollectingSubscriber implements EndpointSliceWatcher.Subscriber {
+
+        private final List<Event> events = new ArrayList<>();
+        private boolean synced;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onEvent(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onSyncCompleted() {
+            synced = true;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+}
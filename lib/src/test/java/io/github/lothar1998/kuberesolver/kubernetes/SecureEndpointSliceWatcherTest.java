@@ -7,6 +7,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.status;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathTemplate;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -43,6 +44,7 @@ import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMoc
 public class SecureEndpointSliceWatcherTest {
 
     private static final String PATH_TEMPLATE = "/apis/discovery.k8s.io/v1/watch/namespaces/{namespace}/endpointslices";
+    private static final String LIST_PATH_TEMPLATE = "/apis/discovery.k8s.io/v1/namespaces/{namespace}/endpointslices";
     private static final String TOKEN = "token1234";
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
@@ -107,6 +109,12 @@ public class SecureEndpointSliceWatcherTest {
                 })
                 .collect(Collectors.joining("\n"));
 
+        WIREMOCK.stubFor(
+                get(urlPathTemplate(LIST_PATH_TEMPLATE))
+                        .withPathParam("namespace", equalTo("my-namespace"))
+                        .withQueryParam("labelSelector", equalTo("kubernetes.io/service-name=my-service"))
+                        .withHeader("Authorization", equalTo(String.format("Bearer %s", TOKEN)))
+                        .willReturn(ok("{\"metadata\":{\"resourceVersion\":\"1\"},\"items\":[]}")));
         WIREMOCK.stubFor(
                 get(urlPathTemplate(PATH_TEMPLATE))
                         .withPathParam("namespace", equalTo("my-namespace"))
@@ -119,7 +127,7 @@ public class SecureEndpointSliceWatcherTest {
 
         var watcher = new SecureEndpointSliceWatcher(WIREMOCK.getRuntimeInfo().getHttpsBaseUrl(), "my-namespace",
                 AUTH_CONFIG_PROVIDER);
-        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(InsecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("my-service", subscriber);
 
         var inOrder = inOrder(subscriber);
@@ -133,7 +141,7 @@ public class SecureEndpointSliceWatcherTest {
     @Test
     void watchFailsDueToInvalidURL() {
         var watcher = new SecureEndpointSliceWatcher("invalid_path", "default", AUTH_CONFIG_PROVIDER);
-        var subscriber = mock(SecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(SecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("service", subscriber);
 
         var captor = ArgumentCaptor.forClass(Throwable.class);
@@ -148,7 +156,7 @@ public class SecureEndpointSliceWatcherTest {
     @Test
     void watchFailsDueToInvalidURI() {
         var watcher = new SecureEndpointSliceWatcher("http://invalid path", "default", AUTH_CONFIG_PROVIDER);
-        var subscriber = mock(SecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(SecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("service", subscriber);
 
         var captor = ArgumentCaptor.forClass(Throwable.class);
@@ -172,7 +180,7 @@ public class SecureEndpointSliceWatcherTest {
 
         var watcher = new SecureEndpointSliceWatcher(WIREMOCK.getRuntimeInfo().getHttpsBaseUrl(), "my-namespace",
                 AUTH_CONFIG_PROVIDER);
-        var subscriber = mock(SecureEndpointSliceWatcher.Subscriber.class);
+        var subscriber = mock(SecureEndpointSliceWatcher.Subscriber.class, CALLS_REAL_METHODS);
         watcher.watch("my-service", subscriber);
 
         var captor = ArgumentCaptor.forClass(Throwable.class);
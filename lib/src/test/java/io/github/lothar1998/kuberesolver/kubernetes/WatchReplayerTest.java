@@ -0,0 +1,196 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+
+class WatchReplayerTest {
+
+    private static final String LIST_PATH = "/apis/discovery.k8s.io/v1/namespaces/my-namespace/endpointslices";
+    private static final String WATCH_PATH = "/apis/discovery.k8s.io/v1/watch/namespaces/my-namespace/endpointslices";
+
+    private static final String LIST = """
+            {"kind":"EndpointSliceList","metadata":{"resourceVersion":"100"},"items":[
+            {"metadata":{"name":"my-service-a","resourceVersion":"90"},"addressType":"IPv4",
+            "endpoints":[{"addresses":["10.0.0.1"],"conditions":{"ready":true}}],
+            "ports":[{"name":"grpc","port":50051}]}]}""";
+
+    private static final String EVENTS = """
+            {"type":"MODIFIED","object":{"metadata":{"name":"my-service-a","resourceVersion":"101"},\
+            "endpoints":[{"addresses":["10.0.0.3"],"conditions":{"ready":true}}],\
+            "ports":[{"name":"grpc","port":50051}]}}
+            {"type":"DELETED","object":{"metadata":{"name":"my-service-a","resourceVersion":"102"},\
+            "endpoints":[],"ports":[]}}
+            """;
+
+    private HttpServer server;
+    private Path file;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(LIST_PATH, exchange -> respond(exchange, LIST));
+        server.createContext(WATCH_PATH, exchange -> respond(exchange, EVENTS));
+        server.start();
+        file = Files.createTempFile("kuberesolver", ".krwr");
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.stop(0);
+        Files.deleteIfExists(file);
+    }
+
+    @DisplayName("should replay a recorded watch to a subscriber")
+    @Test
+    void replayTest() throws Exception {
+        record();
+
+        var replayer = WatchReplayer.load(file);
+        var subscriber = new CollectingSubscriber(3);
+        replayer.replay("my-namespace/my-service", EventDecoder.FULL, subscriber, Double.POSITIVE_INFINITY);
+
+        assertEquals(Set.of("my-namespace/my-service"), replayer.targets());
+        assertNull(subscriber.error);
+        assertTrue(subscriber.completed);
+        assertEquals(1, subscriber.syncs);
+        assertEquals(List.of(EventType.ADDED, EventType.MODIFIED, EventType.DELETED),
+                subscriber.events.stream().map(Event::type).toList());
+        assertEquals("10.0.0.3", subscriber.events.get(1).endpointSlice().endpoints().get(0).addresses().get(0));
+    }
+
+    @DisplayName("should serve a recorded watch to a watcher")
+    @Test
+    void serveTest() throws Exception {
+        record();
+
+        var replayer = WatchReplayer.load(file);
+        var subscriber = new CollectingSubscriber(3);
+        try (var replayServer = replayer.serve(Double.POSITIVE_INFINITY)) {
+            var watcher = new InsecureEndpointSliceWatcher(replayServer.host(), "my-namespace");
+            var thread = new Thread(() -> watcher.watch("my-service", subscriber));
+            thread.setDaemon(true);
+            thread.start();
+
+            assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, subscriber.syncs);
+        assertEquals(List.of(EventType.ADDED, EventType.MODIFIED, EventType.DELETED),
+                subscriber.events.stream().map(Event::type).toList());
+    }
+
+    @DisplayName("should reject an unknown target and a non-positive speed")
+    @Test
+    void invalidReplayTest() throws Exception {
+        record();
+
+        var replayer = WatchReplayer.load(file);
+        var subscriber = new CollectingSubscriber(0);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> replayer.replay("my-namespace/other", EventDecoder.FULL, subscriber, 1));
+        assertThrows(IllegalArgumentException.class,
+                () -> replayer.replay("my-namespace/my-service", EventDecoder.FULL, subscriber, 0));
+    }
+
+    @DisplayName("should run at most one recording at a time")
+    @Test
+    void singleRecordingTest() throws Exception {
+        try (var recorder = WatchRecorder.start(file)) {
+            assertThrows(IllegalStateException.class, () -> WatchRecorder.start(file));
+            assertEquals(file, recorder.file());
+        }
+        WatchRecorder.start(file).close();
+    }
+
+    @DisplayName("should fail a list page larger than the recording limit without recording it")
+    @Test
+    void listPageTooLargeTest() throws Exception {
+        var host = "http://localhost:" + server.getAddress().getPort();
+        var subscriber = new CollectingSubscriber(1);
+        try (var ignored = WatchRecorder.start(file, 64)) {
+            new InsecureEndpointSliceWatcher(host, "my-namespace").watch("my-service", subscriber);
+        }
+
+        var error = assertInstanceOf(EndpointSliceWatcher.EventTooLargeException.class, subscriber.error);
+        assertEquals(64, error.getLimitBytes());
+        assertEquals(0, subscriber.syncs);
+        assertEquals(Set.of(), WatchReplayer.load(file).targets());
+        assertThrows(IllegalArgumentException.class, () -> WatchRecorder.start(file, 0));
+    }
+
+    private void record() throws Exception {
+        var host = "http://localhost:" + server.getAddress().getPort();
+        try (var ignored = WatchRecorder.start(file)) {
+            new InsecureEndpointSliceWatcher(host, "my-namespace").watch("my-service", new CollectingSubscriber(3));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    private static final class CollectingSubscriber implements EndpointSliceWatcher.Subscriber {
+
+        private final List<Event> events = new CopyOnWriteArrayList<>();
+        private final CountDownLatch received;
+        private volatile int syncs;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        CollectingSubscriber(int expectedEvents) {
+            this.received = new CountDownLatch(expectedEvents);
+        }
+
+        @Override
+        public void onEvent(Event event) {
+            events.add(event);
+            received.countDown();
+        }
+
+        @Override
+        public void onSyncCompleted() {
+            syncs++;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+}
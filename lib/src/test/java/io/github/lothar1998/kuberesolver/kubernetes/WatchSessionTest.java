@@ -0,0 +1,199 @@
+package io.github.lothar1998.kuberesolver.kubernetes;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.lothar1998.kuberesolver.kubernetes.model.Event;
+import io.github.lothar1998.kuberesolver.kubernetes.model.EventType;
+
+class WatchSessionTest {
+
+    private static final String LIST_PATH = "/apis/discovery.k8s.io/v1/namespaces/my-namespace/endpointslices";
+    private static final String WATCH_PATH = "/apis/discovery.k8s.io/v1/watch/namespaces/my-namespace/endpointslices";
+    private static final String LIST = "{\"metadata\":{\"resourceVersion\":\"1\"},\"items\":[]}";
+    private static final WatchOptions OPTIONS = WatchOptions.DEFAULT.withIdleTimeout(Duration.ofMillis(500));
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<String> watchQueries = new CopyOnWriteArrayList<>();
+
+    private ExecutorService executor;
+    private HttpServer server;
+    private String host;
+
+    @BeforeEach
+    void setup() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext(LIST_PATH, exchange -> {
+            exchange.sendResponseHeaders(200, LIST.length());
+            try (var body = exchange.getResponseBody()) {
+                body.write(LIST.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        host = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void teardown() {
+        release.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @DisplayName("should abort a silent watch and resume it from the last received resource version")
+    @Test
+    void resumeIdleWatchTest() {
+        server.createContext(WATCH_PATH, exchange -> {
+            watchQueries.add(exchange.getRequestURI().getQuery());
+            if (watchQueries.size() == 1) {
+                stream(exchange, event("ADDED", "5"), true);
+            } else {
+                stream(exchange, event("MODIFIED", "6"), false);
+            }
+        });
+        server.start();
+
+        var subscriber = new CollectingSubscriber();
+        new InsecureEndpointSliceWatcher(host, "my-namespace", OPTIONS).watch("my-service", subscriber);
+
+        assertNull(subscriber.error);
+        assertTrue(subscriber.completed);
+        assertEquals(List.of(EventType.ADDED, EventType.MODIFIED),
+                subscriber.events.stream().map(Event::type).toList());
+        assertEquals(2, watchQueries.size());
+        assertTrue(watchQueries.get(0).contains("resourceVersion=1"));
+        assertTrue(watchQueries.get(1).contains("resourceVersion=5"));
+        assertTrue(watchQueries.get(1).contains("allowWatchBookmarks=true"));
+        assertTrue(watchQueries.get(1).contains("timeoutSeconds=300"));
+    }
+
+    @DisplayName("should replace an expiring watch before its timeout and deliver overlapping events once")
+    @Test
+    void replaceExpiringWatchTest() {
+        var replacementRequested = new CountDownLatch(1);
+        var overlapSent = new CountDownLatch(1);
+        server.createContext(WATCH_PATH, exchange -> {
+            watchQueries.add(exchange.getRequestURI().getQuery());
+            if (watchQueries.size() == 1) {
+                exchange.sendResponseHeaders(200, 0);
+                var body = exchange.getResponseBody();
+                body.write(event("ADDED", "5").getBytes(StandardCharsets.UTF_8));
+                body.flush();
+                await(replacementRequested);
+                body.write(event("MODIFIED", "6").getBytes(StandardCharsets.UTF_8));
+                body.flush();
+                overlapSent.countDown();
+                await(release);
+                body.close();
+            } else {
+                replacementRequested.countDown();
+                await(overlapSent);
+                stream(exchange, event("MODIFIED", "6") + event("MODIFIED", "7"), false);
+            }
+        });
+        server.start();
+
+        var subscriber = new CollectingSubscriber();
+        var options = WatchOptions.DEFAULT.withTimeout(Duration.ofSeconds(1));
+        new InsecureEndpointSliceWatcher(host, "my-namespace", options).watch("my-service", subscriber);
+
+        assertNull(subscriber.error);
+        assertTrue(subscriber.completed);
+        assertEquals(List.of("5", "6", "7"),
+                subscriber.events.stream().map(event -> event.endpointSlice().metadata().resourceVersion()).toList());
+        assertEquals(2, watchQueries.size());
+        assertTrue(watchQueries.get(0).contains("timeoutSeconds=1"));
+        assertTrue(watchQueries.get(1).contains("resourceVersion=5"));
+    }
+
+    @DisplayName("should fail the watch if the resumed watch receives no heartbeat either")
+    @Test
+    void failResumedIdleWatchTest() {
+        server.createContext(WATCH_PATH, exchange -> {
+            watchQueries.add(exchange.getRequestURI().getQuery());
+            if (watchQueries.size() == 1) {
+                stream(exchange, event("ADDED", "5"), true);
+            } else {
+                stream(exchange, "", true);
+            }
+        });
+        server.start();
+
+        var subscriber = new CollectingSubscriber();
+        new InsecureEndpointSliceWatcher(host, "my-namespace", OPTIONS).watch("my-service", subscriber);
+
+        assertInstanceOf(HttpTimeoutException.class, subscriber.error);
+        assertEquals(1, subscriber.events.size());
+        assertEquals(2, watchQueries.size());
+    }
+
+    private void stream(HttpExchange exchange, String events, boolean hang) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        var body = exchange.getResponseBody();
+        body.write(events.getBytes(StandardCharsets.UTF_8));
+        body.flush();
+        if (hang) {
+            await(release);
+        }
+        body.close();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String event(String type, String resourceVersion) {
+        return "{\"type\":\"" + type + "\",\"object\":{\"metadata\":{\"name\":\"my-service-a\",\"resourceVersion\":\""
+                + resourceVersion + "\"},\"endpoints\":[],\"ports\":[]}}\n";
+    }
+
+    private static final class CollectingSubscriber implements EndpointSliceWatcher.Subscriber {
+
+        private final List<Event> events = new ArrayList<>();
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onEvent(Event event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+}